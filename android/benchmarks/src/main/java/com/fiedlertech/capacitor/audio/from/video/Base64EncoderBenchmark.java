@@ -0,0 +1,57 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Base64 throughput; one operation is one input byte, so the score in ops/us is MB/s
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base64EncoderBenchmark {
+
+    private static final int CHUNK = 3 * 64 * 1024;  // one audioData event at the default chunk size
+    private static final int FILE = 4 * 1024 * 1024; // a typical includeData result
+
+    private byte[] chunk;
+    private byte[] file;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        chunk = BenchmarkData.bytes(CHUNK);
+        file = BenchmarkData.bytes(FILE);
+        encoded = new byte[Base64Encoder.encodedLength(CHUNK)];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK)
+    public int encodeChunkIntoArray() {
+        return Base64Encoder.encode(chunk, 0, CHUNK, encoded, 0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK)
+    public String encodeChunkToString() {
+        return Base64Encoder.encodeToString(chunk, 0, CHUNK);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE)
+    public String dataUrl() {
+        return Base64Encoder.dataUrl("audio/mpeg", file, FILE);
+    }
+}
@@ -0,0 +1,40 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import java.util.Random;
+
+// Deterministic synthetic inputs: a few tones plus noise, so the kernels see realistic,
+// non-constant sample values (no branch that only ever takes one side)
+final class BenchmarkData {
+
+    private BenchmarkData() {}
+
+    static short[] pcm16(int frames, int channels, int sampleRate) {
+        Random noise = new Random(42);
+        short[] out = new short[frames * channels];
+        for (int f = 0; f < frames; f++) {
+            double t = (double) f / sampleRate;
+            for (int c = 0; c < channels; c++) {
+                double v = 0.4 * Math.sin(2 * Math.PI * (220 + 110 * c) * t)
+                        + 0.2 * Math.sin(2 * Math.PI * 3150 * t)
+                        + 0.05 * noise.nextGaussian();
+                out[f * channels + c] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v * 32767));
+            }
+        }
+        return out;
+    }
+
+    static float[] pcmFloat(int frames, int channels, int sampleRate) {
+        short[] pcm = pcm16(frames, channels, sampleRate);
+        float[] out = new float[pcm.length];
+        for (int i = 0; i < pcm.length; i++) {
+            out[i] = pcm[i] / 32768f;
+        }
+        return out;
+    }
+
+    static byte[] bytes(int length) {
+        byte[] out = new byte[length];
+        new Random(7).nextBytes(out);
+        return out;
+    }
+}
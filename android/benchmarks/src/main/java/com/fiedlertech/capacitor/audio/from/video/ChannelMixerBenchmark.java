@@ -0,0 +1,78 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+// Downmix cost per frame (score is ns/frame): the short[] and float[] kernels, and the
+// ByteBuffer path the transcoder actually calls with decoder output. Target: under 100 ns/frame
+// for 6:2 on a desktop JVM, i.e. well over 100x real time at 48 kHz.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChannelMixerBenchmark {
+
+    private static final int FRAMES = 4096; // about one decoder output buffer
+
+    @Param({"2:1", "6:2", "6:1"})
+    public String layout;
+
+    private ChannelMixer mixer;
+    private short[] pcm;
+    private float[] pcmFloat;
+    private short[] out;
+    private ByteBuffer src;
+    private ByteBuffer dst;
+
+    @Setup
+    public void setup() {
+        String[] parts = layout.split(":");
+        int in = Integer.parseInt(parts[0]);
+        int outChannels = Integer.parseInt(parts[1]);
+        mixer = ChannelMixer.standard(in, outChannels);
+        pcm = BenchmarkData.pcm16(FRAMES, in, 48_000);
+        pcmFloat = BenchmarkData.pcmFloat(FRAMES, in, 48_000);
+        out = new short[FRAMES * outChannels];
+        src = ByteBuffer.allocateDirect(pcm.length * 2).order(ByteOrder.nativeOrder());
+        src.asShortBuffer().put(pcm);
+        dst = ByteBuffer.allocateDirect(out.length * 2);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public short[] mixShort() {
+        mixer.mix(pcm, 0, out, 0, FRAMES);
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public short[] mixFloat() {
+        mixer.mix(pcmFloat, 0, out, 0, FRAMES);
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int processDirectBuffer() {
+        src.clear();
+        dst.clear();
+        return mixer.process(src, false, dst);
+    }
+}
@@ -0,0 +1,68 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Per-job planning: range cutoff, encoder bitrate and file naming (score is ns per job).
+// Cheap today; tracked so a costlier rate-control or naming scheme shows up here first.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBudgetBenchmark {
+
+    private static final int JOBS = 1024;
+    private static final String[] SOURCE_MIMES = {
+            "video/mp4", "video/quicktime", "video/webm", "audio/mpeg", "audio/mp4", "audio/aac", "audio/ogg", null
+    };
+
+    private long[] startUs;
+    private long[] endUs;
+    private int[] requestedBitrate;
+    private String[] sourceMime;
+    private String[] outputPath;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(3);
+        startUs = new long[JOBS];
+        endUs = new long[JOBS];
+        requestedBitrate = new int[JOBS];
+        sourceMime = new String[JOBS];
+        outputPath = new String[JOBS];
+        for (int i = 0; i < JOBS; i++) {
+            startUs[i] = random.nextInt(60) * 1_000_000L;
+            endUs[i] = random.nextBoolean() ? 0L : startUs[i] + (1 + random.nextInt(900)) * 1_000_000L;
+            requestedBitrate[i] = random.nextBoolean() ? 0 : 32_000 * (1 + random.nextInt(8));
+            sourceMime[i] = SOURCE_MIMES[random.nextInt(SOURCE_MIMES.length)];
+            outputPath[i] = "/data/user/0/app/cache/afv_" + i + (random.nextBoolean() ? ".tmp" : ".mp3");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(JOBS)
+    public void plan(Blackhole bh) {
+        for (int i = 0; i < JOBS; i++) {
+            long cutoffUs = OutputBudget.cutoffUs(startUs[i], endUs[i]);
+            bh.consume(OutputBudget.targetBitrate(i % 2 == 0 ? MimeTypes.MP3 : MimeTypes.AAC, 1 + i % 2,
+                    requestedBitrate[i], endUs[i] > 0 ? cutoffUs - startUs[i] : 0L));
+            bh.consume(MimeTypes.sourceExt(sourceMime[i]));
+            bh.consume(MimeTypes.withOutputExt(outputPath[i], MimeTypes.M4A));
+        }
+    }
+}
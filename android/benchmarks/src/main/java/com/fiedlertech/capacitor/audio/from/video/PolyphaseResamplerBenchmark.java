@@ -0,0 +1,53 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Resampling cost per input frame (score is ns/frame) for the conversions the profiles use;
+// the resampler streams, so every invocation continues where the previous one stopped
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PolyphaseResamplerBenchmark {
+
+    private static final int FRAMES = 4096;
+
+    @Param({"48000:16000:1", "44100:16000:1", "44100:48000:2"})
+    public String conversion;
+
+    private PolyphaseResampler resampler;
+    private short[] in;
+    private short[] out;
+
+    @Setup
+    public void setup() {
+        String[] parts = conversion.split(":");
+        int inRate = Integer.parseInt(parts[0]);
+        int outRate = Integer.parseInt(parts[1]);
+        int channels = Integer.parseInt(parts[2]);
+        resampler = new PolyphaseResampler(inRate, outRate, channels);
+        in = BenchmarkData.pcm16(FRAMES, channels, inRate);
+        out = new short[resampler.maxOutputFor(FRAMES) * channels * 2];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int process() {
+        return resampler.process(in, 0, FRAMES, out, 0);
+    }
+}
@@ -0,0 +1,62 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+// Silence detection cost per frame (score is ns/frame) on top of the encoder when trimming is on.
+// A tone keeps every frame, silence past the limit drops every frame, so neither run moves data and
+// the input stays valid between invocations.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SilenceTrimmerBenchmark {
+
+    private static final int FRAMES = 4096; // about one decoder output buffer
+
+    @Param({"1", "2"})
+    public int channels;
+
+    @Param({"tone", "silence"})
+    public String signal;
+
+    private SilenceTrimmer trimmer;
+    private short[] pcm;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() {
+        pcm = "tone".equals(signal) ? BenchmarkData.pcm16(FRAMES, channels, 48_000) : new short[FRAMES * channels];
+        buffer = ByteBuffer.allocateDirect(pcm.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asShortBuffer().put(pcm);
+        trimmer = new SilenceTrimmer(48_000, channels, 500L, SilenceTrimmer.DEFAULT_THRESHOLD_DB, 0L);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int processShorts() {
+        return trimmer.process(pcm, pcm.length);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int processDirectBuffer() {
+        return trimmer.process(buffer, 0, pcm.length * 2);
+    }
+}
@@ -0,0 +1,63 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+// Peak analysis cost per frame (score is ns/frame), which every transcode pays on top of the
+// encoder when peaks are requested: the short[] kernel and the ByteBuffer path the session calls
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaveformPeaksBenchmark {
+
+    private static final int FRAMES = 4096; // about one decoder output buffer
+
+    @Param({"1", "2"})
+    public int channels;
+
+    @Param({"100"})
+    public int perSecond;
+
+    private WaveformPeaks peaks;
+    private short[] pcm;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() {
+        pcm = BenchmarkData.pcm16(FRAMES, channels, 48_000);
+        buffer = ByteBuffer.allocateDirect(pcm.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asShortBuffer().put(pcm);
+        peaks = new WaveformPeaks(48_000, channels, perSecond);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int acceptShorts() {
+        peaks.accept(pcm, 0, pcm.length);
+        return peaks.count();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int acceptDirectBuffer() {
+        peaks.accept(buffer, 0, pcm.length * 2);
+        return peaks.count();
+    }
+}
@@ -0,0 +1,335 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Callback-driven engine: each codec reports buffers as they become available and a
+// pooled PCM ring decouples the decoder from the encoder, so neither waits on a poll
+// timeout and decoded PCM is never dropped when the encoder is momentarily full.
+// All codec events are handled on one HandlerThread, so the state below needs no locking.
+@RequiresApi(api = Build.VERSION_CODES.M)
+class AsyncTranscoder implements TranscodeEngine {
+
+    private static final int RING_CHUNKS = 8;
+    private static final int RING_CHUNK_BYTES = 64 * 1024;
+
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Exception error;
+
+    // Codec thread state
+    private TranscodeSession session;
+    private PcmRing ring;
+    private boolean finished = false;
+    private boolean extractorEOS = false;
+    private boolean decoderEOS = false;
+    private boolean encoderEosQueued = false;
+    private final ArrayDeque<Integer> freeDecoderInputs = new ArrayDeque<>();
+    private final ArrayDeque<Integer> freeEncoderInputs = new ArrayDeque<>();
+    private final ArrayDeque<PendingOutput> pendingDecoderOutputs = new ArrayDeque<>();
+    private final ArrayDeque<PendingOutput> pendingEncoderOutputs = new ArrayDeque<>();
+    private MediaFormat pendingDecoderFormat;
+    private MediaFormat pendingEncoderFormat;
+
+    private static final class PendingOutput {
+        final int index;
+        final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        ByteBuffer buffer;
+        long nextPtsUs;
+
+        PendingOutput(int index, MediaCodec.BufferInfo src) {
+            this.index = index;
+            info.set(src.offset, src.size, src.presentationTimeUs, src.flags);
+            nextPtsUs = src.presentationTimeUs;
+        }
+
+        boolean isEos() {
+            return (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+        }
+    }
+
+    AsyncTranscoder() {
+        thread = new HandlerThread("afv-codec");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    @Override
+    public void attach(MediaCodec codec, boolean isEncoder) {
+        codec.setCallback(isEncoder ? encoderCallback : decoderCallback, handler);
+    }
+
+    @Override
+    public void run(TranscodeSession session) throws Exception {
+        handler.post(() -> {
+            this.session = session;
+            if (session.hasEncoder()) {
+                this.ring = new PcmRing(RING_CHUNKS, RING_CHUNK_BYTES, session.outputBytesPerFrame(), session.sampleRate);
+            }
+            guarded(() -> {
+                // Format changes may have arrived before the session was attached
+                if (pendingDecoderFormat != null) {
+                    session.onDecoderFormatChanged(pendingDecoderFormat);
+                    pendingDecoderFormat = null;
+                }
+                if (pendingEncoderFormat != null) {
+                    session.onEncoderFormatChanged(pendingEncoderFormat);
+                    pendingEncoderFormat = null;
+                }
+                pump();
+            });
+        });
+        while (!done.await(50, TimeUnit.MILLISECONDS)) {
+            session.throwIfCancelled();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    @Override
+    public void release() {
+        handler.post(() -> finished = true);
+        thread.quitSafely();
+        try { thread.join(500); } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    private void guarded(Step step) {
+        if (finished) return;
+        try {
+            step.run();
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    private void fail(Exception e) {
+        if (finished) return;
+        error = e;
+        finished = true;
+        done.countDown();
+    }
+
+    private void complete() {
+        finished = true;
+        done.countDown();
+    }
+
+    private final MediaCodec.Callback decoderCallback = new MediaCodec.Callback() {
+        @Override
+        public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
+            freeDecoderInputs.add(index);
+            guarded(AsyncTranscoder.this::pump);
+        }
+
+        @Override
+        public void onOutputBufferAvailable(@NonNull MediaCodec codec, int index, @NonNull MediaCodec.BufferInfo info) {
+            pendingDecoderOutputs.add(new PendingOutput(index, info));
+            guarded(AsyncTranscoder.this::pump);
+        }
+
+        @Override
+        public void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException e) {
+            fail(e);
+        }
+
+        @Override
+        public void onOutputFormatChanged(@NonNull MediaCodec codec, @NonNull MediaFormat format) {
+            if (session == null) {
+                pendingDecoderFormat = format;
+                return;
+            }
+            session.onDecoderFormatChanged(format);
+        }
+    };
+
+    private final MediaCodec.Callback encoderCallback = new MediaCodec.Callback() {
+        @Override
+        public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
+            freeEncoderInputs.add(index);
+            guarded(AsyncTranscoder.this::pump);
+        }
+
+        @Override
+        public void onOutputBufferAvailable(@NonNull MediaCodec codec, int index, @NonNull MediaCodec.BufferInfo info) {
+            pendingEncoderOutputs.add(new PendingOutput(index, info));
+            guarded(AsyncTranscoder.this::pump);
+        }
+
+        @Override
+        public void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException e) {
+            fail(e);
+        }
+
+        @Override
+        public void onOutputFormatChanged(@NonNull MediaCodec codec, @NonNull MediaFormat format) {
+            if (session == null) {
+                pendingEncoderFormat = format;
+                return;
+            }
+            guarded(() -> session.onEncoderFormatChanged(format));
+        }
+    };
+
+    // Moves data as far down the pipeline as the currently available buffers allow
+    private void pump() throws Exception {
+        if (session == null || finished) {
+            return;
+        }
+        MediaCodec decoder = session.decoder;
+        MediaCodec encoder = session.encoder;
+
+        if (encoder == null) {
+            writeDecoderOutputs();
+        } else {
+            transcodeOutputs(encoder);
+        }
+        if (finished) {
+            return;
+        }
+
+        // 4) Extractor -> decoder input; nothing more is read once the output is full
+        Integer decIn;
+        while (!extractorEOS && !session.sizeCapReached() && (decIn = freeDecoderInputs.poll()) != null) {
+            ByteBuffer buf = decoder.getInputBuffer(decIn);
+            if (buf == null) {
+                continue;
+            }
+            extractorEOS = session.queueNextSample(decIn, buf);
+        }
+    }
+
+    private void transcodeOutputs(MediaCodec encoder) throws Exception {
+        // 1) Encoder output -> file
+        PendingOutput encOut;
+        while ((encOut = pendingEncoderOutputs.poll()) != null) {
+            session.writeEncoded(encoder.getOutputBuffer(encOut.index), encOut.info);
+            encoder.releaseOutputBuffer(encOut.index, false);
+            if (encOut.isEos()) {
+                complete();
+                return;
+            }
+        }
+        boolean capped = session.sizeCapReached();
+        if (capped) {
+            // Anything still buffered would be cut anyway; the encoder gets EOS and is flushed
+            ring.clear();
+        }
+
+        // 2) + 3) Decoder output -> PCM ring -> encoder input. Feeding the encoder frees ring
+        // chunks, which may unblock a held decoder buffer, so repeat while that happens.
+        boolean fed;
+        do {
+            drainDecoderOutputs(capped);
+            fed = feedEncoder(capped);
+        } while (fed && !pendingDecoderOutputs.isEmpty());
+    }
+
+    // Decode-only: every decoder buffer is written out as soon as it arrives; EOS or the size
+    // cap ends the pass, so nothing is decoded past the cap
+    private void writeDecoderOutputs() throws Exception {
+        MediaCodec decoder = session.decoder;
+        PendingOutput decOut;
+        while ((decOut = pendingDecoderOutputs.poll()) != null) {
+            if (decOut.info.size > 0) {
+                ByteBuffer buf = decoder.getOutputBuffer(decOut.index);
+                if (buf != null) {
+                    buf.limit(decOut.info.offset + decOut.info.size);
+                    buf.position(decOut.info.offset);
+                    session.writePcm(buf, session.trimLeading(buf, decOut.info.presentationTimeUs));
+                }
+            }
+            decoder.releaseOutputBuffer(decOut.index, false);
+            if (decOut.isEos() || session.sizeCapReached()) {
+                complete();
+                return;
+            }
+        }
+    }
+
+    private void drainDecoderOutputs(boolean capped) {
+        MediaCodec decoder = session.decoder;
+        PendingOutput decOut;
+        while ((decOut = pendingDecoderOutputs.peek()) != null) {
+            if (!capped && decOut.buffer == null && decOut.info.size > 0) {
+                decOut.buffer = decoder.getOutputBuffer(decOut.index);
+                if (decOut.buffer != null) {
+                    decOut.buffer.limit(decOut.info.offset + decOut.info.size);
+                    decOut.buffer.position(decOut.info.offset);
+                    decOut.nextPtsUs = session.trimLeading(decOut.buffer, decOut.info.presentationTimeUs);
+                }
+            }
+            while (!capped && decOut.buffer != null && decOut.buffer.hasRemaining()) {
+                PcmRing.Chunk chunk = ring.acquire();
+                if (chunk == null) {
+                    break;
+                }
+                chunk.ptsUs = session.outputPtsUs(decOut.nextPtsUs);
+                int written = session.copyPcm(decOut.buffer, chunk.data);
+                decOut.nextPtsUs += session.bytesToUs(written);
+                ring.publish(chunk);
+            }
+            if (!capped && decOut.buffer != null && decOut.buffer.hasRemaining()) {
+                // Ring is full: hold this decoder buffer until the encoder catches up
+                break;
+            }
+            pendingDecoderOutputs.poll();
+            decoder.releaseOutputBuffer(decOut.index, false);
+            if (decOut.isEos()) {
+                decoderEOS = true;
+            }
+        }
+    }
+
+    // Returns true if any PCM was queued to the encoder
+    private boolean feedEncoder(boolean capped) {
+        MediaCodec encoder = session.encoder;
+        boolean fed = false;
+        Integer encIn;
+        while ((encIn = freeEncoderInputs.peek()) != null) {
+            if (!capped && ring.hasData()) {
+                ByteBuffer buf = encoder.getInputBuffer(encIn);
+                if (buf == null) {
+                    freeEncoderInputs.poll();
+                    continue;
+                }
+                buf.clear();
+                long ptsUs = ring.drainInto(buf);
+                int size = buf.position();
+                if (size == 0) {
+                    break;
+                }
+                encoder.queueInputBuffer(encIn, 0, size, ptsUs, 0);
+                freeEncoderInputs.poll();
+                session.reportProgress(ptsUs);
+                fed = true;
+            } else if ((capped || (decoderEOS && pendingDecoderOutputs.isEmpty())) && !encoderEosQueued) {
+                encoder.queueInputBuffer(encIn, 0, 0, session.endPtsUs(), MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                freeEncoderInputs.poll();
+                encoderEosQueued = true;
+                session.onEncoderEosQueued();
+            } else {
+                break;
+            }
+        }
+        return fed;
+    }
+}
@@ -7,21 +7,26 @@ import android.media.MediaCodecInfo;
 import android.media.MediaExtractor;
 import android.media.MediaFormat;
 import android.media.MediaMetadataRetriever;
-import android.media.MediaMuxer;
-import android.media.MediaCodecList;
 import android.net.Uri;
 import android.os.Build;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.ShortBuffer;
-import android.util.Base64;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import android.util.Log;
 
 import androidx.annotation.RequiresApi;
@@ -29,9 +34,18 @@ import androidx.annotation.RequiresApi;
 public class AudioFromVideoRetriever {
 
     public interface ExtractionCallback {
-        void onExtractionCompleted(File file, String mimeType) throws IOException;
+        void onExtractionCompleted(File file, String mimeType, ExtractionMetrics metrics) throws IOException;
         void onExtractionFailed(String errorMessage);
-        void onExtractionProgress(Double progress);
+        void onExtractionProgress(ExtractionProgress progress);
+
+        // Fragmented output only: another byte range of the file is final and can be consumed
+        default void onFragmentWritten(ExtractionFragment fragment) {}
+
+        // Only when peaks were asked for: called once, right before onExtractionCompleted
+        default void onPeaks(WaveformPeaks peaks) {}
+
+        // Only when silence trimming was asked for: called once, right before onExtractionCompleted
+        default void onSilenceTrimmed(SilenceTrimmer silence) {}
     }
 
     public File getFileObject(String path, ContentResolver resolver) {
@@ -44,527 +58,1300 @@ public class AudioFromVideoRetriever {
             return null;
         }
 
-        // Handle content URIs: robustly copy to a temp file to support scoped storage
+        // Handle content URIs: robustly copy to a temp file to support scoped storage. Only output
+        // paths get here (sources are opened by openSource), so the copy is where the job writes its
+        // result and outlives the job: it is not tracked as an ingest copy, which would hold quota
+        // until the next start and then be swept.
         if ("content".equals(uri.getScheme())) {
-            InputStream is = null;
-            FileOutputStream fos = null;
             try {
-                String mime = resolver.getType(uri);
-                String ext = mimeToExt(mime);
-                File tempFile = File.createTempFile("voicesai_afv_src_", ext);
-                is = resolver.openInputStream(uri);
-                if (is == null) {
-                    return null;
-                }
-                fos = new FileOutputStream(tempFile);
-                byte[] buffer = new byte[8192];
-                int read;
-                while ((read = is.read(buffer)) != -1) {
-                    fos.write(buffer, 0, read);
-                }
-                fos.flush();
-                return tempFile;
-            } catch (Exception e) {
+                return copyContentUriToTemp(uri, resolver, null);
+            } catch (IOException e) {
                 Log.e(TAG, "Error copying content URI to temp file", e);
                 return null;
-            } finally {
-                try { if (fos != null) fos.close(); } catch (Exception ignored) {}
-                try { if (is != null) is.close(); } catch (Exception ignored) {}
             }
         }
 
         // Handle file URIs or raw paths
-        if (uri.getScheme() == null || "file".equals(uri.getScheme())) {
+        return getLocalFile(path);
+    }
+
+    // File paths and file:// URIs only; null for anything that would have to be copied first
+    public File getLocalFile(String path) {
+        if (path == null) {
+            return null;
+        }
+        Uri uri = Uri.parse(path);
+        if (uri != null && (uri.getScheme() == null || "file".equals(uri.getScheme()))) {
             String filePath = uri.getPath();
             return filePath != null ? new File(filePath) : null;
         }
-
         return null;
     }
 
-    private static String mimeToExt(String mime) {
-        if (mime == null) return ".tmp";
-        try {
-            if (mime.equals("audio/mpeg")) return ".mp3";
-            if (mime.equals("audio/mp4") || mime.equals("audio/aac") || mime.equals("audio/mp4a-latm")) return ".m4a";
-            if (mime.equals("audio/ogg")) return ".ogg";
-            if (mime.equals("audio/webm") || mime.equals("video/webm")) return ".webm";
-            if (mime.startsWith("video/")) return ".mp4";
-        } catch (Exception ignored) {}
-        return ".tmp";
+    // Resolves an input path without copying: content URIs are opened by file descriptor when the job runs
+    public MediaSource openSource(String path, ContentResolver resolver) {
+        if (path == null) {
+            return null;
+        }
+        Uri uri = Uri.parse(path);
+        if (uri == null) {
+            return null;
+        }
+        if ("content".equals(uri.getScheme())) {
+            return MediaSource.fromUri(uri, resolver, storage);
+        }
+        File file = getFileObject(path, resolver);
+        return file != null ? MediaSource.fromFile(file) : null;
+    }
+
+    // Copies a content URI into a temp file the caller deletes with deleteCopy. With a governor the
+    // file is tracked: a declared size that can't fit fails before anything is written, and a copy
+    // that outgrows the quota or the free space stops there. A failed copy is deleted.
+    static File copyContentUriToTemp(Uri uri, ContentResolver resolver, StorageGovernor storage) throws IOException {
+        String ext = MimeTypes.sourceExt(resolver.getType(uri));
+        File tempFile = storage != null
+                ? storage.newIngestFile(ext, MediaSource.declaredSize(uri, resolver))
+                : File.createTempFile("afv_src_", ext);
+        boolean copied = false;
+        try (InputStream is = resolver.openInputStream(uri)) {
+            if (is == null) {
+                throw new IOException("Unable to read " + uri);
+            }
+            try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+                byte[] buffer = new byte[8192];
+                long written = 0L;
+                long checked = 0L;
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    fos.write(buffer, 0, read);
+                    written += read;
+                    if (storage != null && written - checked >= StorageGovernor.COPY_CHECK_STEP_BYTES) {
+                        storage.onIngestProgress(tempFile, written);
+                        checked = written;
+                    }
+                }
+                if (storage != null) {
+                    storage.onIngestProgress(tempFile, written);
+                }
+            }
+            copied = true;
+            return tempFile;
+        } finally {
+            if (!copied) {
+                deleteCopy(tempFile, storage);
+            }
+        }
+    }
+
+    static void deleteCopy(File copy, StorageGovernor storage) {
+        if (storage != null) {
+            storage.release(copy);
+        } else {
+            deleteQuietly(copy);
+        }
     }
 
+    // Reads the file straight into one array sized from its length and encodes it in one pass
     public String getDataUrlFromAudioFile(File file, String mimeType) throws IOException {
-        InputStream inputStream = new FileInputStream(file);
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        long length = file.length();
+        if (length > Integer.MAX_VALUE / 2) {
+            throw new IOException("File too large for a data URL");
+        }
+        byte[] audioData = new byte[(int) length];
+        int filled = 0;
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int read;
+            while (filled < audioData.length && (read = inputStream.read(audioData, filled, audioData.length - filled)) != -1) {
+                filled += read;
+            }
+        }
+        return Base64Encoder.dataUrl(mimeType, audioData, filled);
+    }
+
+    public interface DataChunkListener {
+        void onChunk(int sequence, long offset, String base64Data, boolean last);
+    }
 
-        byte[] buffer = new byte[4096];
-        int bytesRead;
-        while ((bytesRead = inputStream.read(buffer)) != -1) {
-            outputStream.write(buffer, 0, bytesRead);
+    // Default chunk: a multiple of 3 so every chunk is valid base64 on its own (no padding mid-stream)
+    public static final int DEFAULT_DATA_CHUNK_BYTES = 3 * 64 * 1024;
+
+    // Streams the file as independent base64 chunks through one reusable read buffer, so peak
+    // memory is about one chunk regardless of file size. Returns the number of chunks emitted.
+    public int streamBase64Chunks(File file, int chunkBytes, DataChunkListener listener) throws IOException {
+        int size = Math.max(3, chunkBytes - (chunkBytes % 3));
+        byte[] buffer = new byte[size];
+        long total = file.length();
+        long offset = 0L;
+        int sequence = 0;
+        try (InputStream inputStream = new FileInputStream(file)) {
+            do {
+                // Fill the buffer completely so only the final chunk can end in padding
+                int filled = 0;
+                int read;
+                while (filled < size && (read = inputStream.read(buffer, filled, size - filled)) != -1) {
+                    filled += read;
+                }
+                boolean last = filled < size || offset + filled >= total;
+                listener.onChunk(sequence++, offset, Base64Encoder.encodeToString(buffer, 0, filled), last);
+                offset += filled;
+                if (last) {
+                    break;
+                }
+            } while (true);
         }
+        return sequence;
+    }
+
+    // Largest slice one readRange call returns; whole files are better fetched through their web URL
+    public static final int MAX_READ_RANGE_BYTES = 8 * 1024 * 1024;
 
-        byte[] audioData = outputStream.toByteArray();
+    // Paths readRange serves besides the result cache: results and fragments announced to the app,
+    // canonical, the most recently announced last
+    private static final int MAX_READABLE_PATHS = 256;
+    private final Map<String, Boolean> readablePaths = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_READABLE_PATHS;
+        }
+    };
 
-        String base64Data = Base64.encodeToString(audioData, Base64.DEFAULT);
-        return "data:" + mimeType + ";base64," + base64Data;
+    // Lets readRange serve file, which a job handed to the app as a result or fragment path
+    public void allowRead(File file) {
+        try {
+            String path = file.getCanonicalPath();
+            synchronized (readablePaths) {
+                readablePaths.put(path, Boolean.TRUE);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not resolve " + file + ": " + e.getMessage());
+        }
+    }
+
+    // Only this plugin's output is readable: anything in the result cache, or a path a job announced
+    public boolean isReadable(File file) {
+        ResultCache cache = resultCache;
+        if (cache != null && cache.holds(file)) {
+            return true;
+        }
+        try {
+            String path = file.getCanonicalPath();
+            synchronized (readablePaths) {
+                return readablePaths.containsKey(path);
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Reads up to length bytes at offset with positional FileChannel reads into an array sized to
+    // what the file still holds from there, so nothing before offset is read and nothing is copied
+    // twice. Returns an empty array at or past the end of the file.
+    public byte[] readRange(File file, long offset, int length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IOException("Negative offset or length");
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            long available = Math.max(0L, channel.size() - offset);
+            byte[] data = new byte[(int) Math.min(Math.min(length, MAX_READ_RANGE_BYTES), available)];
+            ByteBuffer target = ByteBuffer.wrap(data);
+            while (target.hasRemaining()) {
+                int read = channel.read(target, offset + target.position());
+                if (read < 0) {
+                    throw new IOException("File shrank while reading at " + (offset + target.position()));
+                }
+            }
+            return data;
+        }
     }
 
     private static final String TAG = "VideoToAudio";
 
+    public static final String CANCELLED_MESSAGE = "Extraction cancelled";
+
+    private final ExtractionScheduler scheduler = new ExtractionScheduler();
+
+    private final CodecPool codecPool = new CodecPool();
+    private volatile ResultCache resultCache;
+    private volatile StorageGovernor storage;
+    private final ExtractionStats stats = new ExtractionStats();
+    private final ProbeCache probeCache = new ProbeCache(ProbeCache.DEFAULT_MAX_ENTRIES);
+    // Opens and probes the next batch item while the current one transcodes
+    private final ThreadPoolExecutor ingestExecutor = new ThreadPoolExecutor(1, 1, 30L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> new Thread(r, "afv-ingest"));
+
+    {
+        ingestExecutor.allowCoreThreadTimeOut(true);
+    }
+
     private static String escapePath(String path) {
         return "\"" + path.replace("\"", "\\\"") + "\"";
     }
 
     private static boolean isEncoderAvailable(String mimeType) {
+        return CodecRegistry.get().hasEncoder(mimeType);
+    }
+
+    private static boolean sourceMatchesProfile(MediaFormat inputFormat, int inputSampleRate, int inputChannels,
+                                                int sampleRate, int outputChannels, ExtractionOptions options) {
+        if (inputSampleRate != sampleRate || inputChannels != outputChannels) {
+            return false;
+        }
+        if (options.outputBitrate > 0) {
+            // An unknown source bitrate may be far above the requested one
+            return inputFormat.containsKey(MediaFormat.KEY_BIT_RATE)
+                    && inputFormat.getInteger(MediaFormat.KEY_BIT_RATE) <= options.outputBitrate;
+        }
+        return true;
+    }
+
+    // Copying compressed frames is only valid when the source already matches the profile, and
+    // peaks and silence trimming need the decoded PCM
+    private static boolean canCopyFrames(MediaFormat inputFormat, ExtractionOptions options) {
+        if (options.isDecodeOnly() || options.peakRate() > 0 || options.isTrimmingSilence()) {
+            return false;
+        }
+        if (!options.hasOutputProfile()) {
+            return true;
+        }
+        int inputSampleRate = inputFormat.containsKey(MediaFormat.KEY_SAMPLE_RATE)
+                ? inputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE) : 44100;
+        int inputChannelCount = inputFormat.containsKey(MediaFormat.KEY_CHANNEL_COUNT)
+                ? inputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT) : 2;
+        int sampleRate = options.outputSampleRate > 0 ? options.outputSampleRate : inputSampleRate;
+        int outputChannelCount = Math.max(1, Math.min(2,
+                options.outputChannels > 0 ? options.outputChannels : inputChannelCount));
+        return sourceMatchesProfile(inputFormat, inputSampleRate, inputChannelCount, sampleRate, outputChannelCount, options);
+    }
+
+    // Result type when an audio-only source of this codec is used whole, null if it can't be
+    private static String sourceFileMime(String sourceMime) {
+        return MimeTypes.MP3.equals(sourceMime) ? MimeTypes.MP3 : MimeTypes.AAC.equals(sourceMime) ? MimeTypes.M4A : null;
+    }
+
+    // The range is the whole source and within the duration cap
+    private static boolean isWholeSource(long startUs, long endUs, long durationUs) {
+        return startUs == 0 && durationUs > 0 && endUs == durationUs && durationUs <= OutputBudget.MAX_DURATION_US;
+    }
+
+    // End of the requested range, clamped to a known duration; 0 when neither is known
+    private static long rangeEndUs(ExtractionOptions options, long durationUs) {
+        long endUs = options.endMs > 0 ? options.endMs * 1000L : durationUs;
+        return durationUs > 0 && endUs > durationUs ? durationUs : endUs;
+    }
+
+    // Fragments are only worth streaming in order, and peaks and silence trimming follow the
+    // audio in order, so all of them keep one pass
+    private static int segmentCount(ExtractionOptions options, long rangeUs) {
+        if (options.isDecodeOnly() || options.isFragmented() || options.peakRate() > 0 || options.isTrimmingSilence()) {
+            return 1;
+        }
+        return SegmentedTranscoder.segmentCount(options.parallelSegments, rangeUs);
+    }
+
+    // Track formats only, nothing is decoded. A content URI is read through its file descriptor and
+    // never copied, so an unseekable provider fails here. Results are cached by source identity.
+    public MediaProbe probeMedia(MediaSource source) throws IOException {
+        String identity = source.identity();
+        MediaProbe cached = probeCache.get(identity);
+        if (cached != null) {
+            source.close();
+            return cached;
+        }
+        MediaExtractor extractor = new MediaExtractor();
         try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                MediaCodecList list = new MediaCodecList(MediaCodecList.REGULAR_CODECS);
-                MediaCodecInfo[] infos = list.getCodecInfos();
-                for (MediaCodecInfo info : infos) {
-                    if (!info.isEncoder()) continue;
-                    String[] types = info.getSupportedTypes();
-                    for (String t : types) {
-                        if (t.equalsIgnoreCase(mimeType)) return true;
+            source.applyTo(extractor, false);
+            int trackCount = extractor.getTrackCount();
+            MediaFormat audioFormat = null;
+            boolean hasVideo = false;
+            for (int i = 0; i < trackCount; i++) {
+                MediaFormat fmt = extractor.getTrackFormat(i);
+                String mime = fmt.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/") && audioFormat == null) {
+                    audioFormat = fmt;
+                } else if (mime != null && mime.startsWith("video/")) {
+                    hasVideo = true;
+                }
+            }
+            boolean plain = false;
+            String fileMime = audioFormat != null ? sourceFileMime(audioFormat.getString(MediaFormat.KEY_MIME)) : null;
+            if (fileMime != null && trackCount == 1) {
+                try (MediaSource.Bytes bytes = source.openBytes()) {
+                    plain = isPlainAudioFile(bytes, fileMime);
+                }
+            }
+            MediaProbe probe = new MediaProbe(trackCount, hasVideo, audioFormat, plain);
+            probeCache.put(identity, probe);
+            return probe;
+        } finally {
+            extractor.release();
+            source.close();
+        }
+    }
+
+    // The path an extraction of the probed source with these options would take, before any
+    // fallback (e.g. a failed MP3 pass-through re-encodes); null without an audio track or with an
+    // empty range. The result cache is not consulted.
+    public static ExtractionMetrics.Path plannedPath(MediaProbe probe, ExtractionOptions options) {
+        long durationUs = probe.durationUs;
+        long startUs = Math.max(0L, options.startMs) * 1000L;
+        long endUs = rangeEndUs(options, durationUs);
+        if (!probe.hasAudio || (durationUs > 0 && startUs >= durationUs) || (endUs > 0 && endUs <= startUs)) {
+            return null;
+        }
+        boolean fragmented = options.isFragmented();
+        boolean canCopy = canCopyFrames(probe.audioFormat, options);
+        if (canCopy && !fragmented && probe.plainAudioFile && probe.trackCount == 1
+                && isWholeSource(startUs, endUs, durationUs)) {
+            return ExtractionMetrics.Path.SOURCE_FILE;
+        }
+        if (canCopy && !fragmented && MimeTypes.MP3.equals(probe.audioMime)) {
+            return ExtractionMetrics.Path.MP3_PASSTHROUGH;
+        }
+        if (canCopy && MimeTypes.AAC.equals(probe.audioMime)) {
+            return ExtractionMetrics.Path.AAC_REMUX;
+        }
+        if (options.isDecodeOnly()) {
+            return ExtractionMetrics.Path.DECODE_ONLY;
+        }
+        long rangeUs = endUs > 0 ? OutputBudget.cutoffUs(startUs, endUs) - startUs : 0L;
+        return segmentCount(options, rangeUs) > 1 ? ExtractionMetrics.Path.SEGMENTED : ExtractionMetrics.Path.TRANSCODE;
+    }
+
+    public String extractAudio(File videoFile, File outputAudioFile, ExtractionCallback callback) {
+        return extractAudio(MediaSource.fromFile(videoFile), outputAudioFile, new ExtractionOptions(), callback);
+    }
+
+    // A null outputAudioFile leaves the output to the result cache (when one is set): a cached
+    // result for the same source and options completes right away, without scheduling a job.
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    public String extractAudio(MediaSource source, File outputAudioFile, ExtractionOptions options, ExtractionCallback callback) {
+        if (options.jobId == null || options.jobId.isEmpty()) {
+            options.jobId = UUID.randomUUID().toString();
+        }
+        String jobId = options.jobId;
+
+        Route route = route(source, outputAudioFile, options, stats.track(callback));
+        if (route.deliverIfDone(source)) {
+            return jobId;
+        }
+        File output = route.output;
+        ExtractionCallback target = route.callback;
+        try {
+            scheduler.submit(jobId, options.priority,
+                    job -> runExtraction(job, source, null, null, output, outputAudioFile != null, options, target),
+                    job -> {
+                        // Cancelled while still queued: nothing was opened, only drop any stale output
+                        deleteQuietly(output);
+                        target.onExtractionFailed(CANCELLED_MESSAGE);
+                    });
+        } catch (Exception e) {
+            Log.e(TAG, "Could not schedule extraction", e);
+            deleteQuietly(output);
+            target.onExtractionFailed(e.getMessage());
+        }
+        return jobId;
+    }
+
+    // Where one extraction writes and who hears about it; hit is set when the cache already has it
+    private static final class Route {
+        final File output;
+        final ExtractionCallback callback;
+        final ResultCache.Entry hit;
+        final String error;
+        final long startNs;
+
+        Route(File output, ExtractionCallback callback, ResultCache.Entry hit, String error, long startNs) {
+            this.output = output;
+            this.callback = callback;
+            this.hit = hit;
+            this.error = error;
+            this.startNs = startNs;
+        }
+
+        // Completes the call from the cache (or fails it); returns false if it still has to run
+        boolean deliverIfDone(MediaSource source) {
+            if (hit == null && error == null) {
+                return false;
+            }
+            source.close();
+            if (error != null) {
+                callback.onExtractionFailed(error);
+                return true;
+            }
+            try {
+                callback.onExtractionCompleted(hit.file, hit.mimeType,
+                        ExtractionMetrics.cacheHit(startNs, hit.file.length()));
+            } catch (Exception e) {
+                callback.onExtractionFailed(e.getMessage());
+            }
+            return true;
+        }
+    }
+
+    private Route route(MediaSource source, File outputAudioFile, ExtractionOptions options, ExtractionCallback callback) {
+        long startNs = System.nanoTime();
+        ResultCache cache = resultCache;
+        if (outputAudioFile == null && cache != null) {
+            // Peaks and kept-segment maps are not kept with cache entries, so a request for them always runs
+            String key = options.useCache && options.peakRate() == 0 && !options.isTrimmingSilence()
+                    ? ResultCache.keyFor(source.identity(), options) : null;
+            ResultCache.Entry hit = cache.get(key);
+            if (hit != null) {
+                return new Route(null, callback, hit, null, startNs);
+            }
+            // Fragments are announced by path while the job runs, so that output is written in place
+            File part;
+            try {
+                part = options.isFragmented() ? cache.newInPlaceFile(MimeTypes.M4A) : cache.newPartFile();
+            } catch (IOException e) {
+                return new Route(null, callback, null, e.getMessage(), startNs);
+            }
+            return new Route(part, new CachingCallback(cache, key, part, callback), null, null, startNs);
+        }
+        if (outputAudioFile == null) {
+            return new Route(null, callback, null, "No output file", startNs);
+        }
+        if (outputAudioFile.exists()) {
+            outputAudioFile.delete();
+        }
+        return new Route(outputAudioFile, callback, null, null, startNs);
+    }
+
+    // Moves a finished extraction into the result cache before handing it on
+    private static final class CachingCallback implements ExtractionCallback {
+        private final ResultCache cache;
+        private final String key;
+        private final File part;
+        private final ExtractionCallback target;
+
+        CachingCallback(ResultCache cache, String key, File part, ExtractionCallback target) {
+            this.cache = cache;
+            this.key = key;
+            this.part = part;
+            this.target = target;
+        }
+
+        @Override
+        public void onExtractionCompleted(File file, String mimeType, ExtractionMetrics metrics) throws IOException {
+            if (!file.equals(part)) {
+                // Not written here (an audio-only source handed back as is): nothing to cache or move
+                cache.discard(part);
+                target.onExtractionCompleted(file, mimeType, metrics);
+                return;
+            }
+            ResultCache.Entry entry = cache.commit(key, file, mimeType);
+            target.onExtractionCompleted(entry.file, entry.mimeType, metrics);
+        }
+
+        @Override
+        public void onExtractionFailed(String errorMessage) {
+            cache.discard(part);
+            target.onExtractionFailed(errorMessage);
+        }
+
+        @Override
+        public void onExtractionProgress(ExtractionProgress progress) {
+            target.onExtractionProgress(progress);
+        }
+
+        @Override
+        public void onFragmentWritten(ExtractionFragment fragment) {
+            target.onFragmentWritten(fragment);
+        }
+
+        @Override
+        public void onPeaks(WaveformPeaks peaks) {
+            target.onPeaks(peaks);
+        }
+
+        @Override
+        public void onSilenceTrimmed(SilenceTrimmer silence) {
+            target.onSilenceTrimmed(silence);
+        }
+    }
+
+    public void setResultCache(ResultCache cache) {
+        this.resultCache = cache;
+        StorageGovernor governor = storage;
+        if (governor != null) {
+            governor.setResultCache(cache);
+        }
+    }
+
+    // Tracks temp copies, holds them and the result cache under one quota and checks free space
+    // before each job; null leaves disk use unchecked
+    public void setStorageGovernor(StorageGovernor governor) {
+        this.storage = governor;
+        if (governor != null) {
+            governor.setResultCache(resultCache);
+        }
+    }
+
+    public StorageGovernor getStorageGovernor() {
+        return storage;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    // Outcome counters and rolling per-stage histograms over every extraction and batch item
+    public ExtractionStats getStats() {
+        return stats;
+    }
+
+    public static final class BatchItem {
+        public final MediaSource source;
+        public final File outputFile; // null leaves the output to the result cache
+        public final ExtractionOptions options;
+        public final ExtractionCallback callback;
+
+        public BatchItem(MediaSource source, File outputFile, ExtractionOptions options, ExtractionCallback callback) {
+            this.source = source;
+            this.outputFile = outputFile;
+            this.options = options;
+            this.callback = callback;
+        }
+    }
+
+    public interface BatchListener {
+        // finished counts completed and failed items; progress is 0..1 over the whole batch
+        void onBatchProgress(int finished, int total, double progress);
+        void onBatchFinished(int completed, int failed);
+    }
+
+    // Runs the items one after another in a single scheduler slot. While one item transcodes, the
+    // next is routed (cache lookup) and opened/probed on the ingest thread, and codecs go straight
+    // back to the pool for the next compatible item. Each item reports through its own callback;
+    // a failing item does not stop the batch. cancelExtraction(batchId) cancels the rest.
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    public String extractAudioBatch(String batchId, int priority, List<BatchItem> items, BatchListener listener) {
+        String id = (batchId == null || batchId.isEmpty()) ? UUID.randomUUID().toString() : batchId;
+        BatchState state = new BatchState(items.size(), listener, stats);
+        for (int i = 0; i < items.size(); i++) {
+            ExtractionOptions options = items.get(i).options;
+            if (options.jobId == null || options.jobId.isEmpty()) {
+                options.jobId = id + ":" + i;
+            }
+        }
+        try {
+            scheduler.submit(id, priority, job -> runBatch(job, items, state), job -> {
+                for (BatchItem item : items) {
+                    item.source.close();
+                    state.wrap(item.callback).onExtractionFailed(CANCELLED_MESSAGE);
+                }
+                state.finish();
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Could not schedule batch", e);
+            for (BatchItem item : items) {
+                item.source.close();
+                state.wrap(item.callback).onExtractionFailed(e.getMessage());
+            }
+            state.finish();
+        }
+        return id;
+    }
+
+    private static final class BatchState {
+        final int total;
+        final BatchListener listener;
+        final ExtractionStats stats;
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+
+        BatchState(int total, BatchListener listener, ExtractionStats stats) {
+            this.total = total;
+            this.listener = listener;
+            this.stats = stats;
+        }
+
+        int finished() {
+            return completed.get() + failed.get();
+        }
+
+        void report(double current) {
+            int done = finished();
+            try {
+                listener.onBatchProgress(done, total, total == 0 ? 1.0 : Math.min(1.0, (done + current) / total));
+            } catch (Exception ignored) {}
+        }
+
+        void finish() {
+            try { listener.onBatchFinished(completed.get(), failed.get()); } catch (Exception ignored) {}
+        }
+
+        // Counts the item's outcome and folds its progress into the batch progress
+        ExtractionCallback wrap(ExtractionCallback item) {
+            ExtractionCallback target = stats.track(item);
+            return new ExtractionCallback() {
+                @Override
+                public void onExtractionCompleted(File file, String mimeType, ExtractionMetrics metrics) throws IOException {
+                    try {
+                        target.onExtractionCompleted(file, mimeType, metrics);
+                    } finally {
+                        completed.incrementAndGet();
+                        report(0.0);
                     }
                 }
+
+                @Override
+                public void onExtractionFailed(String errorMessage) {
+                    try {
+                        target.onExtractionFailed(errorMessage);
+                    } finally {
+                        failed.incrementAndGet();
+                        report(0.0);
+                    }
+                }
+
+                @Override
+                public void onExtractionProgress(ExtractionProgress progress) {
+                    target.onExtractionProgress(progress);
+                    report(progress.progress);
+                }
+
+                @Override
+                public void onFragmentWritten(ExtractionFragment fragment) {
+                    target.onFragmentWritten(fragment);
+                }
+
+                @Override
+                public void onPeaks(WaveformPeaks peaks) {
+                    target.onPeaks(peaks);
+                }
+
+                @Override
+                public void onSilenceTrimmed(SilenceTrimmer silence) {
+                    target.onSilenceTrimmed(silence);
+                }
+            };
+        }
+    }
+
+    // An item made ready on the ingest thread
+    private static final class StagedItem {
+        final Route route;
+        final PreparedInput input;
+        final StorageGovernor reserved; // holds room for the item's output until it has run
+        final String error;
+
+        StagedItem(Route route, PreparedInput input, StorageGovernor reserved, String error) {
+            this.route = route;
+            this.input = input;
+            this.reserved = reserved;
+            this.error = error;
+        }
+
+        void discard() {
+            if (input != null) {
+                input.release();
+            }
+            if (reserved != null) {
+                reserved.endJob();
+            }
+        }
+    }
+
+    private StagedItem stage(BatchItem item, ExtractionCallback callback) {
+        Route route = route(item.source, item.outputFile, item.options, callback);
+        if (route.hit != null || route.error != null) {
+            return new StagedItem(route, null, null, null);
+        }
+        StorageGovernor reserved = null;
+        try {
+            reserved = checkStorage(route.output);
+            PreparedInput input = PreparedInput.open(item.source);
+            if (input == null) {
+                if (reserved != null) {
+                    reserved.endJob();
+                }
+                return new StagedItem(route, null, null, "No audio track found");
+            }
+            return new StagedItem(route, input, reserved, null);
+        } catch (Exception e) {
+            if (reserved != null) {
+                reserved.endJob();
+            }
+            return new StagedItem(route, null, null, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private void runBatch(ExtractionScheduler.Job job, List<BatchItem> items, BatchState state) {
+        int total = items.size();
+        ExtractionCallback[] callbacks = new ExtractionCallback[total];
+        for (int i = 0; i < total; i++) {
+            callbacks[i] = state.wrap(items.get(i).callback);
+        }
+        Future<StagedItem> next = null;
+        if (total > 0) {
+            next = ingestExecutor.submit(() -> stage(items.get(0), callbacks[0]));
+        }
+        for (int i = 0; i < total; i++) {
+            BatchItem item = items.get(i);
+            Future<StagedItem> current = next;
+            next = null;
+            if (i + 1 < total && !job.isCancelled()) {
+                int n = i + 1;
+                next = ingestExecutor.submit(() -> stage(items.get(n), callbacks[n]));
+            }
+
+            StagedItem staged = null;
+            String error = null;
+            if (current != null) {
+                try {
+                    staged = current.get();
+                } catch (Exception e) {
+                    error = e.getMessage();
+                }
+            }
+            ExtractionCallback callback = staged != null ? staged.route.callback : callbacks[i];
+            if (job.isCancelled() || staged == null || staged.error != null) {
+                if (staged != null) {
+                    staged.discard();
+                }
+                item.source.close();
+                callback.onExtractionFailed(job.isCancelled() ? CANCELLED_MESSAGE
+                        : staged != null ? staged.error : error);
+                continue;
+            }
+            if (staged.route.deliverIfDone(item.source)) {
+                continue;
             }
-        } catch (Throwable ignored) {}
-        return false;
+            runExtraction(job, item.source, staged.input, staged.reserved, staged.route.output, item.outputFile != null,
+                    item.options, callback);
+        }
+        state.finish();
     }
 
-    private static int computeTargetBitrateForMp3(int channels) {
-        // Standardize to 192 kbps while staying under 10 MB for 5 minutes
-        return 192_000;
+    public boolean cancelExtraction(String jobId) {
+        return jobId != null && scheduler.cancel(jobId);
     }
 
-    private static int computeTargetBitrateForAac(int channels) {
-        // Match standard 192 kbps for consistency with MP3
-        return 192_000;
+    // Releases pooled codecs and forces a fresh capability scan on the next extraction
+    public void releaseCodecs() {
+        codecPool.clear();
+        CodecRegistry.invalidate();
+    }
+
+    public void setMaxConcurrentExtractions(int maxConcurrent) {
+        scheduler.setMaxConcurrent(maxConcurrent);
+    }
+
+    static TranscodeEngine createEngine(ExtractionOptions.Engine requested) {
+        ExtractionOptions.Engine engine = requested != null ? requested : ExtractionOptions.Engine.ASYNC;
+        // setCallback(callback, handler) needs API 23; older devices keep the polling loop
+        if (engine == ExtractionOptions.Engine.ASYNC && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return new AsyncTranscoder();
+        }
+        return new PollingTranscoder();
+    }
+
+    // MP4 sink for AAC: MediaMuxer, or the fragment writer announcing each fragment when asked for
+    private static OutputSink aacSink(File file, ExtractionOptions options, ExtractionCallback callback) throws IOException {
+        if (!options.isFragmented()) {
+            return new MuxerSink(file);
+        }
+        String path = file.getAbsolutePath();
+        return new FragmentedMp4Sink(file, options.fragmentDurationMs * 1000L,
+                (sequence, offset, length, startUs, durationUs) -> {
+                    try {
+                        callback.onFragmentWritten(new ExtractionFragment(options.jobId, path, sequence, offset,
+                                length, startUs, durationUs));
+                    } catch (Exception ignored) {}
+                });
+    }
+
+    // AAC remux for non-fragmented MP4 sources without MediaExtractor or MediaMuxer: the sample
+    // table is read in Java and the sample bytes are copied file to file with transferTo.
+    // Returns false, before writing anything, if Mp4Demuxer can't handle the source.
+    private static boolean copyMp4AudioSamples(ExtractionScheduler.Job job, MediaSource source, File outputAudioFile,
+                                               long startUs, long cutoffUs, ProgressReporter progress,
+                                               ExtractionMetrics metrics) throws IOException {
+        try (MediaSource.Bytes bytes = source.openBytes()) {
+            if (bytes == null) {
+                return false;
+            }
+            Mp4Demuxer.AudioTrack track = Mp4Demuxer.readAudioTrack(bytes.channel, bytes.offset, bytes.length);
+            if (track == null) {
+                return false;
+            }
+            // Frames are copied whole, so the range starts at the first frame inside it
+            int first = track.sampleAtOrAfter(startUs);
+            int end = track.sampleAtOrAfter(cutoffUs);
+            long payload = 0L;
+            for (int i = first; i < end; i++) {
+                if (payload + track.sizes[i] > OutputBudget.MAX_SIZE_BYTES) {
+                    end = i;
+                    metrics.markTruncated();
+                    break;
+                }
+                payload += track.sizes[i];
+            }
+            if (first >= end) {
+                return false;
+            }
+            long firstUs = track.timeUs(first);
+            metrics.onSampleRead((int) payload);
+            long t0 = System.nanoTime();
+            try (FileOutputStream out = new FileOutputStream(outputAudioFile)) {
+                M4aWriter.write(track, first, end, bytes.channel, bytes.offset, out.getChannel(), (runEnd, copied) -> {
+                    job.throwIfCancelled();
+                    progress.update(track.timeUs(runEnd) - firstUs, copied);
+                });
+            }
+            metrics.addMuxNs(System.nanoTime() - t0);
+            progress.complete(payload);
+            metrics.complete(outputAudioFile.length(), track.timeUs(end) - firstUs);
+            return true;
+        }
     }
 
-    // Downmix PCM 16-bit (assumes decoder output format is PCM 16-bit) to given channel count (1 or 2)
-    // decOut: PCM 16-bit interleaved, inputChannels>=outputChannels, encIn destination buffer
-    private static int downmixPcmToChannels(ByteBuffer decOut, int inputChannels, int outputChannels, ByteBuffer encIn) {
-        // We can only proceed if both buffers are direct and have arrays or we can use ShortBuffers
-        int samples = decOut.remaining() / 2; // 16-bit
-        ShortBuffer inSb = decOut.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
-        ShortBuffer outSb = encIn.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
-        int frames = samples / Math.max(1, inputChannels);
-        int maxOutFrames = outSb.remaining() / Math.max(1, outputChannels);
-        int framesToProcess = Math.min(frames, maxOutFrames);
+    // Step of the whole-file copy, so cancellation and progress are seen between steps
+    private static final long SOURCE_COPY_STEP_BYTES = 1024L * 1024L;
 
-        // Temporary arrays can help speed but allocate-free approach via buffers is fine
-        for (int f = 0; f < framesToProcess; f++) {
-            int base = f * inputChannels;
-            if (outputChannels == 1) {
-                // Mono: average first two channels if present, otherwise first channel
-                int left = inSb.get(base);
-                int right = (inputChannels >= 2) ? inSb.get(base + 1) : left;
-                short mono = (short) ((left + right) / 2);
-                outSb.put(mono);
-            } else { // stereo
-                int left = inSb.get(base);
-                int right = (inputChannels >= 2) ? inSb.get(base + 1) : left;
-                outSb.put((short) left);
-                outSb.put((short) right);
+    // Whole-file fast path for a source that is already an audio-only MP3 stream or plain M4A within
+    // the size cap; the caller checked the track count, range and duration. Unless the caller chose
+    // the output file, a local source whose extension fits is handed back as it is. Otherwise its
+    // bytes are copied file to file with transferTo. No extractor reads and no codec is involved.
+    // Returns null, before writing anything, if the container doesn't qualify.
+    private static File useSourceFile(ExtractionScheduler.Job job, MediaSource source, String resultMime,
+                                      File outputAudioFile, boolean callerOutput, long durationUs,
+                                      ProgressReporter progress, ExtractionMetrics metrics) throws IOException {
+        try (MediaSource.Bytes bytes = source.openBytes()) {
+            if (!isPlainAudioFile(bytes, resultMime)) {
+                return null;
+            }
+            progress.stage(ExtractionProgress.Stage.REMUX, 0L);
+            metrics.setPath(ExtractionMetrics.Path.SOURCE_FILE);
+            metrics.onSampleRead((int) bytes.length);
+            File local = source.isContentUri() ? null : source.getFile();
+            if (!callerOutput && local != null
+                    && MimeTypes.withOutputExt(local.getAbsolutePath(), resultMime).equals(local.getAbsolutePath())) {
+                progress.complete(bytes.length);
+                metrics.complete(bytes.length, durationUs);
+                return local;
             }
+            long t0 = System.nanoTime();
+            try (FileOutputStream out = new FileOutputStream(outputAudioFile)) {
+                FileChannel target = out.getChannel();
+                long done = 0L;
+                while (done < bytes.length) {
+                    job.throwIfCancelled();
+                    long n = bytes.channel.transferTo(bytes.offset + done,
+                            Math.min(SOURCE_COPY_STEP_BYTES, bytes.length - done), target);
+                    if (n <= 0) {
+                        throw new IOException("Short transfer: " + done + " of " + bytes.length + " bytes");
+                    }
+                    done += n;
+                    progress.update(durationUs * done / bytes.length, done);
+                }
+            }
+            metrics.addMuxNs(System.nanoTime() - t0);
+            progress.complete(bytes.length);
+            metrics.complete(outputAudioFile.length(), durationUs);
+            return outputAudioFile;
+        }
+    }
+
+    // An audio-only MP3 stream or plain M4A (per resultMime) that fits the size cap as it is
+    private static boolean isPlainAudioFile(MediaSource.Bytes bytes, String resultMime) throws IOException {
+        if (bytes == null || bytes.length <= 0 || bytes.length > OutputBudget.MAX_SIZE_BYTES) {
+            return false;
         }
+        return MimeTypes.MP3.equals(resultMime)
+                ? isMpegAudioStream(bytes)
+                : Mp4Demuxer.readAudioTrack(bytes.channel, bytes.offset, bytes.length) != null;
+    }
 
-        // Advance source buffer position accordingly (bytes)
-        int bytesConsumed = framesToProcess * inputChannels * 2;
-        decOut.position(decOut.position() + bytesConsumed);
-        // Return bytes written to encIn
-        return framesToProcess * outputChannels * 2;
+    // MP3 as a bare stream rather than inside a container: an ID3v2 tag or an MPEG audio frame
+    // header (sync plus a non-zero layer, which rules out ADTS) at the very start
+    private static boolean isMpegAudioStream(MediaSource.Bytes bytes) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(3);
+        while (head.hasRemaining() && bytes.channel.read(head, bytes.offset + head.position()) > 0) {
+            // keep reading
+        }
+        if (head.position() < 3) {
+            return false;
+        }
+        int b0 = head.get(0) & 0xff;
+        int b1 = head.get(1) & 0xff;
+        int b2 = head.get(2) & 0xff;
+        return (b0 == 'I' && b1 == 'D' && b2 == '3') || (b0 == 0xff && (b1 & 0xe0) == 0xe0 && (b1 & 0x06) != 0);
     }
 
-@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
-public void extractAudio(File videoFile, File outputAudioFile, ExtractionCallback callback) {
-    if (outputAudioFile.exists()) {
-        outputAudioFile.delete();
+    // Fails before anything is opened or written when the volume (or the storage quota) has no room
+    // for a full-size output. Otherwise that room stays reserved until endJob on the returned
+    // governor; null when nothing was reserved.
+    private StorageGovernor checkStorage(File output) throws IOException {
+        StorageGovernor governor = storage;
+        if (governor == null || output == null) {
+            return null;
+        }
+        governor.checkJob(output.getAbsoluteFile().getParentFile());
+        return governor;
     }
 
-    new Thread(() -> {
+    private static void deleteQuietly(File file) {
+        try { if (file != null && file.exists()) file.delete(); } catch (Exception ignored) {}
+    }
+
+    // callerOutput: outputAudioFile is where the caller wants the result; otherwise it is a scratch
+    // file and the result may be another file (the source itself for audio-only sources).
+    // reserved: the governor a batch already reserved output room on, released when the job ends.
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private void runExtraction(ExtractionScheduler.Job job, MediaSource source, PreparedInput prepared,
+                               StorageGovernor reserved, File outputAudioFile, boolean callerOutput,
+                               ExtractionOptions options, ExtractionCallback callback) {
         MediaExtractor extractor = null;
         MediaCodec decoder = null;
         MediaCodec encoder = null;
-        MediaMuxer muxer = null;
-        FileOutputStream rawOutput = null; // for MP3 raw stream
+        OutputSink sink = null;
+        TranscodeEngine engine = null;
+        ProgressReporter progress = new ProgressReporter(options.jobId, callback,
+                options.progressIntervalMs, options.progressStep);
+        ExtractionMetrics metrics = new ExtractionMetrics();
 
         try {
-            extractor = new MediaExtractor();
-            extractor.setDataSource(videoFile.getAbsolutePath());
-
-            // 1) Pick the audio track
-            int audioTrackIndex = -1;
-            MediaFormat inputFormat = null;
-            for (int i = 0; i < extractor.getTrackCount(); i++) {
-                MediaFormat fmt = extractor.getTrackFormat(i);
-                String mime = fmt.getString(MediaFormat.KEY_MIME);
-                if (mime != null && mime.startsWith("audio/")) {
-                    audioTrackIndex = i;
-                    inputFormat = fmt;
-                    break;
-                }
+            progress.stage(ExtractionProgress.Stage.INGEST, 0L);
+            // 1) Check there is room for the output, open the source and pick the audio track, unless
+            // a batch already did
+            if (prepared == null) {
+                reserved = checkStorage(outputAudioFile);
             }
-            if (audioTrackIndex < 0 || inputFormat == null) {
+            PreparedInput input = prepared != null ? prepared : PreparedInput.open(source);
+            if (input == null) {
                 callback.onExtractionFailed("No audio track found");
                 return;
             }
-            extractor.selectTrack(audioTrackIndex);
+            metrics.setIngestNs(input.openNs);
+            extractor = input.extractor;
+            int audioTrackIndex = input.trackIndex;
+            MediaFormat inputFormat = input.format;
 
-            // 2) Determine duration & 5-minute cap and 10 MB size cap
+            // 2) Determine the range, the 5-minute cap (counted from the range start) and 10 MB size cap
             long durationUs = inputFormat.containsKey(MediaFormat.KEY_DURATION)
                     ? inputFormat.getLong(MediaFormat.KEY_DURATION)
                     : 0L;
-            final long MAX_DURATION_US = 300L * 1_000_000L; // 5 min
-            long cutoffUs = (durationUs > 0) ? Math.min(durationUs, MAX_DURATION_US) : MAX_DURATION_US;
-            final long MAX_SIZE_BYTES = 10L * 1024L * 1024L; // 10 MB
+            long startUs = Math.max(0L, options.startMs) * 1000L;
+            long endUs = rangeEndUs(options, durationUs);
+            if ((durationUs > 0 && startUs >= durationUs) || (endUs > 0 && endUs <= startUs)) {
+                extractor.release();
+                callback.onExtractionFailed("Requested range is empty");
+                return;
+            }
+            long cutoffUs = OutputBudget.cutoffUs(startUs, endUs);
+            final long MAX_SIZE_BYTES = OutputBudget.MAX_SIZE_BYTES;
+            // Progress covers the extracted range, not the whole source
+            progress.setDurationUs(endUs > 0 ? cutoffUs - startUs : 0L);
+            if (startUs > 0) {
+                extractor.seekTo(startUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            }
+
+            // Output layout: source values unless the options ask for a profile (e.g. 16 kHz mono speech)
+            int inputSampleRate = inputFormat.containsKey(MediaFormat.KEY_SAMPLE_RATE)
+                    ? inputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE) : 44100;
+            int inputChannelCount = inputFormat.containsKey(MediaFormat.KEY_CHANNEL_COUNT)
+                    ? inputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT) : 2;
+            int sampleRate = options.outputSampleRate > 0 ? options.outputSampleRate : inputSampleRate;
+            int outputChannelCount = Math.max(1, Math.min(2,
+                    options.outputChannels > 0 ? options.outputChannels : inputChannelCount));
+            // Fragmented output is AAC only, so MP3 is neither copied nor encoded then
+            boolean decodeOnly = options.isDecodeOnly();
+            boolean fragmented = options.isFragmented();
+            int peakRate = options.peakRate();
+            boolean trimSilence = options.isTrimmingSilence();
+            boolean canCopy = canCopyFrames(inputFormat, options);
 
-            // Fast-path: if input is already MP3, just pass-through frames up to caps
             final String sourceMime = inputFormat.getString(MediaFormat.KEY_MIME);
-            if (sourceMime != null && sourceMime.equals("audio/mpeg")) {
+
+            // Fast-path: an audio-only MP3 or M4A that already fits the caps is the result as it is
+            String sourceFileMime = sourceFileMime(sourceMime);
+            if (canCopy && !fragmented && sourceFileMime != null && extractor.getTrackCount() == 1
+                    && isWholeSource(startUs, endUs, durationUs)) {
+                File result = useSourceFile(job, source, sourceFileMime, outputAudioFile, callerOutput, durationUs,
+                        progress, metrics);
+                if (result != null) {
+                    if (extractor != null) extractor.release();
+                    callback.onExtractionCompleted(result, sourceFileMime, metrics);
+                    return;
+                }
+            }
+
+            // Fast-path: if input is already MP3, just pass-through frames up to caps
+            if (canCopy && !fragmented && sourceMime != null && sourceMime.equals("audio/mpeg")) {
                 try {
-                    rawOutput = new FileOutputStream(outputAudioFile);
-                    long bytesWritten = 0L;
+                    progress.stage(ExtractionProgress.Stage.REMUX, 0L);
+                    metrics.setPath(ExtractionMetrics.Path.MP3_PASSTHROUGH);
+                    sink = new RawStreamSink(outputAudioFile);
                     long lastPtsUs = 0L;
-                    ByteBuffer buffer = ByteBuffer.allocate(256 * 1024);
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+                    MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
 
                     while (true) {
+                        job.throwIfCancelled();
                         int sampleSize = extractor.readSampleData(buffer, 0);
                         long sampleTimeUs = extractor.getSampleTime();
-                        if (sampleSize < 0 || (sampleTimeUs >= cutoffUs && cutoffUs > 0) || bytesWritten >= MAX_SIZE_BYTES) {
+                        if (sampleSize < 0 || (sampleTimeUs >= cutoffUs && cutoffUs > 0)) {
                             break;
                         }
-                        rawOutput.write(buffer.array(), 0, sampleSize);
-                        bytesWritten += sampleSize;
-                        lastPtsUs = sampleTimeUs;
-                        if (durationUs > 0) {
-                            double p = Math.min(1.0, (double) lastPtsUs / (double) Math.max(1, durationUs));
-                            try { callback.onExtractionProgress(p); } catch (Exception ignored) {}
+                        if (sampleTimeUs < startUs) {
+                            // Frames are copied whole, so the range starts at the first frame inside it
+                            extractor.advance();
+                            continue;
+                        }
+                        if (sink.bytesWritten() + sampleSize > MAX_SIZE_BYTES) {
+                            // Stop on a whole frame rather than overshoot the cap
+                            metrics.markTruncated();
+                            break;
                         }
+                        info.set(0, sampleSize, sampleTimeUs - startUs, 0);
+                        metrics.onSampleRead(sampleSize);
+                        long t0 = System.nanoTime();
+                        sink.writeSample(buffer, info);
+                        metrics.addMuxNs(System.nanoTime() - t0);
+                        lastPtsUs = sampleTimeUs - startUs;
+                        progress.update(lastPtsUs, sink.bytesWritten());
                         extractor.advance();
                     }
-                    try { rawOutput.flush(); } catch (Exception ignored) {}
-                    try { rawOutput.close(); } catch (Exception ignored) { rawOutput = null; }
-                    rawOutput = null;
+                    progress.complete(sink.bytesWritten());
+                    long t0 = System.nanoTime();
+                    sink.finish();
+                    metrics.addMuxNs(System.nanoTime() - t0);
+                    sink = null;
+                    metrics.complete(outputAudioFile.length(), lastPtsUs);
 
-                    callback.onExtractionCompleted(outputAudioFile, "audio/mpeg");
+                    callback.onExtractionCompleted(outputAudioFile, "audio/mpeg", metrics);
                     // Cleanup and return
                     if (extractor != null) extractor.release();
                     return;
                 } catch (Exception passthroughEx) {
+                    if (sink != null) sink.abort();
+                    sink = null;
+                    if (passthroughEx instanceof CancellationException) throw passthroughEx;
+                    metrics = new ExtractionMetrics(metrics);
                     Log.w(TAG, "MP3 pass-through failed, falling back to re-encode", passthroughEx);
-                    try { if (rawOutput != null) rawOutput.close(); } catch (Exception ignored) {}
-                    rawOutput = null;
                     extractor.unselectTrack(audioTrackIndex);
-                    extractor.seekTo(0, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+                    extractor.seekTo(startUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
                     extractor.selectTrack(audioTrackIndex);
                 }
             }
 
             // Fast-path: if input is AAC, remux to M4A without re-encoding (very fast)
-            if (sourceMime != null && sourceMime.equals("audio/mp4a-latm")) {
-                MediaMuxer fastMuxer = null;
+            if (canCopy && sourceMime != null && sourceMime.equals("audio/mp4a-latm")) {
                 try {
-                    fastMuxer = new MediaMuxer(outputAudioFile.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
-                    int outTrack = fastMuxer.addTrack(inputFormat);
-                    fastMuxer.start();
+                    progress.stage(ExtractionProgress.Stage.REMUX, 0L);
+                    metrics.setPath(ExtractionMetrics.Path.AAC_REMUX);
+                    if (!fragmented && copyMp4AudioSamples(job, source, outputAudioFile, startUs, cutoffUs, progress, metrics)) {
+                        if (extractor != null) extractor.release();
+                        callback.onExtractionCompleted(outputAudioFile, MimeTypes.M4A, metrics);
+                        return;
+                    }
+                    // Not a plain MP4 (ADTS, fragmented, QuickTime sound description...) or fragmented
+                    // output wanted: remux through MediaExtractor
+                    sink = aacSink(outputAudioFile, options, callback);
+                    sink.onFormat(inputFormat);
 
                     int maxIn = inputFormat.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE) ?
                             inputFormat.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE) : (256 * 1024);
-                    ByteBuffer buffer = ByteBuffer.allocate(Math.max(64 * 1024, maxIn));
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(64 * 1024, maxIn));
                     MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
 
-                    long bytesWritten = 0L;
                     long lastPtsUs = 0L;
 
                     while (true) {
+                        job.throwIfCancelled();
                         int sampleSize = extractor.readSampleData(buffer, 0);
                         long sampleTimeUs = extractor.getSampleTime();
-                        if (sampleSize < 0 || (sampleTimeUs >= cutoffUs && cutoffUs > 0) || bytesWritten >= MAX_SIZE_BYTES) {
+                        if (sampleSize < 0 || (sampleTimeUs >= cutoffUs && cutoffUs > 0)) {
                             break;
                         }
-                        info.offset = 0;
-                        info.size = sampleSize;
-                        info.presentationTimeUs = sampleTimeUs;
-                        info.flags = extractor.getSampleFlags();
-                        buffer.position(0);
-                        buffer.limit(sampleSize);
-                        fastMuxer.writeSampleData(outTrack, buffer, info);
-                        bytesWritten += sampleSize;
-                        lastPtsUs = sampleTimeUs;
-                        if (durationUs > 0) {
-                            double p = Math.min(1.0, (double) lastPtsUs / (double) Math.max(1, durationUs));
-                            try { callback.onExtractionProgress(p); } catch (Exception ignored) {}
+                        if (sampleTimeUs < startUs) {
+                            extractor.advance();
+                            continue;
                         }
+                        if (sink.bytesWritten() + sampleSize > MAX_SIZE_BYTES) {
+                            // Stop on a whole frame rather than overshoot the cap
+                            metrics.markTruncated();
+                            break;
+                        }
+                        info.set(0, sampleSize, sampleTimeUs - startUs, extractor.getSampleFlags());
+                        metrics.onSampleRead(sampleSize);
+                        long t0 = System.nanoTime();
+                        sink.writeSample(buffer, info);
+                        metrics.addMuxNs(System.nanoTime() - t0);
+                        lastPtsUs = sampleTimeUs - startUs;
+                        progress.update(lastPtsUs, sink.bytesWritten());
                         extractor.advance();
                     }
 
-                    try { fastMuxer.stop(); } catch (Exception ignored) {}
-                    try { fastMuxer.release(); } catch (Exception ignored) {}
+                    progress.complete(sink.bytesWritten());
+                    long t0 = System.nanoTime();
+                    sink.finish();
+                    metrics.addMuxNs(System.nanoTime() - t0);
+                    sink = null;
+                    metrics.complete(outputAudioFile.length(), lastPtsUs);
 
                     if (extractor != null) extractor.release();
-                    callback.onExtractionCompleted(outputAudioFile, "audio/mp4");
+                    callback.onExtractionCompleted(outputAudioFile, "audio/mp4", metrics);
                     return;
                 } catch (Exception passEx) {
+                    if (sink != null) sink.abort();
+                    sink = null;
+                    if (passEx instanceof CancellationException) throw passEx;
+                    metrics = new ExtractionMetrics(metrics);
                     Log.w(TAG, "AAC remux fast-path failed, falling back to decode/encode", passEx);
-                    try { if (fastMuxer != null) fastMuxer.release(); } catch (Exception ignored) {}
                     extractor.unselectTrack(audioTrackIndex);
-                    extractor.seekTo(0, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+                    extractor.seekTo(startUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
                     extractor.selectTrack(audioTrackIndex);
                 }
             }
 
             // 3) Configure decoder (from input track)
             final String inMime = inputFormat.getString(MediaFormat.KEY_MIME);
-            decoder = MediaCodec.createDecoderByType(inMime);
+            engine = createEngine(options.engine);
+            decoder = codecPool.acquireDecoder(inMime);
+            engine.attach(decoder, false);
             decoder.configure(inputFormat, null, null, 0);
             decoder.start();
 
-            // 4) Configure encoder (prefer MP3 if available), match sample rate and downmix to <=2 channels
-            int sampleRate = inputFormat.containsKey(MediaFormat.KEY_SAMPLE_RATE)
-                    ? inputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE) : 44100;
-            int inputChannelCount = inputFormat.containsKey(MediaFormat.KEY_CHANNEL_COUNT)
-                    ? inputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT) : 2;
-            int outputChannelCount = Math.max(1, Math.min(2, inputChannelCount));
-
-            boolean wantMp3 = isEncoderAvailable("audio/mpeg");
-            boolean usedMp3 = false;
-            String outMime;
-            MediaFormat outputFormat;
-            int targetBitrate;
-            try {
-                if (wantMp3) {
-                    outMime = "audio/mpeg";
+            // 4) Configure encoder (prefer MP3 if available) at the output rate and <=2 channels, with
+            // a bitrate that fits the whole range into the size cap (an unknown end counts as 5 min).
+            // WAV/PCM output needs none: decoded PCM goes to the file as it is. Peaks output keeps
+            // only the peaks.
+            String resultMime;
+            MediaFormat outputFormat = null;
+            WaveformPeaks peaks = peakRate > 0 ? new WaveformPeaks(sampleRate, outputChannelCount, peakRate) : null;
+            SilenceTrimmer silence = trimSilence ? new SilenceTrimmer(sampleRate, outputChannelCount,
+                    options.trimSilenceMs, options.silenceThresholdDb, startUs) : null;
+            if (options.outputFormat == ExtractionOptions.OutputFormat.PEAKS) {
+                resultMime = MimeTypes.PEAKS;
+                sink = new PeaksSink(outputAudioFile, peaks);
+            } else if (decodeOnly) {
+                boolean wav = options.outputFormat == ExtractionOptions.OutputFormat.WAV;
+                resultMime = wav ? MimeTypes.WAV : MimeTypes.PCM;
+                sink = wav ? new WavSink(outputAudioFile, sampleRate, outputChannelCount)
+                        : new RawStreamSink(outputAudioFile);
+            } else {
+                long rangeUs = endUs > 0 ? cutoffUs - startUs : 0L;
+                boolean wantMp3 = !fragmented && isEncoderAvailable("audio/mpeg");
+                boolean usedMp3 = false;
+                String outMime;
+                int targetBitrate;
+                try {
+                    if (wantMp3) {
+                        outMime = "audio/mpeg";
+                        outputFormat = MediaFormat.createAudioFormat(outMime, sampleRate, outputChannelCount);
+                        targetBitrate = OutputBudget.targetBitrate(outMime, outputChannelCount, options.outputBitrate, rangeUs);
+                        outputFormat.setInteger(MediaFormat.KEY_BIT_RATE, targetBitrate);
+                        outputFormat.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, 256 * 1024);
+                        encoder = codecPool.acquireEncoder(outMime);
+                        engine.attach(encoder, true);
+                        encoder.configure(outputFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+                        encoder.start();
+                        usedMp3 = true;
+                    } else {
+                        throw new IllegalStateException("MP3 encoder not available");
+                    }
+                } catch (Exception encEx) {
+                    Log.w(TAG, "Using AAC encoder due to MP3 unavailability/failure", encEx);
+                    // Fallback to AAC
+                    outMime = "audio/mp4a-latm";
                     outputFormat = MediaFormat.createAudioFormat(outMime, sampleRate, outputChannelCount);
-                    targetBitrate = computeTargetBitrateForMp3(outputChannelCount);
+                    targetBitrate = OutputBudget.targetBitrate(outMime, outputChannelCount, options.outputBitrate, rangeUs);
                     outputFormat.setInteger(MediaFormat.KEY_BIT_RATE, targetBitrate);
+                    outputFormat.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
                     outputFormat.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, 256 * 1024);
-                    encoder = MediaCodec.createEncoderByType(outMime);
+                    codecPool.discard(encoder);
+                    encoder = null;
+                    encoder = codecPool.acquireEncoder(outMime);
+                    engine.attach(encoder, true);
                     encoder.configure(outputFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
                     encoder.start();
-                    usedMp3 = true;
-                } else {
-                    throw new IllegalStateException("MP3 encoder not available");
+                    usedMp3 = false;
                 }
-            } catch (Exception encEx) {
-                Log.w(TAG, "Using AAC encoder due to MP3 unavailability/failure", encEx);
-                // Fallback to AAC
-                outMime = "audio/mp4a-latm";
-                outputFormat = MediaFormat.createAudioFormat(outMime, sampleRate, outputChannelCount);
-                targetBitrate = computeTargetBitrateForAac(outputChannelCount);
-                outputFormat.setInteger(MediaFormat.KEY_BIT_RATE, targetBitrate);
-                outputFormat.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
-                outputFormat.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, 256 * 1024);
-                try { if (encoder != null) encoder.release(); } catch (Exception ignored) {}
-                encoder = MediaCodec.createEncoderByType(outMime);
-                encoder.configure(outputFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
-                encoder.start();
-                usedMp3 = false;
-            }
-
-            // 5) Prepare output: muxer for AAC, raw file for MP3
-            int muxerTrackIndex = -1;
-            boolean muxerStarted = false;
-            long totalBytesWritten = 0L;
-            if (usedMp3) {
-                rawOutput = new FileOutputStream(outputAudioFile);
-            } else {
-                muxer = new MediaMuxer(outputAudioFile.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
-            }
-
-            // 6) Loop state
-            boolean extractorEOS = false;
-            boolean decoderEOS = false;
-            boolean encoderEOS = false;
-
-            MediaCodec.BufferInfo decInfo = new MediaCodec.BufferInfo();
-            MediaCodec.BufferInfo encInfo = new MediaCodec.BufferInfo();
-
-            long lastPtsUs = 0;
-
-            while (!encoderEOS) {
-
-                // Feed decoder
-                if (!extractorEOS) {
-                    int inIndex = decoder.dequeueInputBuffer(10_000);
-                    if (inIndex >= 0) {
-                        ByteBuffer inBuf = decoder.getInputBuffer(inIndex);
-                        if (inBuf == null) {
-                            // Shouldn't happen, skip this cycle
-                        } else {
-                            inBuf.clear();
-                            int sampleSize = extractor.readSampleData(inBuf, 0);
-                            long sampleTimeUs = extractor.getSampleTime();
-
-                            if (sampleSize < 0 || (sampleTimeUs >= cutoffUs && cutoffUs > 0)) {
-                                // End of input
-                                decoder.queueInputBuffer(inIndex, 0, 0, 0,
-                                        MediaCodec.BUFFER_FLAG_END_OF_STREAM);
-                                extractorEOS = true;
-                            } else {
-                                int flags = extractor.getSampleFlags();
-                                decoder.queueInputBuffer(inIndex, 0, sampleSize, sampleTimeUs, flags);
-                                extractor.advance();
-                            }
-                        }
-                    }
-                }
-
-                // Drain decoder -> feed encoder
-                boolean fedEncoderThisLoop = false;
-                int outIndex = decoder.dequeueOutputBuffer(decInfo, 10_000);
-                if (outIndex >= 0) {
-                    ByteBuffer decOut = decoder.getOutputBuffer(outIndex);
-                    if ((decInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
-                        decoderEOS = true;
-                    }
-
-                    if (decOut != null && decInfo.size > 0) {
-                        // Copy PCM to encoder input with optional downmix
-                        int encInIndex = encoder.dequeueInputBuffer(10_000);
-                        if (encInIndex >= 0) {
-                            ByteBuffer encIn = encoder.getInputBuffer(encInIndex);
-                            if (encIn != null) {
-                                encIn.clear();
-                                decOut.limit(decInfo.offset + decInfo.size);
-                                decOut.position(decInfo.offset);
-
-                                int bytesQueued;
-                                if (inputChannelCount == outputChannelCount) {
-                                    // Direct copy
-                                    int copySize = Math.min(decInfo.size, encIn.capacity());
-                                    int oldLimit = decOut.limit();
-                                    decOut.limit(decInfo.offset + copySize);
-                                    encIn.put(decOut);
-                                    decOut.limit(oldLimit);
-                                    bytesQueued = copySize;
-                                } else {
-                                    // Downmix >2 channels to stereo
-                                    bytesQueued = downmixPcmToChannels(decOut, inputChannelCount, outputChannelCount, encIn);
-                                }
-
-                                lastPtsUs = decInfo.presentationTimeUs;
-                                encoder.queueInputBuffer(encInIndex, 0, bytesQueued,
-                                        decInfo.presentationTimeUs, 0);
-                                fedEncoderThisLoop = true;
-
-                                // Progress callback
-                                if (durationUs > 0) {
-                                    double p = Math.min(1.0,
-                                            (double) lastPtsUs / (double) Math.max(1, durationUs));
-                                    try { callback.onExtractionProgress(p); } catch (Exception ignored) {}
-                                }
-                            }
-                        } // if no encoder buffer now, we’ll try next loop without losing decOut
-                    }
 
-                    // IMPORTANT: release decoder buffer AFTER copying
-                    decoder.releaseOutputBuffer(outIndex, /*render*/ false);
-                } else if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
-                    // Decoder format change (rare for audio), ignore for PCM copy pipeline
-                }
+                // 5) Prepare output: muxer (or fragment writer) for AAC, raw stream for MP3
+                sink = usedMp3 ? new RawStreamSink(outputAudioFile) : aacSink(outputAudioFile, options, callback);
+                resultMime = usedMp3 ? MimeTypes.MP3 : MimeTypes.M4A;
+                metrics.setBitrate(targetBitrate);
+            }
 
-                // If decoder reached EOS and we haven't queued EOS to encoder yet, do it
-                if (decoderEOS) {
-                    int encInIndex = encoder.dequeueInputBuffer(10_000);
-                    if (encInIndex >= 0) {
-                        encoder.queueInputBuffer(encInIndex, 0, 0, lastPtsUs,
-                                MediaCodec.BUFFER_FLAG_END_OF_STREAM);
-                    }
+            // 6) Run the selected engine until the encoder (or, for WAV/PCM, the decoder) reaches EOS,
+            // split into parallel encoding segments when asked for and the range is known and long enough
+            progress.stage(ExtractionProgress.Stage.DECODE, 0L);
+            int segmentCount = segmentCount(options, endUs > 0 ? cutoffUs - startUs : 0L);
+            metrics.setPath(decodeOnly ? ExtractionMetrics.Path.DECODE_ONLY : ExtractionMetrics.Path.TRANSCODE);
+            long producedUs;
+            if (segmentCount > 1) {
+                producedUs = new SegmentedTranscoder(job, source, audioTrackIndex, inputFormat, outputFormat, options,
+                        codecPool, progress, metrics, outputAudioFile.getAbsoluteFile().getParentFile(),
+                        startUs, cutoffUs, MAX_SIZE_BYTES,
+                        inputSampleRate, inputChannelCount, sampleRate, outputChannelCount)
+                        .run(segmentCount, extractor, decoder, encoder, engine, sink);
+            } else {
+                TranscodeSession session = new TranscodeSession(job, extractor, decoder, encoder, progress,
+                        metrics, sink, startUs, cutoffUs, MAX_SIZE_BYTES,
+                        inputSampleRate, inputChannelCount, sampleRate, outputChannelCount);
+                if (peaks != null) {
+                    session.collectPeaks(peaks);
                 }
-
-                // Drain encoder -> write
-                while (true) {
-                    int encOutIndex = encoder.dequeueOutputBuffer(encInfo, 10_000);
-                    if (encOutIndex == MediaCodec.INFO_TRY_AGAIN_LATER) {
-                        break;
-                    } else if (encOutIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
-                        if (usedMp3) {
-                            // MP3 raw stream: no muxer format change expected
-                        } else {
-                            if (muxerStarted) {
-                                throw new IllegalStateException("Encoder output format changed twice");
-                            }
-                            MediaFormat newFormat = encoder.getOutputFormat();
-                            muxerTrackIndex = muxer.addTrack(newFormat);
-                            muxer.start();
-                            muxerStarted = true;
-                        }
-                    } else if (encOutIndex >= 0) {
-                        ByteBuffer encOut = encoder.getOutputBuffer(encOutIndex);
-                        if (encOut != null && encInfo.size > 0) {
-                            encOut.position(encInfo.offset);
-                            encOut.limit(encInfo.offset + encInfo.size);
-                            if (usedMp3) {
-                                // Write raw MP3 frame data
-                                byte[] chunk = new byte[encInfo.size];
-                                encOut.get(chunk);
-                                rawOutput.write(chunk);
-                                totalBytesWritten += encInfo.size;
-                            } else {
-                                if (!muxerStarted) {
-                                    throw new IllegalStateException("Muxer has not started");
-                                }
-                                muxer.writeSampleData(muxerTrackIndex, encOut, encInfo);
-                                totalBytesWritten += encInfo.size;
-                            }
-                        }
-
-                        if ((encInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
-                            encoderEOS = true;
-                        }
-                        encoder.releaseOutputBuffer(encOutIndex, false);
-
-                        // Enforce 10 MB cap
-                        if (totalBytesWritten >= MAX_SIZE_BYTES) {
-                            // Signal EOS to encoder and break
-                            int encInIndex = encoder.dequeueInputBuffer(0);
-                            if (encInIndex >= 0) {
-                                encoder.queueInputBuffer(encInIndex, 0, 0, lastPtsUs,
-                                        MediaCodec.BUFFER_FLAG_END_OF_STREAM);
-                            }
-                            break;
-                        }
-                    }
+                if (silence != null) {
+                    session.trimSilence(silence);
                 }
+                engine.run(session);
+                producedUs = silence != null ? silence.keptUs() : session.lastPtsUs;
             }
 
             // Cleanup
+            engine.release();
+            engine = null;
             if (extractor != null) extractor.release();
-            if (decoder != null) {
-                try { decoder.stop(); } catch (Exception ignored) {}
-                decoder.release();
-            }
-            if (encoder != null) {
-                try { encoder.stop(); } catch (Exception ignored) {}
-                encoder.release();
-            }
-            if (muxer != null) {
-                try { muxer.stop(); } catch (Exception ignored) {}
-                muxer.release();
+            // Clean finish: keep the codecs for the next job
+            codecPool.recycle(decoder);
+            decoder = null;
+            codecPool.recycle(encoder);
+            encoder = null;
+            progress.complete(sink.bytesWritten());
+            long finishStartNs = System.nanoTime();
+            sink.finish();
+            metrics.addMuxNs(System.nanoTime() - finishStartNs);
+            sink = null;
+            metrics.complete(outputAudioFile.length(), producedUs);
+
+            if (peaks != null) {
+                callback.onPeaks(peaks);
             }
-            if (rawOutput != null) {
-                try { rawOutput.flush(); } catch (Exception ignored) {}
-                try { rawOutput.close(); } catch (Exception ignored) {}
+            if (silence != null) {
+                callback.onSilenceTrimmed(silence);
             }
-
-            callback.onExtractionCompleted(outputAudioFile, usedMp3 ? "audio/mpeg" : "audio/mp4");
+            callback.onExtractionCompleted(outputAudioFile, resultMime, metrics);
 
         } catch (Exception e) {
-            Log.e(TAG, "Extraction failed", e);
+            boolean cancelled = e instanceof CancellationException;
+            if (!cancelled) {
+                Log.e(TAG, "Extraction failed", e);
+            }
+            // Best-effort cleanup; release codecs before reporting so a queued job can pick them up
+            try { if (engine != null) engine.release(); } catch (Exception ignored) {}
+            if (sink != null) sink.abort();
+            codecPool.discard(encoder);
+            codecPool.discard(decoder);
+            try { if (extractor != null) extractor.release(); } catch (Exception ignored) {}
+            if (cancelled) {
+                deleteQuietly(outputAudioFile);
+            }
             try {
-                callback.onExtractionFailed(e.getMessage());
+                callback.onExtractionFailed(cancelled ? CANCELLED_MESSAGE : e.getMessage());
             } catch (Exception ignored) {}
-            // Best-effort cleanup
-            try { if (muxer != null) muxer.release(); } catch (Exception ignored) {}
-            try { if (encoder != null) encoder.release(); } catch (Exception ignored) {}
-            try { if (decoder != null) decoder.release(); } catch (Exception ignored) {}
-            try { if (extractor != null) extractor.release(); } catch (Exception ignored) {}
-            try { if (rawOutput != null) rawOutput.close(); } catch (Exception ignored) {}
+        } finally {
+            source.close();
+            if (reserved != null) {
+                reserved.endJob();
+            }
         }
-    }).start();
-}
+    }
 
-}
\ No newline at end of file
+}
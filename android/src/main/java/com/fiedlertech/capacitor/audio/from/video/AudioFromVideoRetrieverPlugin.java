@@ -6,6 +6,8 @@ import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import android.os.Build;
 
+import com.getcapacitor.Bridge;
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.PermissionState;
 import com.getcapacitor.Plugin;
@@ -15,8 +17,14 @@ import com.getcapacitor.annotation.CapacitorPlugin;
 import com.getcapacitor.annotation.Permission;
 import com.getcapacitor.annotation.PermissionCallback;
 
+import org.json.JSONObject;
+
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 @CapacitorPlugin(name = "AudioFromVideoRetriever", permissions = {
     @Permission(
@@ -30,6 +38,21 @@ public class AudioFromVideoRetrieverPlugin extends Plugin {
 
     private AudioFromVideoRetriever implementation = new AudioFromVideoRetriever();
 
+    @Override
+    public void load() {
+        implementation.setMaxConcurrentExtractions(
+                getConfig().getInt("maxConcurrentExtractions", ExtractionScheduler.DEFAULT_MAX_CONCURRENT));
+        long cacheBytes = getConfig().getInt("resultCacheMaxMB", (int) (ResultCache.DEFAULT_MAX_BYTES >> 20)) * 1024L * 1024L;
+        implementation.setResultCache(new ResultCache(new File(bridge.getContext().getCacheDir(), "afv_results"), cacheBytes));
+        long quotaBytes = getConfig().getInt("storageQuotaMB", (int) (StorageGovernor.DEFAULT_QUOTA_BYTES >> 20)) * 1024L * 1024L;
+        implementation.setStorageGovernor(new StorageGovernor(new File(bridge.getContext().getCacheDir(), "afv_ingest"), quotaBytes));
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        implementation.releaseCodecs();
+    }
+
     public String getStoragePermission() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
             return "";
@@ -47,6 +70,15 @@ public class AudioFromVideoRetrieverPlugin extends Plugin {
         }
     }
 
+    @PermissionCallback
+    private void probePermsCallback(PluginCall call) {
+        if (getPermissionState(getStoragePermission()) == PermissionState.GRANTED) {
+            probeMedia(call);
+        } else {
+            call.reject("Permission is required to read the media");
+        }
+    }
+
     @PluginMethod
     public void extractAudio(PluginCall call) {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU && getPermissionState(getStoragePermission()) != PermissionState.GRANTED) {
@@ -56,45 +88,81 @@ public class AudioFromVideoRetrieverPlugin extends Plugin {
         String path = call.getString("path");
         String outputPath = call.getString("outputPath");
         Boolean includeData = call.getBoolean("includeData", false);
+        Boolean streamData = call.getBoolean("streamData", false);
+        int dataChunkSize = call.getInt("dataChunkSize", AudioFromVideoRetriever.DEFAULT_DATA_CHUNK_BYTES);
+
+        ExtractionOptions options = readOptions(call.getData());
 
         ContentResolver resolver = bridge.getContext().getContentResolver();
-        File inputFile = implementation.getFileObject(path, resolver);
-        File outputFile = (outputPath == null || outputPath.isEmpty())
-                ? new File(bridge.getContext().getCacheDir(), "afv_tmp_" + System.currentTimeMillis() + ".tmp")
+        MediaSource source = implementation.openSource(path, resolver);
+        if (source == null) {
+            call.reject("Unable to open input path");
+            return;
+        }
+        // Without an outputPath the result lands in (and may come straight from) the result cache
+        File requestedFile = (outputPath == null || outputPath.isEmpty())
+                ? null
                 : implementation.getFileObject(outputPath, resolver);
+        // Fragments are announced by path while the job runs, so fragmented output gets its .m4a
+        // extension up front instead of a rename once it is done
+        File outputFile = requestedFile != null && options.isFragmented()
+                ? new File(MimeTypes.withOutputExt(requestedFile.getAbsolutePath(), MimeTypes.M4A))
+                : requestedFile;
+        String resultPath = outputFile != null && !outputFile.equals(requestedFile)
+                ? outputFile.getAbsolutePath()
+                : outputPath;
+
+        // Announced before dispatch: a cached result completes the call synchronously
+        if (options.jobId == null || options.jobId.isEmpty()) {
+            options.jobId = UUID.randomUUID().toString();
+        }
+        JSObject queued = new JSObject();
+        queued.put("jobId", options.jobId);
+        queued.put("path", path);
+        notifyListeners("extractionQueued", queued);
+
+        implementation.extractAudio(source, outputFile, options, new AudioFromVideoRetriever.ExtractionCallback() {
+            private JSObject peaks;
+            private JSObject silence;
 
-        implementation.extractAudio(inputFile, outputFile, new AudioFromVideoRetriever.ExtractionCallback() {
             @Override
-            public void onExtractionCompleted(File audioFile, String mimeType) throws IOException {
+            public void onExtractionCompleted(File audioFile, String mimeType, ExtractionMetrics metrics) throws IOException {
 				// If the extension of outputPath doesn't match mimeType, rename file to correct extension
-				String desiredExt = mimeType != null && mimeType.equals("audio/mpeg") ? ".mp3" : ".m4a";
-				String finalPath = outputPath;
-				try {
-					String abs = audioFile.getAbsolutePath();
-					int lastDot = abs.lastIndexOf('.')
-							;
-					String candidate;
-					if (lastDot > 0) {
-						candidate = abs.substring(0, lastDot) + desiredExt;
-					} else {
-						candidate = abs + desiredExt;
-					}
-					if (!abs.endsWith(desiredExt)) {
-						File renamed = new File(candidate);
-						if (audioFile.renameTo(renamed)) {
-							finalPath = renamed.getAbsolutePath();
-							audioFile = renamed;
-						}
-					}
-				} catch (Exception ignored) {}
+				File renamed = withMimeExtension(audioFile, mimeType);
+				String finalPath = (outputFile != null && renamed == audioFile) ? resultPath : renamed.getAbsolutePath();
+				audioFile = renamed;
+				implementation.allowRead(audioFile);
 
 				JSObject ret = new JSObject();
-				if (includeData) {
+				if (streamData) {
+					// Deliver bytes as audioData events before resolving; the promise marks the end
+					String streamJobId = options.jobId;
+					int chunks = implementation.streamBase64Chunks(audioFile, dataChunkSize, (sequence, offset, base64Data, last) -> {
+						JSObject chunk = new JSObject();
+						chunk.put("jobId", streamJobId);
+						chunk.put("sequence", sequence);
+						chunk.put("offset", offset);
+						chunk.put("data", base64Data);
+						chunk.put("last", last);
+						chunk.put("mimeType", mimeType);
+						notifyListeners("audioData", chunk);
+					});
+					ret.put("dataChunks", chunks);
+				} else if (includeData) {
 					ret.put("dataUrl", implementation.getDataUrlFromAudioFile(audioFile, mimeType));
 				}
 				ret.put("path", finalPath);
+				ret.put("webUrl", webUrl(audioFile));
 				ret.put("mimeType", mimeType);
 				ret.put("fileSize", audioFile.length());
+				ret.put("jobId", options.jobId);
+				ret.put("metrics", toJS(metrics));
+				if (peaks != null) {
+					ret.put("peaks", peaks);
+				}
+				if (silence != null) {
+					ret.put("silence", silence);
+				}
 				call.resolve(ret);
             }
 
@@ -104,9 +172,417 @@ public class AudioFromVideoRetrieverPlugin extends Plugin {
             }
 
             @Override
-            public void onExtractionProgress(Double progress) {
-                
+            public void onExtractionProgress(ExtractionProgress progress) {
+                notifyProgress(progress);
+            }
+
+            @Override
+            public void onFragmentWritten(ExtractionFragment fragment) {
+                notifyFragment(fragment);
+            }
+
+            @Override
+            public void onPeaks(WaveformPeaks waveform) {
+                peaks = toJS(waveform);
+            }
+
+            @Override
+            public void onSilenceTrimmed(SilenceTrimmer trimmer) {
+                silence = toJS(trimmer);
             }
         });
     }
+
+    // Per-call extraction options, shared by extractAudio and each extractAudioBatch item
+    private static ExtractionOptions readOptions(JSONObject data) {
+        ExtractionOptions options = new ExtractionOptions();
+        options.jobId = data.optString("jobId", null);
+        options.priority = data.optInt("priority", 0);
+        String engine = data.optString("engine", null);
+        if ("polling".equals(engine)) {
+            options.engine = ExtractionOptions.Engine.POLLING;
+        } else if ("async".equals(engine)) {
+            options.engine = ExtractionOptions.Engine.ASYNC;
+        }
+        String outputFormat = data.optString("outputFormat", null);
+        if ("wav".equals(outputFormat)) {
+            options.outputFormat = ExtractionOptions.OutputFormat.WAV;
+        } else if ("pcm_s16le".equals(outputFormat)) {
+            options.outputFormat = ExtractionOptions.OutputFormat.PCM_S16LE;
+        } else if ("peaks".equals(outputFormat)) {
+            options.outputFormat = ExtractionOptions.OutputFormat.PEAKS;
+        }
+        options.useCache = data.optBoolean("useCache", true);
+        options.parallelSegments = data.optInt("parallelSegments", 1);
+        options.startMs = data.optLong("startMs", 0L);
+        options.endMs = data.optLong("endMs", 0L);
+        // Explicit values override the preset
+        if ("speech".equals(data.optString("profile", null))) {
+            options.applySpeechProfile();
+        }
+        options.outputSampleRate = data.optInt("outputSampleRate", options.outputSampleRate);
+        options.outputChannels = data.optInt("outputChannels", options.outputChannels);
+        options.outputBitrate = data.optInt("outputBitrate", options.outputBitrate);
+        options.fragmentDurationMs = data.optLong("fragmentDuration", options.fragmentDurationMs);
+        options.peaksPerSecond = data.optInt("peaksPerSecond", options.peaksPerSecond);
+        options.trimSilenceMs = data.optLong("trimSilence", options.trimSilenceMs);
+        options.silenceThresholdDb = data.optDouble("silenceThreshold", options.silenceThresholdDb);
+        options.progressIntervalMs = data.optLong("progressInterval", options.progressIntervalMs);
+        options.progressStep = data.optDouble("progressStep", options.progressStep);
+        return options;
+    }
+
+    private void notifyProgress(ExtractionProgress progress) {
+        JSObject event = new JSObject();
+        event.put("jobId", progress.jobId);
+        event.put("stage", progress.stage.jsName());
+        event.put("progress", progress.progress);
+        event.put("bytesWritten", progress.bytesWritten);
+        event.put("elapsedMs", progress.elapsedMs);
+        event.put("stageElapsedMs", progress.stageElapsedMs);
+        event.put("etaMs", progress.etaMs);
+        notifyListeners("extractionProgress", event);
+    }
+
+    private void notifyFragment(ExtractionFragment fragment) {
+        implementation.allowRead(new File(fragment.path));
+        JSObject event = new JSObject();
+        event.put("jobId", fragment.jobId);
+        event.put("path", fragment.path);
+        event.put("webUrl", webUrl(new File(fragment.path)));
+        event.put("sequence", fragment.sequence);
+        event.put("init", fragment.isInit());
+        event.put("offset", fragment.offset);
+        event.put("length", fragment.length);
+        event.put("startMs", fragment.startUs / 1000L);
+        event.put("durationMs", fragment.durationUs / 1000L);
+        notifyListeners("extractionFragment", event);
+    }
+
+    @PermissionCallback
+    private void batchPermsCallback(PluginCall call) {
+        if (getPermissionState(getStoragePermission()) == PermissionState.GRANTED) {
+            extractAudioBatch(call);
+        } else {
+            call.reject("Permission is required to read the videos");
+        }
+    }
+
+    @PluginMethod
+    public void extractAudioBatch(PluginCall call) {
+        // One permission check for the whole batch
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU && getPermissionState(getStoragePermission()) != PermissionState.GRANTED) {
+            requestPermissionForAlias(getStoragePermission(), call, "batchPermsCallback");
+            return;
+        }
+        JSArray itemsArray = call.getArray("items");
+        if (itemsArray == null || itemsArray.length() == 0) {
+            call.reject("items is required");
+            return;
+        }
+        int total = itemsArray.length();
+        JSONObject[] itemData = new JSONObject[total];
+        for (int i = 0; i < total; i++) {
+            itemData[i] = itemsArray.optJSONObject(i);
+            if (itemData[i] == null) {
+                call.reject("items[" + i + "] is not an object");
+                return;
+            }
+        }
+
+        String batchId = call.getString("batchId");
+        if (batchId == null || batchId.isEmpty()) {
+            batchId = UUID.randomUUID().toString();
+        }
+        String id = batchId;
+        ContentResolver resolver = bridge.getContext().getContentResolver();
+        JSArray results = new JSArray();
+        JSObject[] itemResults = new JSObject[total];
+        List<AudioFromVideoRetriever.BatchItem> items = new ArrayList<>();
+        int rejected = 0;
+        for (int i = 0; i < total; i++) {
+            JSONObject data = itemData[i];
+            int index = i;
+            ExtractionOptions options = readOptions(data);
+            String path = data.optString("path", null);
+            String outputPath = data.optString("outputPath", null);
+            JSObject result = new JSObject();
+            result.put("index", index);
+            result.put("path", path);
+            itemResults[i] = result;
+            MediaSource source = implementation.openSource(path, resolver);
+            if (source == null) {
+                result.put("error", "Unable to open input path");
+                rejected++;
+                continue;
+            }
+            File outputFile = (outputPath == null || outputPath.isEmpty())
+                    ? null
+                    : implementation.getFileObject(outputPath, resolver);
+            items.add(new AudioFromVideoRetriever.BatchItem(source, outputFile, options, new AudioFromVideoRetriever.ExtractionCallback() {
+                @Override
+                public void onExtractionCompleted(File audioFile, String mimeType, ExtractionMetrics metrics) {
+                    File finalFile = outputFile != null ? withMimeExtension(audioFile, mimeType) : audioFile;
+                    implementation.allowRead(finalFile);
+                    result.put("jobId", options.jobId);
+                    result.put("outputPath", finalFile.getAbsolutePath());
+                    result.put("webUrl", webUrl(finalFile));
+                    result.put("mimeType", mimeType);
+                    result.put("fileSize", finalFile.length());
+                    result.put("metrics", toJS(metrics));
+                    notifyListeners("batchItem", result);
+                }
+
+                @Override
+                public void onExtractionFailed(String errorMessage) {
+                    result.put("jobId", options.jobId);
+                    result.put("error", errorMessage != null ? errorMessage : "Extraction failed");
+                    notifyListeners("batchItem", result);
+                }
+
+                @Override
+                public void onExtractionProgress(ExtractionProgress progress) {
+                    notifyProgress(progress);
+                }
+
+                @Override
+                public void onFragmentWritten(ExtractionFragment fragment) {
+                    notifyFragment(fragment);
+                }
+
+                @Override
+                public void onPeaks(WaveformPeaks waveform) {
+                    result.put("peaks", toJS(waveform));
+                }
+
+                @Override
+                public void onSilenceTrimmed(SilenceTrimmer trimmer) {
+                    result.put("silence", toJS(trimmer));
+                }
+            }));
+        }
+
+        int unopened = rejected;
+        implementation.extractAudioBatch(id, call.getInt("priority", 0), items, new AudioFromVideoRetriever.BatchListener() {
+            @Override
+            public void onBatchProgress(int finished, int batchTotal, double progress) {
+                JSObject event = new JSObject();
+                event.put("batchId", id);
+                event.put("finished", finished + unopened);
+                event.put("total", total);
+                event.put("progress", progress);
+                notifyListeners("batchProgress", event);
+            }
+
+            @Override
+            public void onBatchFinished(int completed, int failed) {
+                for (JSObject result : itemResults) {
+                    results.put(result);
+                }
+                JSObject ret = new JSObject();
+                ret.put("batchId", id);
+                ret.put("completed", completed);
+                ret.put("failed", failed + unopened);
+                ret.put("results", results);
+                call.resolve(ret);
+            }
+        });
+    }
+
+    // Where the WebView's local server serves the file (what Capacitor.convertFileSrc returns). The
+    // server answers Range requests, so fetch() or an <audio> element reads it without the bridge.
+    private String webUrl(File file) {
+        return bridge.getLocalUrl() + Bridge.CAPACITOR_FILE_START + file.getAbsolutePath();
+    }
+
+    // Renames the output so its extension matches the container that was actually written
+    private static File withMimeExtension(File audioFile, String mimeType) {
+        String abs = audioFile.getAbsolutePath();
+        String desired = MimeTypes.withOutputExt(abs, mimeType);
+        if (desired.equals(abs)) {
+            return audioFile;
+        }
+        File renamed = new File(desired);
+        return audioFile.renameTo(renamed) ? renamed : audioFile;
+    }
+
+    private static JSObject toJS(ExtractionMetrics metrics) {
+        JSObject m = new JSObject();
+        m.put("path", metrics.getPath().jsName());
+        m.put("segments", metrics.getSegments());
+        m.put("bitrate", metrics.getBitrate());
+        m.put("truncated", metrics.isTruncated());
+        m.put("ingestMs", metrics.getIngestMs());
+        m.put("firstSampleMs", metrics.getFirstSampleMs());
+        m.put("decodeMs", metrics.getDecodeMs());
+        m.put("encodeMs", metrics.getEncodeMs());
+        m.put("muxMs", metrics.getMuxMs());
+        m.put("totalMs", metrics.getTotalMs());
+        m.put("bytesIn", metrics.getBytesIn());
+        m.put("bytesOut", metrics.getBytesOut());
+        m.put("mediaDurationMs", metrics.getMediaDurationMs());
+        m.put("realtimeFactor", metrics.getRealtimeFactor());
+        return m;
+    }
+
+    // The peaks as base64 of little-endian int16 min/max/rms triplets, i.e. an Int16Array in JS
+    private static JSObject toJS(WaveformPeaks waveform) {
+        byte[] bytes = waveform.toBytes();
+        JSObject p = new JSObject();
+        p.put("perSecond", waveform.perSecond);
+        p.put("count", waveform.count());
+        p.put("data", Base64Encoder.encodeToString(bytes, 0, bytes.length));
+        return p;
+    }
+
+    // Kept segments in ms: where each starts in the source and in the output, and how long it is
+    private static JSObject toJS(SilenceTrimmer trimmer) {
+        long[] segments = trimmer.segmentsUs();
+        JSArray kept = new JSArray();
+        for (int i = 0; i < segments.length; i += 3) {
+            JSObject segment = new JSObject();
+            segment.put("sourceMs", segments[i] / 1000L);
+            segment.put("outputMs", segments[i + 1] / 1000L);
+            segment.put("durationMs", segments[i + 2] / 1000L);
+            kept.put(segment);
+        }
+        JSObject s = new JSObject();
+        s.put("removedMs", trimmer.removedUs() / 1000L);
+        s.put("keptSegments", kept);
+        return s;
+    }
+
+    private static JSObject toJS(RollingHistogram.Summary summary) {
+        JSObject h = new JSObject();
+        h.put("count", summary.count);
+        h.put("window", summary.window);
+        h.put("min", summary.min);
+        h.put("max", summary.max);
+        h.put("mean", summary.mean);
+        h.put("p50", summary.p50);
+        h.put("p90", summary.p90);
+        h.put("p99", summary.p99);
+        return h;
+    }
+
+    @PluginMethod
+    public void getStats(PluginCall call) {
+        ExtractionStats stats = implementation.getStats();
+        JSObject stages = new JSObject();
+        for (Map.Entry<String, RollingHistogram.Summary> e : stats.stageSummaries().entrySet()) {
+            stages.put(e.getKey(), toJS(e.getValue()));
+        }
+        JSObject paths = new JSObject();
+        for (Map.Entry<ExtractionMetrics.Path, RollingHistogram.Summary> e : stats.pathSummaries().entrySet()) {
+            paths.put(e.getKey().jsName(), toJS(e.getValue()));
+        }
+        JSObject ret = new JSObject();
+        ret.put("completed", stats.getCompleted());
+        ret.put("failed", stats.getFailed());
+        ret.put("cancelled", stats.getCancelled());
+        ret.put("bytesIn", stats.getBytesIn());
+        ret.put("bytesOut", stats.getBytesOut());
+        ret.put("window", stats.getWindow());
+        ret.put("stages", stages);
+        ret.put("paths", paths);
+        StorageGovernor storage = implementation.getStorageGovernor();
+        if (storage != null) {
+            JSObject disk = new JSObject();
+            disk.put("usedBytes", storage.getUsedBytes());
+            disk.put("quotaBytes", storage.getQuotaBytes());
+            disk.put("freeBytes", storage.getFreeBytes());
+            ret.put("storage", disk);
+        }
+        if (call.getBoolean("reset", false)) {
+            stats.reset();
+        }
+        call.resolve(ret);
+    }
+
+    // Track formats of a source and the path extractAudio would take with the given options,
+    // without decoding anything; repeated probes of an unchanged source come from memory
+    @PluginMethod
+    public void probeMedia(PluginCall call) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU && getPermissionState(getStoragePermission()) != PermissionState.GRANTED) {
+            requestPermissionForAlias(getStoragePermission(), call, "probePermsCallback");
+            return;
+        }
+        MediaSource source = implementation.openSource(call.getString("path"), bridge.getContext().getContentResolver());
+        if (source == null) {
+            call.reject("Unable to open input path");
+            return;
+        }
+        MediaProbe probe;
+        try {
+            probe = implementation.probeMedia(source);
+        } catch (Exception e) {
+            call.reject("Unable to probe media: " + e.getMessage());
+            return;
+        }
+        ExtractionMetrics.Path path = AudioFromVideoRetriever.plannedPath(probe, readOptions(call.getData()));
+        JSObject ret = new JSObject();
+        ret.put("hasAudio", probe.hasAudio);
+        ret.put("hasVideo", probe.hasVideo);
+        ret.put("trackCount", probe.trackCount);
+        ret.put("durationMs", probe.durationUs / 1000L);
+        if (probe.hasAudio) {
+            ret.put("mimeType", probe.audioMime);
+            ret.put("sampleRate", probe.sampleRate);
+            ret.put("channels", probe.channels);
+            ret.put("bitrate", probe.bitrate);
+        }
+        if (path != null) {
+            ret.put("plannedPath", path.jsName());
+        }
+        call.resolve(ret);
+    }
+
+    // Base64 of one byte range of a file this plugin produced, e.g. the pieces announced by
+    // extractionFragment events; only the requested bytes are read and sent over the bridge
+    @PluginMethod
+    public void readRange(PluginCall call) {
+        File file = implementation.getLocalFile(call.getString("path"));
+        if (file == null) {
+            call.reject("path must be a local file path");
+            return;
+        }
+        if (!implementation.isReadable(file)) {
+            call.reject("path is not an output of this plugin");
+            return;
+        }
+        long offset = call.getData().optLong("offset", 0L);
+        int length = call.getInt("length", AudioFromVideoRetriever.MAX_READ_RANGE_BYTES);
+        if (offset < 0 || length < 0) {
+            call.reject("offset and length must not be negative");
+            return;
+        }
+        byte[] data;
+        long fileSize;
+        try {
+            data = implementation.readRange(file, offset, length);
+            fileSize = file.length();
+        } catch (IOException e) {
+            call.reject("Unable to read range: " + e.getMessage());
+            return;
+        }
+        JSObject ret = new JSObject();
+        ret.put("data", Base64Encoder.encodeToString(data, 0, data.length));
+        ret.put("offset", offset);
+        ret.put("length", data.length);
+        ret.put("fileSize", fileSize);
+        ret.put("eof", offset + data.length >= fileSize);
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void cancelExtraction(PluginCall call) {
+        String jobId = call.getString("jobId");
+        if (jobId == null || jobId.isEmpty()) {
+            call.reject("jobId is required");
+            return;
+        }
+        JSObject ret = new JSObject();
+        ret.put("cancelled", implementation.cancelExtraction(jobId));
+        call.resolve(ret);
+    }
 }
@@ -0,0 +1,58 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import java.nio.charset.StandardCharsets;
+
+// Standard-alphabet base64 without line breaks, for data URLs and audioData chunks.
+// Hand-written because java.util.Base64 needs API 26.
+// Output is built as ASCII bytes and turned into a String once, with no intermediate copies.
+final class Base64Encoder {
+
+    private static final byte[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+
+    private Base64Encoder() {}
+
+    static int encodedLength(int length) {
+        return ((length + 2) / 3) * 4;
+    }
+
+    // Encodes src[off, off+len) into dst at dstOff; returns the number of bytes written
+    static int encode(byte[] src, int off, int len, byte[] dst, int dstOff) {
+        int end = off + len;
+        int whole = off + (len / 3) * 3;
+        int d = dstOff;
+        for (int s = off; s < whole; s += 3) {
+            int bits = (src[s] & 0xff) << 16 | (src[s + 1] & 0xff) << 8 | (src[s + 2] & 0xff);
+            dst[d] = ALPHABET[bits >>> 18];
+            dst[d + 1] = ALPHABET[(bits >>> 12) & 0x3f];
+            dst[d + 2] = ALPHABET[(bits >>> 6) & 0x3f];
+            dst[d + 3] = ALPHABET[bits & 0x3f];
+            d += 4;
+        }
+        int rest = end - whole;
+        if (rest > 0) {
+            int bits = (src[whole] & 0xff) << 16 | (rest == 2 ? (src[whole + 1] & 0xff) << 8 : 0);
+            dst[d] = ALPHABET[bits >>> 18];
+            dst[d + 1] = ALPHABET[(bits >>> 12) & 0x3f];
+            dst[d + 2] = rest == 2 ? ALPHABET[(bits >>> 6) & 0x3f] : (byte) '=';
+            dst[d + 3] = '=';
+            d += 4;
+        }
+        return d - dstOff;
+    }
+
+    static String encodeToString(byte[] src, int off, int len) {
+        byte[] out = new byte[encodedLength(len)];
+        encode(src, off, len, out, 0);
+        return new String(out, StandardCharsets.US_ASCII);
+    }
+
+    // "data:<mime>;base64,<data>" built in a single buffer
+    static String dataUrl(String mimeType, byte[] data, int len) {
+        byte[] prefix = ("data:" + mimeType + ";base64,").getBytes(StandardCharsets.US_ASCII);
+        byte[] out = new byte[prefix.length + encodedLength(len)];
+        System.arraycopy(prefix, 0, out, 0, prefix.length);
+        encode(data, 0, len, out, prefix.length);
+        return new String(out, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,185 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import java.nio.ByteBuffer;
+
+// Growable big-endian buffer for ISO-BMFF boxes: nested box sizes are patched on close.
+// Also builds the header boxes every single-track audio file shares.
+final class BoxWriter {
+
+    private ByteBuffer buf;
+    private final int[] open = new int[16];
+    private int depth = 0;
+
+    BoxWriter(int capacity) {
+        buf = ByteBuffer.allocate(capacity);
+    }
+
+    // The written bytes, position at the end
+    ByteBuffer buffer() {
+        return buf;
+    }
+
+    int size() {
+        return buf.position();
+    }
+
+    byte[] toByteArray() {
+        byte[] out = new byte[buf.position()];
+        ByteBuffer view = buf.duplicate();
+        view.flip();
+        view.get(out);
+        return out;
+    }
+
+    BoxWriter open(String type) {
+        open[depth++] = buf.position();
+        return putInt(0).fourcc(type);
+    }
+
+    // Box with version and flags
+    BoxWriter openFull(String type, int version, int flags) {
+        return open(type).putInt(version << 24 | flags);
+    }
+
+    void close() {
+        int start = open[--depth];
+        buf.putInt(start, buf.position() - start);
+    }
+
+    BoxWriter fourcc(String type) {
+        return putInt(Mp4Demuxer.fourcc(type));
+    }
+
+    BoxWriter putByte(int v) {
+        ensure(1);
+        buf.put((byte) v);
+        return this;
+    }
+
+    BoxWriter putShort(int v) {
+        ensure(2);
+        buf.putShort((short) v);
+        return this;
+    }
+
+    BoxWriter putInt(int v) {
+        ensure(4);
+        buf.putInt(v);
+        return this;
+    }
+
+    BoxWriter putLong(long v) {
+        ensure(8);
+        buf.putLong(v);
+        return this;
+    }
+
+    BoxWriter putBytes(byte[] bytes) {
+        ensure(bytes.length);
+        buf.put(bytes);
+        return this;
+    }
+
+    // Null-terminated
+    BoxWriter putAscii(String s) {
+        ensure(s.length() + 1);
+        for (int i = 0; i < s.length(); i++) {
+            buf.put((byte) s.charAt(i));
+        }
+        buf.put((byte) 0);
+        return this;
+    }
+
+    int reserveInt() {
+        int at = buf.position();
+        putInt(0);
+        return at;
+    }
+
+    void patchInt(int at, int v) {
+        buf.putInt(at, v);
+    }
+
+    private void ensure(int bytes) {
+        if (buf.remaining() < bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + bytes));
+            buf.flip();
+            bigger.put(buf);
+            buf = bigger;
+        }
+    }
+
+    // --- Shared boxes of a single audio track (track ID 1) ---
+
+    void ftyp(String major, String... compatible) {
+        open("ftyp").fourcc(major).putInt(0);
+        for (String brand : compatible) {
+            fourcc(brand);
+        }
+        close();
+    }
+
+    void mvhd(long timescale, long duration) {
+        openTimed("mvhd", timescale, duration);
+        putInt(0x00010000).putShort(0x0100).putShort(0).putInt(0).putInt(0);
+        unityMatrix();
+        for (int i = 0; i < 6; i++) {
+            putInt(0);
+        }
+        putInt(2); // next_track_ID
+        close();
+    }
+
+    void tkhd(long duration) {
+        boolean wide = duration > 0xffffffffL;
+        openFull("tkhd", wide ? 1 : 0, 0x000003); // enabled, in movie
+        if (wide) {
+            putLong(0).putLong(0).putInt(1).putInt(0).putLong(duration);
+        } else {
+            putInt(0).putInt(0).putInt(1).putInt(0).putInt((int) duration);
+        }
+        putInt(0).putInt(0).putShort(0).putShort(1).putShort(0x0100).putShort(0);
+        unityMatrix();
+        putInt(0).putInt(0); // width, height
+        close();
+    }
+
+    void mdhd(long timescale, long duration, int language) {
+        openTimed("mdhd", timescale, duration);
+        putShort(language).putShort(0);
+        close();
+    }
+
+    void soundHandler() {
+        openFull("hdlr", 0, 0).putInt(0).fourcc("soun").putInt(0).putInt(0).putInt(0);
+        putAscii("SoundHandler");
+        close();
+    }
+
+    // smhd and a dref pointing at this file
+    void soundMediaHeaders() {
+        openFull("smhd", 0, 0).putShort(0).putShort(0);
+        close();
+        open("dinf");
+        openFull("dref", 0, 0).putInt(1);
+        openFull("url ", 0, 1); // media is in this file
+        close();
+        close();
+        close();
+    }
+
+    // Version 1 only when the duration needs it
+    private void openTimed(String type, long timescale, long duration) {
+        if (duration > 0xffffffffL) {
+            openFull(type, 1, 0).putLong(0).putLong(0).putInt((int) timescale).putLong(duration);
+        } else {
+            openFull(type, 0, 0).putInt(0).putInt(0).putInt((int) timescale).putInt((int) duration);
+        }
+    }
+
+    private void unityMatrix() {
+        putInt(0x00010000).putInt(0).putInt(0);
+        putInt(0).putInt(0x00010000).putInt(0);
+        putInt(0).putInt(0).putInt(0x40000000);
+    }
+}
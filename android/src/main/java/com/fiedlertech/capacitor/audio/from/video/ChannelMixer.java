@@ -0,0 +1,250 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+// Matrix-based channel mapping for interleaved PCM. Works on bulk short[]/float[] blocks,
+// accumulates in float and saturates once per output sample, so loud multichannel
+// sources cannot wrap around. An instance keeps scratch arrays and is not thread-safe.
+public final class ChannelMixer {
+
+    // Speaker roles in Android's default interleaving order for each channel count
+    private static final int FL = 0, FR = 1, FC = 2, LFE = 3, BL = 4, BR = 5, SL = 6, SR = 7, BC = 8, MONO = 9;
+
+    private static final int[][] DEFAULT_LAYOUTS = {
+        {},
+        {MONO},
+        {FL, FR},
+        {FL, FR, FC},
+        {FL, FR, BL, BR},
+        {FL, FR, FC, BL, BR},
+        {FL, FR, FC, LFE, BL, BR},
+        {FL, FR, FC, LFE, BL, BR, BC},
+        {FL, FR, FC, LFE, BL, BR, SL, SR},
+    };
+
+    // ITU-R BS.775 stereo downmix gains per role {left, right}; LFE is dropped
+    private static final float MINUS_3DB = 0.70710677f;
+    private static final float[][] STEREO_GAINS = {
+        {1f, 0f},                // FL
+        {0f, 1f},                // FR
+        {MINUS_3DB, MINUS_3DB},  // FC
+        {0f, 0f},                // LFE
+        {MINUS_3DB, 0f},         // BL
+        {0f, MINUS_3DB},         // BR
+        {MINUS_3DB, 0f},         // SL
+        {0f, MINUS_3DB},         // SR
+        {0.5f, 0.5f},            // BC
+        {1f, 1f},                // MONO
+    };
+
+    private final int inputChannels;
+    private final int outputChannels;
+    private final float[] matrix; // row-major [out][in]
+    private final boolean identity;
+
+    private short[] shortScratch = new short[0];
+    private float[] floatScratch = new float[0];
+    private short[] outScratch = new short[0];
+
+    private ChannelMixer(int inputChannels, int outputChannels, float[] matrix) {
+        this.inputChannels = inputChannels;
+        this.outputChannels = outputChannels;
+        this.matrix = matrix;
+        this.identity = isIdentity(inputChannels, outputChannels, matrix);
+    }
+
+    // Standard downmix/upmix between common layouts (ITU 5.1/7.1 -> stereo or mono, stereo <-> mono)
+    public static ChannelMixer standard(int inputChannels, int outputChannels) {
+        if (inputChannels < 1 || outputChannels < 1 || outputChannels > 2) {
+            throw new IllegalArgumentException("Unsupported mapping " + inputChannels + " -> " + outputChannels);
+        }
+        float[] m = new float[outputChannels * inputChannels];
+        if (inputChannels == outputChannels) {
+            for (int c = 0; c < inputChannels; c++) {
+                m[c * inputChannels + c] = 1f;
+            }
+            return new ChannelMixer(inputChannels, outputChannels, m);
+        }
+        int[] roles = inputChannels < DEFAULT_LAYOUTS.length ? DEFAULT_LAYOUTS[inputChannels] : null;
+        for (int i = 0; i < inputChannels; i++) {
+            float[] gains;
+            if (roles != null) {
+                gains = STEREO_GAINS[roles[i]];
+            } else {
+                // Unknown layout: keep only the front pair
+                gains = i == 0 ? STEREO_GAINS[FL] : i == 1 ? STEREO_GAINS[FR] : STEREO_GAINS[LFE];
+            }
+            if (outputChannels == 2) {
+                m[i] = gains[0];
+                m[inputChannels + i] = gains[1];
+            } else {
+                m[i] = (gains[0] + gains[1]) * 0.5f;
+            }
+        }
+        normalizeRows(m, outputChannels, inputChannels);
+        return new ChannelMixer(inputChannels, outputChannels, m);
+    }
+
+    // matrix[out][in] gains, used as given (no normalization)
+    public static ChannelMixer custom(float[][] matrix) {
+        int out = matrix.length;
+        if (out == 0 || matrix[0].length == 0) {
+            throw new IllegalArgumentException("Empty mixing matrix");
+        }
+        int in = matrix[0].length;
+        float[] m = new float[out * in];
+        for (int o = 0; o < out; o++) {
+            if (matrix[o].length != in) {
+                throw new IllegalArgumentException("Ragged mixing matrix");
+            }
+            System.arraycopy(matrix[o], 0, m, o * in, in);
+        }
+        return new ChannelMixer(in, out, m);
+    }
+
+    // Keeps every output row's total gain <= 1 so a full-scale input cannot clip
+    private static void normalizeRows(float[] m, int rows, int cols) {
+        for (int r = 0; r < rows; r++) {
+            float sum = 0f;
+            for (int c = 0; c < cols; c++) {
+                sum += Math.abs(m[r * cols + c]);
+            }
+            if (sum > 1f) {
+                for (int c = 0; c < cols; c++) {
+                    m[r * cols + c] /= sum;
+                }
+            }
+        }
+    }
+
+    private static boolean isIdentity(int in, int out, float[] m) {
+        if (in != out) return false;
+        for (int r = 0; r < out; r++) {
+            for (int c = 0; c < in; c++) {
+                if (m[r * in + c] != (r == c ? 1f : 0f)) return false;
+            }
+        }
+        return true;
+    }
+
+    public int inputChannels() {
+        return inputChannels;
+    }
+
+    public int outputChannels() {
+        return outputChannels;
+    }
+
+    public boolean isIdentity() {
+        return identity;
+    }
+
+    private static short saturate(float v) {
+        if (v >= 32767f) return Short.MAX_VALUE;
+        if (v <= -32768f) return Short.MIN_VALUE;
+        return (short) Math.round(v);
+    }
+
+    // 16-bit kernel: frames of inputChannels samples at in[inOff] -> frames of outputChannels at out[outOff]
+    public void mix(short[] in, int inOff, short[] out, int outOff, int frames) {
+        final int ic = inputChannels;
+        final int oc = outputChannels;
+        final float[] m = matrix;
+        if (ic == 2 && oc == 1) {
+            final float a = m[0], b = m[1];
+            for (int f = 0, i = inOff, o = outOff; f < frames; f++, i += 2, o++) {
+                out[o] = saturate(in[i] * a + in[i + 1] * b);
+            }
+            return;
+        }
+        if (oc == 2) {
+            for (int f = 0, i = inOff, o = outOff; f < frames; f++, i += ic, o += 2) {
+                float l = 0f, r = 0f;
+                for (int c = 0; c < ic; c++) {
+                    float s = in[i + c];
+                    l += s * m[c];
+                    r += s * m[ic + c];
+                }
+                out[o] = saturate(l);
+                out[o + 1] = saturate(r);
+            }
+            return;
+        }
+        for (int f = 0, i = inOff, o = outOff; f < frames; f++, i += ic, o += oc) {
+            for (int r = 0; r < oc; r++) {
+                float acc = 0f;
+                int row = r * ic;
+                for (int c = 0; c < ic; c++) {
+                    acc += in[i + c] * m[row + c];
+                }
+                out[o + r] = saturate(acc);
+            }
+        }
+    }
+
+    // Float kernel (decoders configured for PCM float): [-1, 1] input scaled to 16-bit output
+    public void mix(float[] in, int inOff, short[] out, int outOff, int frames) {
+        final int ic = inputChannels;
+        final int oc = outputChannels;
+        final float[] m = matrix;
+        for (int f = 0, i = inOff, o = outOff; f < frames; f++, i += ic, o += oc) {
+            for (int r = 0; r < oc; r++) {
+                float acc = 0f;
+                int row = r * ic;
+                for (int c = 0; c < ic; c++) {
+                    acc += in[i + c] * m[row + c];
+                }
+                out[o + r] = saturate(acc * 32767f);
+            }
+        }
+    }
+
+    // Mixes as many whole frames as fit from src (16-bit or float, native order) into dst (16-bit LE).
+    // Advances src past the consumed frames and dst past the written ones; returns bytes written.
+    public int process(ByteBuffer src, boolean floatInput, ByteBuffer dst) {
+        int frames = Math.min(dst.remaining() / (outputChannels * 2),
+                src.remaining() / (inputChannels * (floatInput ? 4 : 2)));
+        if (outScratch.length < frames * outputChannels) {
+            outScratch = new short[frames * outputChannels];
+        }
+        frames = mix(src, floatInput, outScratch, frames);
+        int outSamples = frames * outputChannels;
+        ShortBuffer out = dst.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        out.put(outScratch, 0, outSamples);
+        dst.position(dst.position() + outSamples * 2);
+        return outSamples * 2;
+    }
+
+    // Mixes up to maxFrames whole frames from src into out[0..]; advances src and returns frames mixed
+    public int mix(ByteBuffer src, boolean floatInput, short[] out, int maxFrames) {
+        int inSampleBytes = floatInput ? 4 : 2;
+        int frames = Math.min(src.remaining() / (inputChannels * inSampleBytes), maxFrames);
+        if (frames <= 0) {
+            return 0;
+        }
+        int inSamples = frames * inputChannels;
+        if (floatInput) {
+            if (floatScratch.length < inSamples) {
+                floatScratch = new float[inSamples];
+            }
+            FloatBuffer fb = src.slice().order(ByteOrder.nativeOrder()).asFloatBuffer();
+            fb.get(floatScratch, 0, inSamples);
+            mix(floatScratch, 0, out, 0, frames);
+        } else if (identity) {
+            ShortBuffer sb = src.slice().order(ByteOrder.nativeOrder()).asShortBuffer();
+            sb.get(out, 0, inSamples);
+        } else {
+            if (shortScratch.length < inSamples) {
+                shortScratch = new short[inSamples];
+            }
+            ShortBuffer sb = src.slice().order(ByteOrder.nativeOrder()).asShortBuffer();
+            sb.get(shortScratch, 0, inSamples);
+            mix(shortScratch, 0, out, 0, frames);
+        }
+        src.position(src.position() + inSamples * inSampleBytes);
+        return frames;
+    }
+}
@@ -0,0 +1,210 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.media.MediaCodec;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Keeps recently used codecs around so back-to-back extractions skip component allocation.
+// Codecs come back reset (Uninitialized): callers still set a callback and configure them,
+// which is cheap compared to createDecoderByType/createEncoderByType. Idle codecs are released
+// after idleTimeoutMs by a timer, whether or not another job comes along.
+public class CodecPool {
+
+    private static final String TAG = "VideoToAudio";
+
+    public static final int DEFAULT_MAX_IDLE = 4;
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 30_000L;
+
+    private static final class Idle {
+        final MediaCodec codec;
+        final long sinceMs;
+
+        Idle(MediaCodec codec, long sinceMs) {
+            this.codec = codec;
+            this.sinceMs = sinceMs;
+        }
+    }
+
+    private final Map<String, ArrayDeque<Idle>> idle = new HashMap<>();
+    private final Map<MediaCodec, String> leased = new IdentityHashMap<>();
+    private final int maxIdle;
+    private final long idleTimeoutMs;
+    private int idleCount = 0;
+    private final ScheduledThreadPoolExecutor evictor;
+    private ScheduledFuture<?> evictTask;
+
+    public CodecPool() {
+        this(DEFAULT_MAX_IDLE, DEFAULT_IDLE_TIMEOUT_MS);
+    }
+
+    public CodecPool(int maxIdle, long idleTimeoutMs) {
+        this.maxIdle = Math.max(0, maxIdle);
+        this.idleTimeoutMs = idleTimeoutMs;
+        evictor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "afv-codec-evict");
+            t.setDaemon(true);
+            return t;
+        });
+        evictor.setKeepAliveTime(30L, TimeUnit.SECONDS);
+        evictor.allowCoreThreadTimeOut(true);
+        evictor.setRemoveOnCancelPolicy(true);
+    }
+
+    private static String key(boolean encoder, String mimeType) {
+        return (encoder ? "enc:" : "dec:") + mimeType;
+    }
+
+    public MediaCodec acquireDecoder(String mimeType) throws IOException {
+        return acquire(false, mimeType);
+    }
+
+    public MediaCodec acquireEncoder(String mimeType) throws IOException {
+        return acquire(true, mimeType);
+    }
+
+    private MediaCodec acquire(boolean encoder, String mimeType) throws IOException {
+        String key = key(encoder, mimeType);
+        MediaCodec codec = null;
+        synchronized (this) {
+            evictExpired();
+            ArrayDeque<Idle> list = idle.get(key);
+            Idle entry = list != null ? list.pollLast() : null;
+            if (entry != null) {
+                idleCount--;
+                codec = entry.codec;
+            }
+        }
+        if (codec == null) {
+            codec = encoder ? MediaCodec.createEncoderByType(mimeType) : MediaCodec.createDecoderByType(mimeType);
+        }
+        synchronized (this) {
+            leased.put(codec, key);
+        }
+        return codec;
+    }
+
+    // Returns a codec that finished cleanly. Anything that errored should go through discard().
+    public void recycle(MediaCodec codec) {
+        if (codec == null) return;
+        String key;
+        synchronized (this) {
+            key = leased.remove(codec);
+        }
+        if (key == null || maxIdle == 0) {
+            releaseQuietly(codec);
+            return;
+        }
+        try {
+            try { codec.stop(); } catch (IllegalStateException ignored) {}
+            // Clears the callback and configuration so the next job starts from Uninitialized
+            codec.reset();
+        } catch (Exception e) {
+            Log.w(TAG, "Codec could not be reset, releasing", e);
+            releaseQuietly(codec);
+            return;
+        }
+        MediaCodec evicted = null;
+        synchronized (this) {
+            ArrayDeque<Idle> list = idle.get(key);
+            if (list == null) {
+                list = new ArrayDeque<>();
+                idle.put(key, list);
+            }
+            list.addLast(new Idle(codec, SystemClock.elapsedRealtime()));
+            idleCount++;
+            if (idleCount > maxIdle) {
+                evicted = pollOldest();
+            }
+            scheduleEviction();
+        }
+        releaseQuietly(evicted);
+    }
+
+    public void discard(MediaCodec codec) {
+        if (codec == null) return;
+        synchronized (this) {
+            leased.remove(codec);
+        }
+        releaseQuietly(codec);
+    }
+
+    public void clear() {
+        synchronized (this) {
+            for (ArrayDeque<Idle> list : idle.values()) {
+                for (Idle entry : list) {
+                    releaseQuietly(entry.codec);
+                }
+            }
+            idle.clear();
+            idleCount = 0;
+            if (evictTask != null) {
+                evictTask.cancel(false);
+                evictTask = null;
+            }
+        }
+    }
+
+    // Arms the timer for the moment the oldest idle codec expires, unless it is already armed
+    private void scheduleEviction() {
+        if (evictTask != null || idleCount == 0) {
+            return;
+        }
+        long oldest = Long.MAX_VALUE;
+        for (ArrayDeque<Idle> list : idle.values()) {
+            if (!list.isEmpty()) {
+                oldest = Math.min(oldest, list.peekFirst().sinceMs);
+            }
+        }
+        long delayMs = Math.max(0L, oldest + idleTimeoutMs + 1L - SystemClock.elapsedRealtime());
+        evictTask = evictor.schedule(this::onEvictTimer, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void onEvictTimer() {
+        evictTask = null;
+        evictExpired();
+        scheduleEviction();
+    }
+
+    // Idle codecs hold hardware instances other apps may need, so don't keep them forever
+    private void evictExpired() {
+        long now = SystemClock.elapsedRealtime();
+        for (Iterator<ArrayDeque<Idle>> it = idle.values().iterator(); it.hasNext(); ) {
+            ArrayDeque<Idle> list = it.next();
+            while (!list.isEmpty() && now - list.peekFirst().sinceMs > idleTimeoutMs) {
+                releaseQuietly(list.pollFirst().codec);
+                idleCount--;
+            }
+            if (list.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    private MediaCodec pollOldest() {
+        ArrayDeque<Idle> oldestList = null;
+        for (ArrayDeque<Idle> list : idle.values()) {
+            if (!list.isEmpty() && (oldestList == null || list.peekFirst().sinceMs < oldestList.peekFirst().sinceMs)) {
+                oldestList = list;
+            }
+        }
+        if (oldestList == null) {
+            return null;
+        }
+        idleCount--;
+        return oldestList.pollFirst().codec;
+    }
+
+    private static void releaseQuietly(MediaCodec codec) {
+        try { if (codec != null) codec.release(); } catch (Exception ignored) {}
+    }
+}
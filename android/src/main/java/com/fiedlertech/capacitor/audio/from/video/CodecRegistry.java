@@ -0,0 +1,76 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+// Process-wide snapshot of the device's codec capabilities. Building a MediaCodecList walks
+// every codec on the device, so it is done once and reused until invalidate() is called.
+public final class CodecRegistry {
+
+    private static final String TAG = "VideoToAudio";
+
+    private static volatile CodecRegistry instance;
+
+    private final Set<String> encoderTypes;
+    private final Set<String> decoderTypes;
+
+    private CodecRegistry(Set<String> encoderTypes, Set<String> decoderTypes) {
+        this.encoderTypes = encoderTypes;
+        this.decoderTypes = decoderTypes;
+    }
+
+    public static CodecRegistry get() {
+        CodecRegistry current = instance;
+        if (current == null) {
+            synchronized (CodecRegistry.class) {
+                current = instance;
+                if (current == null) {
+                    current = scan();
+                    instance = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Drops the snapshot; the next get() rescans (e.g. after a system update)
+    public static void invalidate() {
+        synchronized (CodecRegistry.class) {
+            instance = null;
+        }
+    }
+
+    public boolean hasEncoder(String mimeType) {
+        return mimeType != null && encoderTypes.contains(mimeType.toLowerCase(Locale.US));
+    }
+
+    public boolean hasDecoder(String mimeType) {
+        return mimeType != null && decoderTypes.contains(mimeType.toLowerCase(Locale.US));
+    }
+
+    private static CodecRegistry scan() {
+        Set<String> encoders = new HashSet<>();
+        Set<String> decoders = new HashSet<>();
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                MediaCodecList list = new MediaCodecList(MediaCodecList.REGULAR_CODECS);
+                for (MediaCodecInfo info : list.getCodecInfos()) {
+                    Set<String> target = info.isEncoder() ? encoders : decoders;
+                    for (String t : info.getSupportedTypes()) {
+                        target.add(t.toLowerCase(Locale.US));
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            Log.w(TAG, "Codec capability scan failed", t);
+        }
+        return new CodecRegistry(Collections.unmodifiableSet(encoders), Collections.unmodifiableSet(decoders));
+    }
+}
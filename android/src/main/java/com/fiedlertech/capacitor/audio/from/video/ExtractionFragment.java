@@ -0,0 +1,29 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+// A byte range of a fragmented MP4 output that is final on disk, as delivered to
+// ExtractionCallback.onFragmentWritten. Sequence 0 is the init segment.
+public final class ExtractionFragment {
+
+    public final String jobId;
+    public final String path;       // file being written; the result path may differ (cache, extension)
+    public final int sequence;
+    public final long offset;
+    public final long length;
+    public final long startUs;      // media time of the first sample, from the range start
+    public final long durationUs;
+
+    ExtractionFragment(String jobId, String path, int sequence, long offset, long length,
+                       long startUs, long durationUs) {
+        this.jobId = jobId;
+        this.path = path;
+        this.sequence = sequence;
+        this.offset = offset;
+        this.length = length;
+        this.startUs = startUs;
+        this.durationUs = durationUs;
+    }
+
+    public boolean isInit() {
+        return sequence == 0;
+    }
+}
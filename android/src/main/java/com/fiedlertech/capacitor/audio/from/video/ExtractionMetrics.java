@@ -0,0 +1,201 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+// Where one extraction spent its time, as delivered with ExtractionCallback.onExtractionCompleted.
+// Decode and encode are spans on a pipelined pass (first buffer in to last buffer out), so they
+// overlap each other and the total; mux is the time spent inside the output sink alone.
+// Recording methods are called from one thread at a time (worker or codec thread).
+public final class ExtractionMetrics {
+
+    public enum Path {
+        CACHE,            // answered from the result cache
+        SOURCE_FILE,      // audio-only source used as is, or copied whole to the output path
+        MP3_PASSTHROUGH,  // MP3 frames copied as-is
+        AAC_REMUX,        // AAC frames remuxed into M4A
+        TRANSCODE,        // decoded and re-encoded in one pass
+        SEGMENTED,        // decoded and re-encoded as parallel segments
+        DECODE_ONLY;      // decoded to WAV/PCM, no encoder
+
+        public String jsName() {
+            return name().toLowerCase(java.util.Locale.ROOT).replace('_', '-');
+        }
+    }
+
+    private static final long UNSET = -1L;
+
+    private final long startNs;
+    private Path path = Path.TRANSCODE;
+    private int segments = 1;
+    private int bitrate = 0;
+    private boolean truncated = false;
+    private long ingestNs = 0L;
+    private long firstSampleNs = UNSET;
+    private long decodeStartNs = UNSET;
+    private long decodeEndNs = UNSET;
+    private long encodeStartNs = UNSET;
+    private long encodeEndNs = UNSET;
+    private long muxNs = 0L;
+    private long totalNs = 0L;
+    private long bytesIn = 0L;
+    private long bytesOut = 0L;
+    private long mediaUs = 0L;
+
+    ExtractionMetrics() {
+        this(System.nanoTime());
+    }
+
+    ExtractionMetrics(long startNs) {
+        this.startNs = startNs;
+    }
+
+    // Restarts the counters after a failed fast path; the start time and ingest are kept
+    ExtractionMetrics(ExtractionMetrics abandoned) {
+        this(abandoned.startNs);
+        this.ingestNs = abandoned.ingestNs;
+    }
+
+    static ExtractionMetrics cacheHit(long startNs, long bytes) {
+        ExtractionMetrics m = new ExtractionMetrics(startNs);
+        m.path = Path.CACHE;
+        m.bytesOut = bytes;
+        m.totalNs = System.nanoTime() - startNs;
+        return m;
+    }
+
+    void setPath(Path path) {
+        this.path = path;
+    }
+
+    void setSegments(int segments) {
+        this.segments = segments;
+    }
+
+    void setBitrate(int bitrate) {
+        this.bitrate = bitrate;
+    }
+
+    // The size cap ended the output before the requested range did
+    void markTruncated() {
+        truncated = true;
+    }
+
+    void setIngestNs(long ingestNs) {
+        this.ingestNs = ingestNs;
+    }
+
+    // A compressed sample was read from the source; the first one also starts the decode span
+    void onSampleRead(int bytes) {
+        if (firstSampleNs == UNSET) {
+            firstSampleNs = System.nanoTime();
+            decodeStartNs = firstSampleNs;
+        }
+        bytesIn += bytes;
+    }
+
+    void onDecoderOutput() {
+        decodeEndNs = System.nanoTime();
+    }
+
+    void onEncoderInput() {
+        if (encodeStartNs == UNSET) {
+            encodeStartNs = System.nanoTime();
+        }
+    }
+
+    void onEncoderOutput() {
+        encodeEndNs = System.nanoTime();
+    }
+
+    void addMuxNs(long ns) {
+        muxNs += ns;
+    }
+
+    // Folds one parallel segment in: spans widen to cover every segment, counters add up
+    void mergeSegment(ExtractionMetrics segment) {
+        firstSampleNs = earliest(firstSampleNs, segment.firstSampleNs);
+        decodeStartNs = earliest(decodeStartNs, segment.decodeStartNs);
+        encodeStartNs = earliest(encodeStartNs, segment.encodeStartNs);
+        decodeEndNs = Math.max(decodeEndNs, segment.decodeEndNs);
+        encodeEndNs = Math.max(encodeEndNs, segment.encodeEndNs);
+        muxNs += segment.muxNs;
+        bytesIn += segment.bytesIn;
+        truncated |= segment.truncated;
+    }
+
+    private static long earliest(long a, long b) {
+        if (a == UNSET) return b;
+        if (b == UNSET) return a;
+        return Math.min(a, b);
+    }
+
+    // Stamps the end of the job; mediaUs is the length of audio that was produced
+    void complete(long bytesOut, long mediaUs) {
+        this.bytesOut = bytesOut;
+        this.mediaUs = mediaUs;
+        this.totalNs = System.nanoTime() - startNs;
+    }
+
+    private static long spanMs(long fromNs, long toNs) {
+        return fromNs == UNSET || toNs == UNSET || toNs < fromNs ? 0L : (toNs - fromNs) / 1_000_000L;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // Parallel segments used; 1 unless the path is SEGMENTED
+    public int getSegments() {
+        return segments;
+    }
+
+    // Encoder bitrate in bits per second; 0 when nothing was encoded
+    public int getBitrate() {
+        return bitrate;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    // Opening the source, including a temp copy of an unseekable content:// stream
+    public long getIngestMs() {
+        return ingestNs / 1_000_000L;
+    }
+
+    // From the job starting to run until the first compressed sample was read; -1 if none was
+    public long getFirstSampleMs() {
+        return firstSampleNs == UNSET ? -1L : Math.max(0L, firstSampleNs - startNs) / 1_000_000L;
+    }
+
+    public long getDecodeMs() {
+        return spanMs(decodeStartNs, decodeEndNs);
+    }
+
+    public long getEncodeMs() {
+        return spanMs(encodeStartNs, encodeEndNs);
+    }
+
+    public long getMuxMs() {
+        return muxNs / 1_000_000L;
+    }
+
+    public long getTotalMs() {
+        return totalNs / 1_000_000L;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public long getMediaDurationMs() {
+        return mediaUs / 1000L;
+    }
+
+    // Seconds of audio produced per second of wall time; 0 when unknown (e.g. cache hits)
+    public double getRealtimeFactor() {
+        return totalNs > 0 && mediaUs > 0 ? (mediaUs * 1000.0) / totalNs : 0.0;
+    }
+}
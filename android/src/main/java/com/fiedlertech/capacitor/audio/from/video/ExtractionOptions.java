@@ -0,0 +1,107 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+// Per-call settings for AudioFromVideoRetriever.extractAudio
+public class ExtractionOptions {
+
+    public enum Engine {
+        // MediaCodec callbacks with a pooled PCM ring between decoder and encoder (API 23+)
+        ASYNC,
+        // Single-thread dequeue loop with 10 ms timeouts
+        POLLING
+    }
+
+    public enum OutputFormat {
+        // Encoded: MP3 where an encoder exists, otherwise AAC in M4A
+        AUTO,
+        // 16-bit PCM in a RIFF/WAVE container, written straight from the decoder
+        WAV,
+        // Headerless 16-bit little-endian interleaved PCM, written straight from the decoder
+        PCM_S16LE,
+        // No audio: the decoded PCM only feeds the waveform peaks, which become the output file
+        PEAKS
+    }
+
+    // Caller-supplied id used for cancelExtraction; generated when null
+    public String jobId;
+
+    // Higher values are scheduled first; equal priorities run in submission order
+    public int priority = 0;
+
+    // Decode/encode engine; null picks ASYNC where supported
+    public Engine engine;
+
+    // WAV and PCM skip the encoder entirely; channel mapping and resampling still apply
+    public OutputFormat outputFormat = OutputFormat.AUTO;
+
+    // Source range in ms; endMs 0 means the end of the source. The 5-minute cap counts from startMs.
+    public long startMs = 0L;
+    public long endMs = 0L;
+
+    // Look up (and store under) a cache key when the output location is left to the result cache
+    public boolean useCache = true;
+
+    // Transcode the range as up to this many concurrent segments (capped by CPU count, 15 s minimum
+    // per segment); 1 keeps the single serial pass
+    public int parallelSegments = 1;
+
+    // Output profile; 0 keeps the source value (channels are capped at 2, bitrate follows the size budget)
+    public int outputSampleRate = 0;
+    public int outputChannels = 0;
+    public int outputBitrate = 0;
+
+    // Encoded output as fragmented MP4, flushed every fragmentDurationMs of audio and announced through
+    // ExtractionCallback.onFragmentWritten; 0 writes a regular file. Implies AAC and a single serial pass.
+    public long fragmentDurationMs = 0L;
+
+    // Waveform peaks (min, max, RMS) per 1/peaksPerSecond s of output, taken from the same decode pass
+    // and delivered through ExtractionCallback.onPeaks; 0 computes none (PEAKS output uses the default)
+    public int peaksPerSecond = 0;
+
+    // Silent stretches (10 ms windows quieter than silenceThresholdDb, in dBFS) longer than trimSilenceMs
+    // are cut down to trimSilenceMs before encoding, keeping output timestamps contiguous. The kept
+    // segments are delivered through ExtractionCallback.onSilenceTrimmed; 0 keeps all audio. Implies a
+    // single serial pass.
+    public long trimSilenceMs = 0L;
+    public double silenceThresholdDb = SilenceTrimmer.DEFAULT_THRESHOLD_DB;
+
+    // Progress is reported at most every progressIntervalMs and only after advancing by progressStep
+    public long progressIntervalMs = 100L;
+    public double progressStep = 0.01;
+
+    // 16 kHz mono at 32 kbps: enough for speech recognition at a fraction of the encode cost and size
+    public ExtractionOptions applySpeechProfile() {
+        outputSampleRate = 16_000;
+        outputChannels = 1;
+        outputBitrate = 32_000;
+        return this;
+    }
+
+    boolean isPcmOutput() {
+        return outputFormat == OutputFormat.WAV || outputFormat == OutputFormat.PCM_S16LE;
+    }
+
+    // Decoder only, no encoder
+    boolean isDecodeOnly() {
+        return isPcmOutput() || outputFormat == OutputFormat.PEAKS;
+    }
+
+    boolean isFragmented() {
+        return fragmentDurationMs > 0 && !isDecodeOnly();
+    }
+
+    // Buckets per second of the peaks to compute, 0 for none
+    int peakRate() {
+        if (peaksPerSecond > 0) {
+            return peaksPerSecond;
+        }
+        return outputFormat == OutputFormat.PEAKS ? WaveformPeaks.DEFAULT_PER_SECOND : 0;
+    }
+
+    boolean isTrimmingSilence() {
+        return trimSilenceMs > 0;
+    }
+
+    boolean hasOutputProfile() {
+        return outputSampleRate > 0 || outputChannels > 0 || outputBitrate > 0;
+    }
+}
@@ -0,0 +1,35 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+// Snapshot of one job's progress, as delivered to ExtractionCallback.onExtractionProgress
+public final class ExtractionProgress {
+
+    public enum Stage {
+        INGEST,  // opening the source (and copying a non-seekable content:// stream)
+        REMUX,   // copying compressed frames without re-encoding
+        DECODE,  // decoding and encoding in lockstep
+        ENCODE;  // decoder finished, draining the encoder
+
+        public String jsName() {
+            return name().toLowerCase(java.util.Locale.ROOT);
+        }
+    }
+
+    public final String jobId;
+    public final Stage stage;
+    public final double progress;      // 0..1 of the extracted range
+    public final long bytesWritten;
+    public final long elapsedMs;       // since the job started running
+    public final long stageElapsedMs;  // since the current stage started
+    public final long etaMs;           // -1 until there is enough progress to estimate
+
+    ExtractionProgress(String jobId, Stage stage, double progress, long bytesWritten,
+                       long elapsedMs, long stageElapsedMs, long etaMs) {
+        this.jobId = jobId;
+        this.stage = stage;
+        this.progress = progress;
+        this.bytesWritten = bytesWritten;
+        this.elapsedMs = elapsedMs;
+        this.stageElapsedMs = stageElapsedMs;
+        this.etaMs = etaMs;
+    }
+}
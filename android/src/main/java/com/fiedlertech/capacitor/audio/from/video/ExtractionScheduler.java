@@ -0,0 +1,192 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.util.Log;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs extraction jobs on a bounded pool so a burst of calls queues up instead of
+// holding one extractor/decoder/encoder set per call at the same time.
+public class ExtractionScheduler {
+
+    private static final String TAG = "VideoToAudio";
+
+    public static final int DEFAULT_MAX_CONCURRENT = 2;
+
+    public interface JobBody {
+        void run(Job job) throws Exception;
+    }
+
+    public interface CancelHandler {
+        void onCancelled(Job job);
+    }
+
+    public static final class Job implements Runnable, Comparable<Job> {
+        private final ExtractionScheduler owner;
+        private final String id;
+        private final int priority;
+        private final long sequence;
+        private final JobBody body;
+        private final CancelHandler cancelHandler;
+        private volatile boolean cancelled = false;
+        private volatile boolean started = false;
+
+        private Job(ExtractionScheduler owner, String id, int priority, long sequence, JobBody body, CancelHandler cancelHandler) {
+            this.owner = owner;
+            this.id = id;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.body = body;
+            this.cancelHandler = cancelHandler;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isStarted() {
+            return started;
+        }
+
+        // Called from the worker loops; unwinds the job so its finally/catch blocks release codecs
+        public void throwIfCancelled() {
+            if (cancelled) {
+                throw new CancellationException("Extraction cancelled");
+            }
+        }
+
+        @Override
+        public void run() {
+            started = true;
+            try {
+                if (cancelled) {
+                    notifyCancelled();
+                    return;
+                }
+                body.run(this);
+            } catch (CancellationException ce) {
+                notifyCancelled();
+            } catch (Throwable t) {
+                Log.e(TAG, "Extraction job " + id + " crashed", t);
+            } finally {
+                owner.jobs.remove(id, this);
+            }
+        }
+
+        private void notifyCancelled() {
+            if (cancelHandler == null) return;
+            try { cancelHandler.onCancelled(this); } catch (Exception e) {
+                Log.w(TAG, "Cancel handler failed for job " + id, e);
+            }
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            // Higher priority first, then FIFO within the same priority
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public ExtractionScheduler() {
+        this(DEFAULT_MAX_CONCURRENT);
+    }
+
+    public ExtractionScheduler(int maxConcurrent) {
+        int n = Math.max(1, maxConcurrent);
+        executor = new ThreadPoolExecutor(n, n, 30L, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), new WorkerThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public synchronized void setMaxConcurrent(int maxConcurrent) {
+        int n = Math.max(1, maxConcurrent);
+        // Order matters: core may never exceed max
+        if (n > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(n);
+            executor.setCorePoolSize(n);
+        } else {
+            executor.setCorePoolSize(n);
+            executor.setMaximumPoolSize(n);
+        }
+    }
+
+    public int getMaxConcurrent() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public Job submit(String jobId, int priority, JobBody body, CancelHandler cancelHandler) {
+        Job job = new Job(this, jobId, priority, sequence.getAndIncrement(), body, cancelHandler);
+        if (jobs.putIfAbsent(jobId, job) != null) {
+            throw new IllegalArgumentException("Job already exists: " + jobId);
+        }
+        try {
+            executor.execute(job);
+        } catch (RuntimeException e) {
+            jobs.remove(jobId, job);
+            throw e;
+        }
+        return job;
+    }
+
+    // Returns false if the job is unknown or already finished
+    public boolean cancel(String jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null) {
+            return false;
+        }
+        job.cancelled = true;
+        if (executor.remove(job)) {
+            // Never reached a worker: nothing allocated yet, report right away
+            jobs.remove(jobId, job);
+            job.notifyCancelled();
+        }
+        return true;
+    }
+
+    public void cancelAll() {
+        for (String id : jobs.keySet()) {
+            cancel(id);
+        }
+    }
+
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "afv-extract-" + count.incrementAndGet());
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Process-wide rollup of ExtractionMetrics: outcome counters plus a rolling histogram per stage
+// and per path. Cache hits only count towards their path, so they don't pull the stage
+// percentiles of real extractions towards zero.
+public class ExtractionStats {
+
+    static final String[] STAGES = {
+            "totalMs", "ingestMs", "firstSampleMs", "decodeMs", "encodeMs", "muxMs", "realtimeFactor"
+    };
+
+    private final int window;
+    private final Map<String, RollingHistogram> stages = new LinkedHashMap<>();
+    private final EnumMap<ExtractionMetrics.Path, RollingHistogram> paths = new EnumMap<>(ExtractionMetrics.Path.class);
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    public ExtractionStats() {
+        this(RollingHistogram.DEFAULT_WINDOW);
+    }
+
+    public ExtractionStats(int window) {
+        this.window = window;
+        for (String stage : STAGES) {
+            stages.put(stage, new RollingHistogram(window));
+        }
+        for (ExtractionMetrics.Path path : ExtractionMetrics.Path.values()) {
+            paths.put(path, new RollingHistogram(window));
+        }
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public void record(ExtractionMetrics m) {
+        completed.incrementAndGet();
+        paths.get(m.getPath()).record(m.getTotalMs());
+        bytesOut.addAndGet(m.getBytesOut());
+        if (m.getPath() == ExtractionMetrics.Path.CACHE) {
+            return;
+        }
+        bytesIn.addAndGet(m.getBytesIn());
+        stages.get("totalMs").record(m.getTotalMs());
+        stages.get("ingestMs").record(m.getIngestMs());
+        if (m.getFirstSampleMs() >= 0) {
+            stages.get("firstSampleMs").record(m.getFirstSampleMs());
+        }
+        if (m.getDecodeMs() > 0) {
+            stages.get("decodeMs").record(m.getDecodeMs());
+        }
+        if (m.getEncodeMs() > 0) {
+            stages.get("encodeMs").record(m.getEncodeMs());
+        }
+        stages.get("muxMs").record(m.getMuxMs());
+        if (m.getRealtimeFactor() > 0) {
+            stages.get("realtimeFactor").record(m.getRealtimeFactor());
+        }
+    }
+
+    public void recordFailure(boolean wasCancelled) {
+        (wasCancelled ? cancelled : failed).incrementAndGet();
+    }
+
+    public void reset() {
+        for (RollingHistogram h : stages.values()) {
+            h.reset();
+        }
+        for (RollingHistogram h : paths.values()) {
+            h.reset();
+        }
+        completed.set(0L);
+        failed.set(0L);
+        cancelled.set(0L);
+        bytesIn.set(0L);
+        bytesOut.set(0L);
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getCancelled() {
+        return cancelled.get();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    Map<String, RollingHistogram.Summary> stageSummaries() {
+        Map<String, RollingHistogram.Summary> out = new LinkedHashMap<>();
+        for (Map.Entry<String, RollingHistogram> e : stages.entrySet()) {
+            out.put(e.getKey(), e.getValue().summary());
+        }
+        return out;
+    }
+
+    // Per path: the count is how many jobs took it, the distribution their total latency
+    Map<ExtractionMetrics.Path, RollingHistogram.Summary> pathSummaries() {
+        Map<ExtractionMetrics.Path, RollingHistogram.Summary> out = new EnumMap<>(ExtractionMetrics.Path.class);
+        for (Map.Entry<ExtractionMetrics.Path, RollingHistogram> e : paths.entrySet()) {
+            out.put(e.getKey(), e.getValue().summary());
+        }
+        return out;
+    }
+
+    // Counts the outcome of every extraction that reports through the returned callback
+    AudioFromVideoRetriever.ExtractionCallback track(AudioFromVideoRetriever.ExtractionCallback target) {
+        return new AudioFromVideoRetriever.ExtractionCallback() {
+            @Override
+            public void onExtractionCompleted(File file, String mimeType, ExtractionMetrics metrics) throws IOException {
+                // A throwing target turns into onExtractionFailed, which is counted there
+                target.onExtractionCompleted(file, mimeType, metrics);
+                record(metrics);
+            }
+
+            @Override
+            public void onExtractionFailed(String errorMessage) {
+                recordFailure(AudioFromVideoRetriever.CANCELLED_MESSAGE.equals(errorMessage));
+                target.onExtractionFailed(errorMessage);
+            }
+
+            @Override
+            public void onExtractionProgress(ExtractionProgress progress) {
+                target.onExtractionProgress(progress);
+            }
+
+            @Override
+            public void onFragmentWritten(ExtractionFragment fragment) {
+                target.onFragmentWritten(fragment);
+            }
+
+            @Override
+            public void onPeaks(WaveformPeaks peaks) {
+                target.onPeaks(peaks);
+            }
+
+            @Override
+            public void onSilenceTrimmed(SilenceTrimmer silence) {
+                target.onSilenceTrimmed(silence);
+            }
+        };
+    }
+}
@@ -0,0 +1,263 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// AAC in fragmented MP4: an init segment (ftyp + moov with an empty sample table and mvex)
+// as soon as the format is known, then a moof + mdat fragment every fragmentUs of audio.
+// Each written byte range is final, so consumers can upload or play it while the rest of
+// the extraction is still running; MediaMuxer only produces a usable file after stop().
+class FragmentedMp4Sink implements OutputSink {
+
+    // Called after each piece is on disk; sequence 0 is the init segment
+    interface Listener {
+        void onFragment(int sequence, long offset, long length, long startUs, long durationUs);
+    }
+
+    private static final int LANGUAGE_UND = 0x55c4;
+    private static final int AAC_FRAME_SAMPLES = 1024; // AAC-LC; only used for a lone last sample
+
+    private final FileOutputStream stream;
+    private final FileChannel channel;
+    private final long fragmentUs;
+    private final Listener listener;
+
+    private long timescale;
+    private long filePosition = 0L;
+    private long bytesWritten = 0L;
+    private int sequence = 0;
+
+    // Samples of the fragment being collected; their durations are known once the next one arrives
+    private ByteBuffer payload = ByteBuffer.allocate(64 * 1024);
+    private long[] pendingPts = new long[64];
+    private int[] pendingSizes = new int[64];
+    private int pendingCount = 0;
+    private long firstPtsUs = -1L; // of the whole stream; decode times count from here
+    private long lastDurationUnits = AAC_FRAME_SAMPLES;
+
+    FragmentedMp4Sink(File file, long fragmentUs, Listener listener) throws IOException {
+        this.stream = new FileOutputStream(file);
+        this.channel = stream.getChannel();
+        this.fragmentUs = Math.max(1L, fragmentUs);
+        this.listener = listener;
+    }
+
+    @Override
+    public void onFormat(MediaFormat format) throws IOException {
+        int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        int bitrate = format.containsKey(MediaFormat.KEY_BIT_RATE) ? format.getInteger(MediaFormat.KEY_BIT_RATE) : 0;
+        ByteBuffer csd = format.getByteBuffer("csd-0");
+        if (csd == null) {
+            throw new IOException("AAC format without codec specific data");
+        }
+        byte[] config = new byte[csd.remaining()];
+        csd.duplicate().get(config);
+        onFormat(sampleRate, channels, bitrate, config);
+    }
+
+    // Writes the init segment; config is the AudioSpecificConfig (csd-0)
+    void onFormat(int sampleRate, int channels, int bitrate, byte[] config) throws IOException {
+        if (timescale != 0) {
+            throw new IllegalStateException("Encoder output format changed twice");
+        }
+        timescale = sampleRate;
+
+        BoxWriter b = new BoxWriter(1024);
+        b.ftyp("iso6", "iso6", "mp41", "M4A ");
+        b.open("moov");
+        b.mvhd(timescale, 0L);
+        b.open("trak");
+        b.tkhd(0L);
+        b.open("mdia");
+        b.mdhd(timescale, 0L, LANGUAGE_UND);
+        b.soundHandler();
+        b.open("minf");
+        b.soundMediaHeaders();
+        b.open("stbl");
+        sampleDescription(b, sampleRate, channels, bitrate, config);
+        b.openFull("stts", 0, 0).putInt(0);
+        b.close();
+        b.openFull("stsc", 0, 0).putInt(0);
+        b.close();
+        b.openFull("stsz", 0, 0).putInt(0).putInt(0);
+        b.close();
+        b.openFull("stco", 0, 0).putInt(0);
+        b.close();
+        b.close(); // stbl
+        b.close(); // minf
+        b.close(); // mdia
+        b.close(); // trak
+        b.open("mvex");
+        b.openFull("trex", 0, 0).putInt(1).putInt(1).putInt(0).putInt(0).putInt(0);
+        b.close();
+        b.close(); // mvex
+        b.close(); // moov
+        writePiece(b.buffer(), null, 0L, 0L);
+    }
+
+    // stsd with one mp4a entry whose esds carries the AudioSpecificConfig
+    private static void sampleDescription(BoxWriter b, int sampleRate, int channels, int bitrate, byte[] config) {
+        b.openFull("stsd", 0, 0).putInt(1);
+        b.open("mp4a");
+        b.putInt(0).putShort(0).putShort(1); // reserved, data_reference_index
+        b.putInt(0).putInt(0);
+        b.putShort(channels).putShort(16).putShort(0).putShort(0);
+        b.putInt(sampleRate <= 0xffff ? sampleRate << 16 : 0);
+        b.openFull("esds", 0, 0);
+        int decoderConfig = 13 + 2 + config.length;
+        b.putByte(0x03);
+        descriptorLength(b, 3 + 2 + decoderConfig + 3);
+        b.putShort(1).putByte(0); // ES_ID, flags
+        b.putByte(0x04);
+        descriptorLength(b, decoderConfig);
+        b.putByte(0x40).putByte(0x15); // MPEG-4 audio, audio stream
+        b.putByte(0).putShort(0); // bufferSizeDB
+        b.putInt(bitrate).putInt(bitrate);
+        b.putByte(0x05);
+        descriptorLength(b, config.length);
+        b.putBytes(config);
+        b.putByte(0x06).putByte(1).putByte(0x02); // SLConfigDescriptor, predefined MP4
+        b.close(); // esds
+        b.close(); // mp4a
+        b.close(); // stsd
+    }
+
+    // Single byte; every length written here is below 128
+    private static void descriptorLength(BoxWriter b, int length) {
+        b.putByte(length);
+    }
+
+    @Override
+    public void writeSample(ByteBuffer data, MediaCodec.BufferInfo info) throws IOException {
+        writeSample(data, info.offset, info.size, info.presentationTimeUs, info.flags);
+    }
+
+    void writeSample(ByteBuffer data, int offset, int size, long ptsUs, int flags) throws IOException {
+        if (data == null || size <= 0 || (flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+            return;
+        }
+        if (timescale == 0) {
+            throw new IllegalStateException("Fragment writer has no format yet");
+        }
+        if (firstPtsUs < 0) {
+            firstPtsUs = ptsUs;
+        }
+        if (pendingCount > 0 && ptsUs - pendingPts[0] >= fragmentUs) {
+            flushFragment(ptsUs);
+        }
+        if (pendingCount == pendingPts.length) {
+            pendingPts = Arrays.copyOf(pendingPts, pendingCount * 2);
+            pendingSizes = Arrays.copyOf(pendingSizes, pendingCount * 2);
+        }
+        if (payload.remaining() < size) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(payload.capacity() * 2, payload.position() + size));
+            payload.flip();
+            bigger.put(payload);
+            payload = bigger;
+        }
+        ByteBuffer src = data.duplicate();
+        src.limit(offset + size);
+        src.position(offset);
+        payload.put(src);
+        pendingPts[pendingCount] = ptsUs;
+        pendingSizes[pendingCount] = size;
+        pendingCount++;
+        bytesWritten += size;
+    }
+
+    // Writes the collected samples as one moof + mdat; nextPtsUs ends the last one, or is -1
+    // at the end of the stream
+    private void flushFragment(long nextPtsUs) throws IOException {
+        long baseUnits = units(pendingPts[0]);
+        long endUnits = baseUnits;
+
+        BoxWriter b = new BoxWriter(128 + 8 * pendingCount);
+        b.open("moof");
+        b.openFull("mfhd", 0, 0).putInt(++sequence);
+        b.close();
+        b.open("traf");
+        b.openFull("tfhd", 0, 0x020000).putInt(1); // default-base-is-moof
+        b.close();
+        b.openFull("tfdt", 1, 0).putLong(baseUnits);
+        b.close();
+        b.openFull("trun", 0, 0x000001 | 0x000100 | 0x000200).putInt(pendingCount); // data offset, durations, sizes
+        int dataOffsetAt = b.reserveInt();
+        for (int i = 0; i < pendingCount; i++) {
+            long start = units(pendingPts[i]);
+            long end;
+            if (i + 1 < pendingCount) {
+                end = units(pendingPts[i + 1]);
+            } else {
+                end = nextPtsUs >= 0 ? units(nextPtsUs) : start + lastDurationUnits;
+            }
+            long duration = end > start ? end - start : lastDurationUnits;
+            lastDurationUnits = duration;
+            endUnits = start + duration;
+            b.putInt((int) duration).putInt(pendingSizes[i]);
+        }
+        b.close(); // trun
+        b.close(); // traf
+        b.close(); // moof
+        int payloadBytes = payload.position();
+        b.patchInt(dataOffsetAt, b.size() + 8);
+        b.putInt(8 + payloadBytes).fourcc("mdat");
+
+        payload.flip();
+        writePiece(b.buffer(), payload, toUs(baseUnits), toUs(endUnits) - toUs(baseUnits));
+        payload.clear();
+        pendingCount = 0;
+    }
+
+    private void writePiece(ByteBuffer header, ByteBuffer body, long startUs, long durationUs) throws IOException {
+        header.flip();
+        long length = header.remaining() + (body != null ? body.remaining() : 0);
+        ByteBuffer[] pieces = body != null ? new ByteBuffer[]{header, body} : new ByteBuffer[]{header};
+        long done = 0L;
+        while (done < length) {
+            done += channel.write(pieces);
+        }
+        long offset = filePosition;
+        filePosition += length;
+        if (listener != null) {
+            listener.onFragment(body != null ? sequence : 0, offset, length, startUs, durationUs);
+        }
+    }
+
+    // Media time of an output timestamp in timescale units, counted from the first sample
+    private long units(long ptsUs) {
+        return Math.round((ptsUs - firstPtsUs) * (double) timescale / 1_000_000.0);
+    }
+
+    private long toUs(long units) {
+        return units * 1_000_000L / timescale;
+    }
+
+    @Override
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        try {
+            if (pendingCount > 0) {
+                flushFragment(-1L);
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Override
+    public void abort() {
+        try { stream.close(); } catch (Exception ignored) {}
+    }
+}
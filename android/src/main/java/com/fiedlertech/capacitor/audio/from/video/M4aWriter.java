@@ -0,0 +1,211 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Writes a range of an Mp4Demuxer.AudioTrack as a faststart M4A: ftyp, a rebuilt moov with the
+// source's sample description and, where the source's edit trims priming or padding samples
+// out of the range, an edit list doing the same; then one mdat. Sample bytes never pass through
+// the heap: each run of samples that is contiguous in the source is copied with
+// FileChannel.transferTo.
+final class M4aWriter {
+
+    private static final int MDAT_HEADER_BYTES = 8;
+    private static final int MDAT_LARGE_HEADER_BYTES = 16;
+
+    // Called after each contiguous run is copied; end is the index past its last sample and
+    // copiedBytes the sample bytes written so far
+    interface Listener {
+        void onRunCopied(int end, long copiedBytes);
+    }
+
+    private M4aWriter() {}
+
+    // Copies samples [first, end) of track from src (data starting at base) to out and returns
+    // the number of bytes written. Output timestamps start at 0.
+    static long write(Mp4Demuxer.AudioTrack track, int first, int end, FileChannel src, long base,
+                      FileChannel out, Listener listener) throws IOException {
+        long payload = 0L;
+        for (int i = first; i < end; i++) {
+            payload += track.sizes[i];
+        }
+        int mdatHeader = payload + MDAT_HEADER_BYTES > 0xffffffffL ? MDAT_LARGE_HEADER_BYTES : MDAT_HEADER_BYTES;
+        byte[] ftyp = ftyp();
+        // The moov's size does not depend on the chunk offsets it holds, so measure it first
+        int moovSize = moov(track, first, end, 0L, payload).position();
+        long dataStart = ftyp.length + moovSize + mdatHeader;
+        ByteBuffer head = moov(track, first, end, dataStart, payload);
+
+        ByteBuffer prefix = ByteBuffer.allocate(ftyp.length + moovSize + mdatHeader);
+        prefix.put(ftyp);
+        head.flip();
+        prefix.put(head);
+        if (mdatHeader == MDAT_LARGE_HEADER_BYTES) {
+            prefix.putInt(1).putInt(Mp4Demuxer.fourcc("mdat")).putLong(payload + MDAT_LARGE_HEADER_BYTES);
+        } else {
+            prefix.putInt((int) (payload + MDAT_HEADER_BYTES)).putInt(Mp4Demuxer.fourcc("mdat"));
+        }
+        prefix.flip();
+        while (prefix.hasRemaining()) {
+            out.write(prefix);
+        }
+
+        long copied = 0L;
+        for (int i = first; i < end; ) {
+            int runEnd = runEnd(track, i, end);
+            long runBytes = track.offsets[runEnd - 1] + track.sizes[runEnd - 1] - track.offsets[i];
+            transferFully(src, base + track.offsets[i], runBytes, out);
+            copied += runBytes;
+            if (listener != null) {
+                listener.onRunCopied(runEnd, copied);
+            }
+            i = runEnd;
+        }
+        return dataStart + payload;
+    }
+
+    // Index past the run of samples starting at from that lie back to back in the source
+    private static int runEnd(Mp4Demuxer.AudioTrack track, int from, int end) {
+        int i = from + 1;
+        while (i < end && track.offsets[i] == track.offsets[i - 1] + track.sizes[i - 1]) {
+            i++;
+        }
+        return i;
+    }
+
+    private static byte[] ftyp() {
+        BoxWriter b = new BoxWriter(32);
+        b.ftyp("M4A ", "M4A ", "mp42", "isom");
+        return b.toByteArray();
+    }
+
+    // Builds the moov for samples [first, end); every output chunk is one source run, placed
+    // back to back from dataStart
+    private static ByteBuffer moov(Mp4Demuxer.AudioTrack track, int first, int end, long dataStart, long payload) {
+        long duration = track.times[end] - track.times[first];
+        // Part of the range the source's edit presents; the movie timescale is the track's
+        long presentedStart = Math.max(track.editStart, track.times[first]);
+        long presented = Math.max(0L, Math.min(track.editEnd, track.times[end]) - presentedStart);
+        boolean wideOffsets = dataStart + payload > 0xffffffffL;
+        BoxWriter b = new BoxWriter(1024 + 16 * (end - first));
+
+        b.open("moov");
+        b.mvhd(track.timescale, presented);
+        b.open("trak");
+        b.tkhd(presented);
+        if (presentedStart != track.times[first] || presented != duration) {
+            editList(b, presented, presentedStart - track.times[first]);
+        }
+        b.open("mdia");
+        b.mdhd(track.timescale, duration, track.language);
+        b.soundHandler();
+        b.open("minf");
+        b.soundMediaHeaders();
+        b.open("stbl");
+        b.putBytes(track.sampleDescription);
+        sampleTimes(b, track, first, end);
+        chunks(b, track, first, end, dataStart, wideOffsets);
+        b.openFull("stsz", 0, 0).putInt(0).putInt(end - first);
+        for (int i = first; i < end; i++) {
+            b.putInt(track.sizes[i]);
+        }
+        b.close();
+        b.close(); // stbl
+        b.close(); // minf
+        b.close(); // mdia
+        b.close(); // trak
+        b.close(); // moov
+        return b.buffer();
+    }
+
+    // edts with one edit presenting segmentDuration units from mediaTime on
+    private static void editList(BoxWriter b, long segmentDuration, long mediaTime) {
+        boolean wide = segmentDuration > 0xffffffffL || mediaTime > Integer.MAX_VALUE;
+        b.open("edts");
+        b.openFull("elst", wide ? 1 : 0, 0).putInt(1);
+        if (wide) {
+            b.putLong(segmentDuration).putLong(mediaTime);
+        } else {
+            b.putInt((int) segmentDuration).putInt((int) mediaTime);
+        }
+        b.putInt(0x00010000); // media_rate 1.0
+        b.close(); // elst
+        b.close(); // edts
+    }
+
+    // stts: run-length sample durations
+    private static void sampleTimes(BoxWriter b, Mp4Demuxer.AudioTrack track, int first, int end) {
+        b.openFull("stts", 0, 0);
+        int countAt = b.reserveInt();
+        int entries = 0;
+        int i = first;
+        while (i < end) {
+            long delta = track.times[i + 1] - track.times[i];
+            int run = 1;
+            while (i + run < end && track.times[i + run + 1] - track.times[i + run] == delta) {
+                run++;
+            }
+            b.putInt(run).putInt((int) delta);
+            entries++;
+            i += run;
+        }
+        b.patchInt(countAt, entries);
+        b.close();
+    }
+
+    // stsc + stco/co64: one chunk per contiguous source run, stsc entries only where the
+    // samples-per-chunk count changes
+    private static void chunks(BoxWriter b, Mp4Demuxer.AudioTrack track, int first, int end, long dataStart,
+                               boolean wideOffsets) {
+        int runs = 0;
+        for (int i = first; i < end; i = runEnd(track, i, end)) {
+            runs++;
+        }
+        long[] chunkOffsets = new long[runs];
+        int[] chunkSamples = new int[runs];
+        long offset = dataStart;
+        int chunk = 0;
+        for (int i = first; i < end; ) {
+            int runEnd = runEnd(track, i, end);
+            chunkOffsets[chunk] = offset;
+            chunkSamples[chunk] = runEnd - i;
+            offset += track.offsets[runEnd - 1] + track.sizes[runEnd - 1] - track.offsets[i];
+            chunk++;
+            i = runEnd;
+        }
+
+        b.openFull("stsc", 0, 0);
+        int countAt = b.reserveInt();
+        int entries = 0;
+        for (int c = 0; c < runs; c++) {
+            if (c == 0 || chunkSamples[c] != chunkSamples[c - 1]) {
+                b.putInt(c + 1).putInt(chunkSamples[c]).putInt(1);
+                entries++;
+            }
+        }
+        b.patchInt(countAt, entries);
+        b.close();
+
+        b.openFull(wideOffsets ? "co64" : "stco", 0, 0).putInt(runs);
+        for (long chunkOffset : chunkOffsets) {
+            if (wideOffsets) {
+                b.putLong(chunkOffset);
+            } else {
+                b.putInt((int) chunkOffset);
+            }
+        }
+        b.close();
+    }
+
+    private static void transferFully(FileChannel src, long position, long count, FileChannel out) throws IOException {
+        long done = 0L;
+        while (done < count) {
+            long n = src.transferTo(position + done, count - done, out);
+            if (n <= 0) {
+                throw new IOException("Short transfer: " + done + " of " + count + " bytes");
+            }
+            done += n;
+        }
+    }
+}
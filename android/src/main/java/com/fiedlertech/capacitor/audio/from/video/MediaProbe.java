@@ -0,0 +1,40 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.media.MediaFormat;
+
+// What a source holds according to its track formats; nothing is decoded. Immutable, so one
+// instance is shared through the probe cache. Audio fields describe the first audio track (the
+// one extractAudio would use) and are 0 or null when unknown or when there is none.
+public final class MediaProbe {
+
+    public final int trackCount;
+    public final boolean hasAudio;
+    public final boolean hasVideo;
+    public final long durationUs;
+    public final String audioMime;
+    public final int sampleRate;
+    public final int channels;
+    public final int bitrate;
+
+    final MediaFormat audioFormat;
+    // Audio-only MP3 stream or plain M4A within the size cap, i.e. usable as the result as it is
+    final boolean plainAudioFile;
+
+    MediaProbe(int trackCount, boolean hasVideo, MediaFormat audioFormat, boolean plainAudioFile) {
+        this.trackCount = trackCount;
+        this.hasAudio = audioFormat != null;
+        this.hasVideo = hasVideo;
+        this.audioFormat = audioFormat;
+        this.plainAudioFile = plainAudioFile;
+        this.durationUs = audioFormat != null && audioFormat.containsKey(MediaFormat.KEY_DURATION)
+                ? audioFormat.getLong(MediaFormat.KEY_DURATION) : 0L;
+        this.audioMime = audioFormat != null ? audioFormat.getString(MediaFormat.KEY_MIME) : null;
+        this.sampleRate = intOf(audioFormat, MediaFormat.KEY_SAMPLE_RATE);
+        this.channels = intOf(audioFormat, MediaFormat.KEY_CHANNEL_COUNT);
+        this.bitrate = intOf(audioFormat, MediaFormat.KEY_BIT_RATE);
+    }
+
+    private static int intOf(MediaFormat format, String key) {
+        return format != null && format.containsKey(key) ? format.getInteger(key) : 0;
+    }
+}
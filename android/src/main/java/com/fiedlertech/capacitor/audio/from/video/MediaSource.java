@@ -0,0 +1,258 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.content.ContentResolver;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.media.MediaExtractor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+import android.provider.OpenableColumns;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+// Input of an extraction. content:// URIs are read straight from the provider's file
+// descriptor; only providers that hand out unseekable pipes are copied to a temp file, which
+// close() deletes again. Opening is deferred to the worker so queued jobs don't hold descriptors.
+public class MediaSource implements Closeable {
+
+    private static final String TAG = "VideoToAudio";
+
+    // Same value MediaExtractor.setDataSource(FileDescriptor) uses for "until the end"
+    private static final long UNKNOWN_LENGTH = 0x7ffffffffffffffL;
+
+    private static final int IDENTITY_SAMPLE_BYTES = 64 * 1024;
+
+    private final File file;
+    private final Uri uri;
+    private final ContentResolver resolver;
+    private final StorageGovernor storage; // tracks the temp copy; may be null
+
+    private AssetFileDescriptor descriptor;
+    private File tempCopy;
+    private boolean ownsCopy = false; // duplicates share the copy but leave deleting it to us
+
+    private MediaSource(File file, Uri uri, ContentResolver resolver, StorageGovernor storage) {
+        this.file = file;
+        this.uri = uri;
+        this.resolver = resolver;
+        this.storage = storage;
+    }
+
+    public static MediaSource fromFile(File file) {
+        return new MediaSource(file, null, null, null);
+    }
+
+    public static MediaSource fromUri(Uri uri, ContentResolver resolver) {
+        return fromUri(uri, resolver, null);
+    }
+
+    public static MediaSource fromUri(Uri uri, ContentResolver resolver, StorageGovernor storage) {
+        return new MediaSource(null, uri, resolver, storage);
+    }
+
+    public boolean isContentUri() {
+        return uri != null;
+    }
+
+    // The local file backing this source, if any (plain file or fallback temp copy)
+    public File getFile() {
+        return file != null ? file : tempCopy;
+    }
+
+    public String describe() {
+        return file != null ? file.getAbsolutePath() : String.valueOf(uri);
+    }
+
+    // Stable description of the content for cache keys, or null if it can't be determined.
+    // Files use path, size and mtime; content URIs add a hash of a few sampled blocks, since
+    // providers often report no mtime and may serve different content under the same URI.
+    public String identity() {
+        if (file != null) {
+            return file.exists() ? "file:" + file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified() : null;
+        }
+        long size = -1L;
+        long modified = 0L;
+        try (Cursor c = resolver.query(uri, null, null, null, null)) {
+            if (c != null && c.moveToFirst()) {
+                int sizeCol = c.getColumnIndex(OpenableColumns.SIZE);
+                if (sizeCol >= 0 && !c.isNull(sizeCol)) {
+                    size = c.getLong(sizeCol);
+                }
+                int modCol = c.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+                if (modCol >= 0 && !c.isNull(modCol)) {
+                    modified = c.getLong(modCol);
+                }
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Could not query " + uri, e);
+        }
+        if (size <= 0) {
+            return null;
+        }
+        String sample = sampleHash(size);
+        return sample == null ? null : "content:" + uri + ":" + size + ":" + modified + ":" + sample;
+    }
+
+    // Size the provider reports for a content URI, or -1 if it reports none
+    static long declaredSize(Uri uri, ContentResolver resolver) {
+        try (Cursor c = resolver.query(uri, new String[]{OpenableColumns.SIZE}, null, null, null)) {
+            if (c != null && c.moveToFirst() && !c.isNull(0)) {
+                return c.getLong(0);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Could not query " + uri, e);
+        }
+        return -1L;
+    }
+
+    // CRC32 of the first, middle and last IDENTITY_SAMPLE_BYTES of the content
+    private String sampleHash(long size) {
+        try (AssetFileDescriptor afd = resolver.openAssetFileDescriptor(uri, "r")) {
+            if (afd == null) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            byte[] block = new byte[IDENTITY_SAMPLE_BYTES];
+            try (FileInputStream in = new FileInputStream(afd.getFileDescriptor())) {
+                FileChannel channel = in.getChannel();
+                long base = afd.getStartOffset();
+                long[] offsets = {0L, Math.max(0L, size / 2 - IDENTITY_SAMPLE_BYTES / 2), Math.max(0L, size - IDENTITY_SAMPLE_BYTES)};
+                for (long offset : offsets) {
+                    ByteBuffer buf = ByteBuffer.wrap(block);
+                    while (buf.hasRemaining()) {
+                        if (channel.read(buf, base + offset + buf.position()) <= 0) {
+                            break;
+                        }
+                    }
+                    crc.update(block, 0, buf.position());
+                }
+            }
+            return Long.toHexString(crc.getValue());
+        } catch (Exception e) {
+            // Unseekable providers: positional reads fail, so no stable identity
+            return null;
+        }
+    }
+
+    // Another handle on the same input for a second extractor: a file or temp copy is shared,
+    // a content URI gets its own descriptor so concurrent readers never share a file offset
+    public MediaSource duplicate() {
+        MediaSource copy = new MediaSource(file, uri, resolver, storage);
+        copy.tempCopy = tempCopy;
+        return copy;
+    }
+
+    public void applyTo(MediaExtractor extractor) throws IOException {
+        applyTo(extractor, true);
+    }
+
+    // allowCopy false: never falls back to a temp copy, so a provider that only hands out pipes
+    // fails instead of being read in full (probing must stay cheap)
+    public void applyTo(MediaExtractor extractor, boolean allowCopy) throws IOException {
+        if (file != null) {
+            extractor.setDataSource(file.getAbsolutePath());
+            return;
+        }
+        if (tempCopy == null && openDescriptor()) {
+            long length = descriptor.getDeclaredLength();
+            extractor.setDataSource(descriptor.getFileDescriptor(), descriptor.getStartOffset(),
+                    length >= 0 ? length : UNKNOWN_LENGTH);
+            return;
+        }
+        if (tempCopy == null && !allowCopy) {
+            throw new IOException("Source is not seekable: " + uri);
+        }
+        if (tempCopy == null) {
+            tempCopy = AudioFromVideoRetriever.copyContentUriToTemp(uri, resolver, storage);
+            ownsCopy = true;
+        }
+        extractor.setDataSource(tempCopy.getAbsolutePath());
+    }
+
+    // Source bytes for the pure-Java container readers, available once applyTo has run.
+    // Only positional reads are allowed, since a content URI's descriptor is shared with the
+    // extractor. Returns null when the source can only be read through MediaExtractor.
+    Bytes openBytes() throws IOException {
+        File local = getFile();
+        if (local != null) {
+            FileInputStream in = new FileInputStream(local);
+            return new Bytes(in, 0L, in.getChannel().size());
+        }
+        if (descriptor == null) {
+            return null;
+        }
+        // A dup, so closing our stream leaves the extractor's descriptor open
+        FileInputStream in = new ParcelFileDescriptor.AutoCloseInputStream(descriptor.getParcelFileDescriptor().dup());
+        long start = descriptor.getStartOffset();
+        long length = descriptor.getDeclaredLength();
+        return new Bytes(in, start, length >= 0 ? length : in.getChannel().size() - start);
+    }
+
+    static final class Bytes implements Closeable {
+        final FileChannel channel;
+        final long offset; // where the source starts within the channel
+        final long length;
+        private final FileInputStream stream;
+
+        Bytes(FileInputStream stream, long offset, long length) {
+            this.stream = stream;
+            this.channel = stream.getChannel();
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public void close() {
+            try { stream.close(); } catch (Exception ignored) {}
+        }
+    }
+
+    // Returns true if the provider gave us a descriptor MediaExtractor can seek in
+    private boolean openDescriptor() {
+        if (descriptor != null) {
+            return true;
+        }
+        AssetFileDescriptor afd = null;
+        try {
+            afd = resolver.openAssetFileDescriptor(uri, "r");
+            if (afd == null) {
+                return false;
+            }
+            FileDescriptor fd = afd.getFileDescriptor();
+            // Pipes and sockets fail with ESPIPE here
+            Os.lseek(fd, afd.getStartOffset(), OsConstants.SEEK_SET);
+            descriptor = afd;
+            return true;
+        } catch (ErrnoException e) {
+            Log.w(TAG, "Source is not seekable, falling back to a temp copy: " + uri);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not open file descriptor for " + uri, e);
+        }
+        try { if (afd != null) afd.close(); } catch (Exception ignored) {}
+        return false;
+    }
+
+    // Ends this use of the source: the descriptor is closed and a temp copy made for it deleted
+    @Override
+    public void close() {
+        try { if (descriptor != null) descriptor.close(); } catch (Exception ignored) {}
+        descriptor = null;
+        if (ownsCopy && tempCopy != null) {
+            AudioFromVideoRetriever.deleteCopy(tempCopy, storage);
+        }
+        tempCopy = null;
+        ownsCopy = false;
+    }
+}
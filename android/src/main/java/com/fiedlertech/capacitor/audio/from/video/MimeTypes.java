@@ -0,0 +1,63 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+// File extensions for source and output MIME types, kept free of Android APIs
+final class MimeTypes {
+
+    static final String MP3 = "audio/mpeg";
+    static final String AAC = "audio/mp4a-latm";
+    static final String M4A = "audio/mp4";
+    static final String WAV = "audio/wav";
+    static final String PCM = "audio/pcm"; // headerless s16le, rate and channels as requested
+    static final String PEAKS = "application/octet-stream"; // waveform peaks only, s16le min/max/rms triplets
+
+    private MimeTypes() {}
+
+    // Extension for a temp copy of a source, so MediaExtractor can sniff the container
+    static String sourceExt(String mime) {
+        if (mime == null) return ".tmp";
+        if (mime.equals(MP3)) return ".mp3";
+        if (mime.equals(M4A) || mime.equals("audio/aac") || mime.equals(AAC)) return ".m4a";
+        if (mime.equals("audio/ogg")) return ".ogg";
+        if (mime.equals("audio/webm") || mime.equals("video/webm")) return ".webm";
+        if (mime.startsWith("video/")) return ".mp4";
+        return ".tmp";
+    }
+
+    // Extension of an output file written with the given result MIME type
+    static String outputExt(String mimeType) {
+        if (MP3.equals(mimeType)) return ".mp3";
+        if (WAV.equals(mimeType)) return ".wav";
+        if (PCM.equals(mimeType)) return ".pcm";
+        if (PEAKS.equals(mimeType)) return ".peaks";
+        return ".m4a";
+    }
+
+    // Result MIME type for an output extension, or null if it is not one we write
+    static String outputMime(String ext) {
+        switch (ext) {
+            case ".mp3":
+                return MP3;
+            case ".m4a":
+                return M4A;
+            case ".wav":
+                return WAV;
+            case ".pcm":
+                return PCM;
+            case ".peaks":
+                return PEAKS;
+            default:
+                return null;
+        }
+    }
+
+    // Path with its extension replaced by the one matching mimeType
+    static String withOutputExt(String path, String mimeType) {
+        String ext = outputExt(mimeType);
+        if (path.endsWith(ext)) {
+            return path;
+        }
+        int lastDot = path.lastIndexOf('.');
+        int lastSlash = path.lastIndexOf('/');
+        return (lastDot > lastSlash + 1 ? path.substring(0, lastDot) : path) + ext;
+    }
+}
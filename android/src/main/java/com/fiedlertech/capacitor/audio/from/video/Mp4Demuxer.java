@@ -0,0 +1,427 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Minimal ISO-BMFF (MP4/M4A/MOV) reader: finds the first sound track of a non-fragmented file
+// and loads its sample table (stts/stsc/stsz/stco), so the AAC remux can copy sample bytes
+// straight from the file instead of going through MediaExtractor.
+// An edit list is honoured when it is one plain edit, optionally after an empty one: its media
+// time (typically the encoder's priming samples) and end are kept as the presented range.
+// Anything it does not understand returns null and the caller falls back to MediaExtractor.
+final class Mp4Demuxer {
+
+    private static final long MAX_MOOV_BYTES = 64L * 1024L * 1024L;
+    private static final int MAX_SAMPLES = 1 << 24;
+
+    private Mp4Demuxer() {}
+
+    static final class AudioTrack {
+        final long timescale;
+        final int language;       // packed ISO-639-2/T code from mdhd
+        final byte[] sampleDescription; // the whole stsd box, copied verbatim to the output
+        final int[] sizes;
+        final long[] offsets;     // relative to the start of the source data
+        final long[] times;       // decode time in timescale units; times[count] ends the last sample
+        final long editStart;     // decode time presented as 0 (elst media_time), 0 without an edit list
+        final long editEnd;       // decode time presentation ends at, times[count] unless the edit ends early
+
+        AudioTrack(long timescale, int language, byte[] sampleDescription, int[] sizes, long[] offsets, long[] times,
+                   long editStart, long editEnd) {
+            this.timescale = timescale;
+            this.language = language;
+            this.sampleDescription = sampleDescription;
+            this.sizes = sizes;
+            this.offsets = offsets;
+            this.times = times;
+            this.editStart = editStart;
+            this.editEnd = editEnd;
+        }
+
+        int sampleCount() {
+            return sizes.length;
+        }
+
+        // Presentation time at which a sample starts, clamped to the edit
+        long timeUs(int sample) {
+            long units = Math.min(Math.max(times[sample], editStart), editEnd) - editStart;
+            return units * 1_000_000L / timescale;
+        }
+
+        // First sample starting at or after presentation time timeUs (sampleCount() if none). From
+        // the start, that is sample 0: samples before the edit prime the decoder and stay.
+        int sampleAtOrAfter(long timeUs) {
+            if (timeUs <= 0) {
+                return 0;
+            }
+            long units = editStart + (timeUs * timescale + 999_999L) / 1_000_000L;
+            int lo = 0;
+            int hi = sizes.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (times[mid] < units) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    // Returns null if the data is not ISO-BMFF, is fragmented, or has no plain AAC sound track
+    static AudioTrack readAudioTrack(FileChannel channel, long base, long length) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16);
+        long pos = 0L;
+        boolean first = true;
+        while (pos + 8 <= length) {
+            header.clear();
+            header.limit((int) Math.min(16L, length - pos));
+            readFully(channel, header, base + pos);
+            header.flip();
+            long size = header.getInt() & 0xffffffffL;
+            int type = header.getInt();
+            int headerBytes = 8;
+            if (size == 1) {
+                if (header.remaining() < 8) {
+                    return null;
+                }
+                size = header.getLong();
+                headerBytes = 16;
+            } else if (size == 0) {
+                size = length - pos;
+            }
+            if (first && !isTopLevel(type)) {
+                return null;
+            }
+            first = false;
+            if (size < headerBytes || pos + size > length) {
+                return null;
+            }
+            if (type == fourcc("moof")) {
+                return null;
+            }
+            if (type == fourcc("moov")) {
+                if (size - headerBytes > MAX_MOOV_BYTES) {
+                    return null;
+                }
+                ByteBuffer moov = ByteBuffer.allocate((int) (size - headerBytes));
+                readFully(channel, moov, base + pos + headerBytes);
+                moov.flip();
+                return parseMoov(moov);
+            }
+            pos += size;
+        }
+        return null;
+    }
+
+    private static boolean isTopLevel(int type) {
+        return type == fourcc("ftyp") || type == fourcc("moov") || type == fourcc("mdat")
+                || type == fourcc("free") || type == fourcc("skip") || type == fourcc("wide");
+    }
+
+    private static AudioTrack parseMoov(ByteBuffer moov) {
+        if (child(moov, "mvex") != null) {
+            return null; // fragmented: samples live in moof boxes
+        }
+        ByteBuffer mvhd = child(moov, "mvhd");
+        if (mvhd == null || mvhd.remaining() < 24) {
+            return null;
+        }
+        long movieTimescale = (mvhd.get(0) == 1 ? mvhd.getInt(20) : mvhd.getInt(12)) & 0xffffffffL;
+        for (ByteBuffer trak = next(moov, "trak"); trak != null; trak = next(moov, "trak")) {
+            ByteBuffer mdia = child(trak, "mdia");
+            if (mdia == null) {
+                continue;
+            }
+            ByteBuffer hdlr = child(mdia, "hdlr");
+            if (hdlr == null || hdlr.remaining() < 12 || hdlr.getInt(8) != fourcc("soun")) {
+                continue;
+            }
+            return parseSoundTrack(mdia, child(trak, "edts"), movieTimescale);
+        }
+        return null;
+    }
+
+    private static AudioTrack parseSoundTrack(ByteBuffer mdia, ByteBuffer edts, long movieTimescale) {
+        ByteBuffer mdhd = child(mdia, "mdhd");
+        ByteBuffer stbl = path(mdia, "minf", "stbl");
+        if (mdhd == null || stbl == null || mdhd.remaining() < 24) {
+            return null;
+        }
+        int version = mdhd.get(0);
+        long timescale = (version == 1 ? mdhd.getInt(20) : mdhd.getInt(12)) & 0xffffffffL;
+        int languageAt = version == 1 ? 32 : 20;
+        if (timescale == 0 || mdhd.remaining() < languageAt + 2) {
+            return null;
+        }
+        int language = mdhd.getShort(languageAt) & 0xffff;
+
+        byte[] stsd = box(stbl, "stsd");
+        int[] sizes = readSizes(stbl);
+        long[] chunkOffsets = readChunkOffsets(stbl);
+        ByteBuffer stsc = child(stbl, "stsc");
+        ByteBuffer stts = child(stbl, "stts");
+        if (stsd == null || !isPlainMp4a(stsd) || sizes == null || sizes.length == 0
+                || chunkOffsets == null || stsc == null || stts == null) {
+            return null;
+        }
+        long[] offsets = mapOffsets(stsc, chunkOffsets, sizes);
+        long[] times = mapTimes(stts, sizes.length);
+        if (offsets == null || times == null) {
+            return null;
+        }
+        long[] edit = readEdit(edts, movieTimescale, timescale, times[sizes.length]);
+        if (edit == null) {
+            return null;
+        }
+        return new AudioTrack(timescale, language, stsd, sizes, offsets, times, edit[0], edit[1]);
+    }
+
+    // {start, end} of the presented media in media units. A leading empty edit only delays the
+    // track against the others and is dropped, since the output starts at 0 anyway. More than one
+    // plain edit, or a rate other than 1, is left to MediaExtractor (null).
+    private static long[] readEdit(ByteBuffer edts, long movieTimescale, long timescale, long mediaEnd) {
+        ByteBuffer elst = edts != null ? child(edts, "elst") : null;
+        if (elst == null) {
+            return new long[]{0L, mediaEnd};
+        }
+        if (elst.remaining() < 8) {
+            return null;
+        }
+        boolean wide = elst.get(0) == 1;
+        int entryBytes = wide ? 20 : 12;
+        int entries = elst.getInt(4);
+        if (entries < 0 || elst.remaining() < 8 + (long) entryBytes * entries) {
+            return null;
+        }
+        long[] edit = null;
+        for (int e = 0; e < entries; e++) {
+            int at = 8 + entryBytes * e;
+            long segmentDuration = wide ? elst.getLong(at) : elst.getInt(at) & 0xffffffffL;
+            long mediaTime = wide ? elst.getLong(at + 8) : elst.getInt(at + 4);
+            int rate = elst.getInt(at + (wide ? 16 : 8));
+            if (mediaTime == -1L && edit == null) {
+                continue;
+            }
+            if (edit != null || rate != 0x00010000 || mediaTime < 0 || mediaTime >= mediaEnd
+                    || (segmentDuration != 0 && movieTimescale == 0)) {
+                return null;
+            }
+            long end = mediaEnd;
+            if (segmentDuration != 0) {
+                end = Math.min(mediaEnd, mediaTime + segmentDuration * timescale / movieTimescale);
+            }
+            edit = new long[]{mediaTime, end};
+        }
+        return edit != null ? edit : new long[]{0L, mediaEnd};
+    }
+
+    // One 'mp4a' entry with an ISO (version 0) sound description; QuickTime v1/v2 layouts are
+    // left to MediaExtractor since they would not be valid inside an M4A as they are
+    private static boolean isPlainMp4a(byte[] stsd) {
+        ByteBuffer b = ByteBuffer.wrap(stsd);
+        return stsd.length >= 16 + 36 // stsd header, then a sound sample entry
+                && b.getInt(12) == 1
+                && b.getInt(20) == fourcc("mp4a")
+                && b.getShort(32) == 0;
+    }
+
+    private static int[] readSizes(ByteBuffer stbl) {
+        ByteBuffer stsz = child(stbl, "stsz");
+        if (stsz != null) {
+            if (stsz.remaining() < 12) {
+                return null;
+            }
+            int fixed = stsz.getInt(4);
+            int count = stsz.getInt(8);
+            if (count < 0 || count > MAX_SAMPLES || (fixed == 0 && stsz.remaining() < 12 + 4L * count)) {
+                return null;
+            }
+            int[] sizes = new int[count];
+            for (int i = 0; i < count; i++) {
+                sizes[i] = fixed != 0 ? fixed : stsz.getInt(12 + 4 * i);
+                if (sizes[i] < 0) {
+                    return null;
+                }
+            }
+            return sizes;
+        }
+        ByteBuffer stz2 = child(stbl, "stz2");
+        if (stz2 == null || stz2.remaining() < 12) {
+            return null;
+        }
+        int fieldBits = stz2.get(7) & 0xff;
+        int count = stz2.getInt(8);
+        if ((fieldBits != 4 && fieldBits != 8 && fieldBits != 16) || count < 0 || count > MAX_SAMPLES
+                || stz2.remaining() < 12 + ((long) count * fieldBits + 7) / 8) {
+            return null;
+        }
+        int[] sizes = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (fieldBits == 16) {
+                sizes[i] = stz2.getShort(12 + 2 * i) & 0xffff;
+            } else if (fieldBits == 8) {
+                sizes[i] = stz2.get(12 + i) & 0xff;
+            } else {
+                int b = stz2.get(12 + i / 2) & 0xff;
+                sizes[i] = (i & 1) == 0 ? b >>> 4 : b & 0x0f;
+            }
+        }
+        return sizes;
+    }
+
+    private static long[] readChunkOffsets(ByteBuffer stbl) {
+        ByteBuffer stco = child(stbl, "stco");
+        boolean wide = stco == null;
+        if (wide) {
+            stco = child(stbl, "co64");
+        }
+        if (stco == null || stco.remaining() < 8) {
+            return null;
+        }
+        int count = stco.getInt(4);
+        int entryBytes = wide ? 8 : 4;
+        if (count < 0 || count > MAX_SAMPLES || stco.remaining() < 8 + (long) entryBytes * count) {
+            return null;
+        }
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = wide ? stco.getLong(8 + 8 * i) : stco.getInt(8 + 4 * i) & 0xffffffffL;
+        }
+        return offsets;
+    }
+
+    // Absolute offset of every sample from the chunk offsets and the sample-to-chunk runs
+    private static long[] mapOffsets(ByteBuffer stsc, long[] chunkOffsets, int[] sizes) {
+        if (stsc.remaining() < 8) {
+            return null;
+        }
+        int entries = stsc.getInt(4);
+        if (entries <= 0 || stsc.remaining() < 8 + 12L * entries) {
+            return null;
+        }
+        long[] offsets = new long[sizes.length];
+        int sample = 0;
+        for (int e = 0; e < entries && sample < sizes.length; e++) {
+            int firstChunk = stsc.getInt(8 + 12 * e) - 1;
+            int perChunk = stsc.getInt(8 + 12 * e + 4);
+            int endChunk = e + 1 < entries ? stsc.getInt(8 + 12 * (e + 1)) - 1 : chunkOffsets.length;
+            if (firstChunk < 0 || perChunk <= 0 || endChunk > chunkOffsets.length || endChunk < firstChunk) {
+                return null;
+            }
+            for (int chunk = firstChunk; chunk < endChunk && sample < sizes.length; chunk++) {
+                long offset = chunkOffsets[chunk];
+                for (int i = 0; i < perChunk && sample < sizes.length; i++) {
+                    offsets[sample] = offset;
+                    offset += sizes[sample];
+                    sample++;
+                }
+            }
+        }
+        return sample == sizes.length ? offsets : null;
+    }
+
+    // Decode times from the run-length deltas, with one extra entry for the end of the last sample
+    private static long[] mapTimes(ByteBuffer stts, int count) {
+        if (stts.remaining() < 8) {
+            return null;
+        }
+        int entries = stts.getInt(4);
+        if (entries < 0 || stts.remaining() < 8 + 8L * entries) {
+            return null;
+        }
+        long[] times = new long[count + 1];
+        int sample = 0;
+        long t = 0L;
+        for (int e = 0; e < entries && sample < count; e++) {
+            long runLength = stts.getInt(8 + 8 * e) & 0xffffffffL;
+            long delta = stts.getInt(8 + 8 * e + 4) & 0xffffffffL;
+            for (long i = 0; i < runLength && sample < count; i++) {
+                times[sample++] = t;
+                t += delta;
+            }
+        }
+        if (sample != count) {
+            return null;
+        }
+        times[count] = t;
+        return times;
+    }
+
+    // Payload of the first child box of the given type, or null
+    private static ByteBuffer child(ByteBuffer parent, String type) {
+        ByteBuffer view = parent.duplicate();
+        view.rewind();
+        return next(view, type);
+    }
+
+    private static ByteBuffer path(ByteBuffer parent, String... types) {
+        ByteBuffer box = parent;
+        for (String type : types) {
+            if (box == null) {
+                return null;
+            }
+            box = child(box, type);
+        }
+        return box;
+    }
+
+    // Whole box (header included) of the first child of the given type, or null
+    private static byte[] box(ByteBuffer parent, String type) {
+        ByteBuffer payload = child(parent, type);
+        if (payload == null) {
+            return null;
+        }
+        byte[] out = new byte[8 + payload.remaining()];
+        ByteBuffer.wrap(out).putInt(out.length).putInt(fourcc(type)).put(payload.duplicate());
+        return out;
+    }
+
+    // Payload of the next box of the given type at or after the cursor's position, which is
+    // moved past it; null once the cursor runs out. Malformed sizes end the scan.
+    private static ByteBuffer next(ByteBuffer cursor, String type) {
+        int wanted = fourcc(type);
+        while (cursor.remaining() >= 8) {
+            int start = cursor.position();
+            long size = cursor.getInt() & 0xffffffffL;
+            int boxType = cursor.getInt();
+            int headerBytes = 8;
+            if (size == 1) {
+                if (cursor.remaining() < 8) {
+                    break;
+                }
+                size = cursor.getLong();
+                headerBytes = 16;
+            } else if (size == 0) {
+                size = cursor.limit() - start;
+            }
+            if (size < headerBytes || size > cursor.limit() - start) {
+                break;
+            }
+            int end = start + (int) size;
+            cursor.position(end);
+            if (boxType == wanted) {
+                ByteBuffer payload = cursor.duplicate();
+                payload.position(start + headerBytes);
+                payload.limit(end);
+                return payload.slice();
+            }
+        }
+        cursor.position(cursor.limit());
+        return null;
+    }
+
+    static int fourcc(String type) {
+        return type.charAt(0) << 24 | type.charAt(1) << 16 | type.charAt(2) << 8 | type.charAt(3);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            if (channel.read(dst, position + dst.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Single audio track in an MP4/M4A container via MediaMuxer
+class MuxerSink implements OutputSink {
+
+    private final MediaMuxer muxer;
+    private int trackIndex = -1;
+    private boolean started = false;
+    private long bytesWritten = 0L;
+
+    MuxerSink(File file) throws IOException {
+        muxer = new MediaMuxer(file.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+    }
+
+    @Override
+    public void onFormat(MediaFormat format) {
+        if (started) {
+            throw new IllegalStateException("Encoder output format changed twice");
+        }
+        trackIndex = muxer.addTrack(format);
+        muxer.start();
+        started = true;
+    }
+
+    @Override
+    public void writeSample(ByteBuffer data, MediaCodec.BufferInfo info) {
+        if (data == null || info.size <= 0) {
+            return;
+        }
+        if (!started) {
+            throw new IllegalStateException("Muxer has not started");
+        }
+        data.position(info.offset);
+        data.limit(info.offset + info.size);
+        muxer.writeSampleData(trackIndex, data, info);
+        bytesWritten += info.size;
+    }
+
+    @Override
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void finish() {
+        try {
+            if (started) muxer.stop();
+        } catch (Exception ignored) {
+            // Same as before the sink existed: a failed stop leaves whatever was written
+        } finally {
+            muxer.release();
+        }
+    }
+
+    @Override
+    public void abort() {
+        try { muxer.release(); } catch (Exception ignored) {}
+    }
+}
@@ -0,0 +1,61 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+// Duration and size limits of one extraction and the encoder bitrate that follows from them.
+final class OutputBudget {
+
+    static final long MAX_DURATION_US = 300L * 1_000_000L; // 5 min, counted from the range start
+    static final long MAX_SIZE_BYTES = 10L * 1024L * 1024L; // 10 MB
+    static final int MIN_BITRATE = 32_000;
+
+    // Share of the size cap the encoded audio may use; the rest covers container and frame
+    // headers and the encoder overshooting its target for a while
+    private static final double PAYLOAD_SHARE = 0.95;
+
+    // Per-channel rate past which neither codec gets audibly better
+    private static final int MP3_CHANNEL_CEILING = 160_000;
+    private static final int AAC_CHANNEL_CEILING = 128_000;
+
+    // MPEG-1 Layer III rates; encoders round anything else, possibly upwards
+    private static final int[] MP3_BITRATES = {
+            32_000, 40_000, 48_000, 56_000, 64_000, 80_000, 96_000, 112_000,
+            128_000, 160_000, 192_000, 224_000, 256_000, 320_000
+    };
+
+    private OutputBudget() {}
+
+    // Absolute source time at which feeding stops; endUs <= 0 means "until the end of the source"
+    static long cutoffUs(long startUs, long endUs) {
+        return endUs > 0 ? Math.min(endUs, startUs + MAX_DURATION_US) : startUs + MAX_DURATION_US;
+    }
+
+    // Highest bitrate at which rangeUs of audio still fits the size cap
+    static int budgetBitrate(long rangeUs) {
+        if (rangeUs <= 0) {
+            rangeUs = MAX_DURATION_US;
+        }
+        long bps = (long) (MAX_SIZE_BYTES * 8L * PAYLOAD_SHARE) * 1_000_000L / rangeUs;
+        return (int) Math.min(Integer.MAX_VALUE, bps);
+    }
+
+    // Encoder bitrate for a range of rangeUs (<= 0 if unknown, budgeted as the full 5 minutes).
+    // Without a requested rate this is the codec's quality ceiling for the channel count, lowered
+    // so the whole range fits in MAX_SIZE_BYTES; a requested rate is lowered the same way.
+    static int targetBitrate(String outMime, int channels, int requestedBitrate, long rangeUs) {
+        boolean mp3 = MimeTypes.MP3.equals(outMime);
+        int ceiling = Math.max(1, Math.min(2, channels)) * (mp3 ? MP3_CHANNEL_CEILING : AAC_CHANNEL_CEILING);
+        int wanted = requestedBitrate > 0 ? requestedBitrate : ceiling;
+        int bitrate = Math.max(MIN_BITRATE, Math.min(wanted, budgetBitrate(rangeUs)));
+        return mp3 ? mp3Bitrate(bitrate) : bitrate;
+    }
+
+    // Largest standard MP3 rate not above bitrate
+    private static int mp3Bitrate(int bitrate) {
+        int best = MP3_BITRATES[0];
+        for (int rate : MP3_BITRATES) {
+            if (rate <= bitrate) {
+                best = rate;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,25 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Destination for encoded (or passed-through) audio samples, shared by every output format
+interface OutputSink {
+
+    // Format of the samples that follow; called once before the first writeSample
+    void onFormat(MediaFormat format) throws IOException;
+
+    // Writes info.size bytes starting at info.offset. The buffer is not retained.
+    void writeSample(ByteBuffer data, MediaCodec.BufferInfo info) throws IOException;
+
+    long bytesWritten();
+
+    // Flushes and finalizes the file
+    void finish() throws IOException;
+
+    // Releases resources without finalizing; the file content is undefined afterwards
+    void abort();
+}
@@ -0,0 +1,91 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+// Fixed pool of direct PCM buffers between decoder output and encoder input.
+// Not thread-safe: the async engine only touches it from its codec thread.
+final class PcmRing {
+
+    static final class Chunk {
+        final ByteBuffer data;
+        long ptsUs;
+
+        Chunk(int capacity) {
+            data = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private final ArrayDeque<Chunk> free = new ArrayDeque<>();
+    private final ArrayDeque<Chunk> filled = new ArrayDeque<>();
+    private final int bytesPerFrame;
+    private final int sampleRate;
+
+    PcmRing(int chunkCount, int chunkBytes, int bytesPerFrame, int sampleRate) {
+        this.bytesPerFrame = Math.max(1, bytesPerFrame);
+        this.sampleRate = Math.max(1, sampleRate);
+        int capacity = chunkBytes - (chunkBytes % this.bytesPerFrame);
+        for (int i = 0; i < chunkCount; i++) {
+            free.add(new Chunk(capacity));
+        }
+    }
+
+    // Returns an empty chunk or null when every chunk is waiting for the encoder
+    Chunk acquire() {
+        Chunk c = free.poll();
+        if (c != null) {
+            c.data.clear();
+        }
+        return c;
+    }
+
+    void publish(Chunk c) {
+        c.data.flip();
+        if (c.data.hasRemaining()) {
+            filled.add(c);
+        } else {
+            recycle(c);
+        }
+    }
+
+    void recycle(Chunk c) {
+        c.data.clear();
+        free.add(c);
+    }
+
+    boolean hasData() {
+        return !filled.isEmpty();
+    }
+
+    // Copies as much queued PCM as fits into dst. Returns the timestamp of the first byte copied,
+    // or -1 if nothing was queued.
+    long drainInto(ByteBuffer dst) {
+        long firstPtsUs = -1;
+        while (dst.remaining() >= bytesPerFrame && !filled.isEmpty()) {
+            Chunk c = filled.peek();
+            if (firstPtsUs < 0) {
+                firstPtsUs = c.ptsUs;
+            }
+            int n = Math.min(c.data.remaining(), dst.remaining());
+            n -= n % bytesPerFrame;
+            int oldLimit = c.data.limit();
+            c.data.limit(c.data.position() + n);
+            dst.put(c.data);
+            c.data.limit(oldLimit);
+            c.ptsUs += (long) (n / bytesPerFrame) * 1_000_000L / sampleRate;
+            if (!c.data.hasRemaining()) {
+                filled.poll();
+                recycle(c);
+            }
+        }
+        return firstPtsUs;
+    }
+
+    void clear() {
+        Chunk c;
+        while ((c = filled.poll()) != null) {
+            recycle(c);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Output of OutputFormat.PEAKS: decoded PCM is only analysed (the session feeds the
+// WaveformPeaks on its way here) and dropped; finish writes the peaks as the whole file.
+class PeaksSink implements OutputSink {
+
+    private final File file;
+    private final WaveformPeaks peaks;
+
+    PeaksSink(File file, WaveformPeaks peaks) {
+        this.file = file;
+        this.peaks = peaks;
+    }
+
+    @Override
+    public void onFormat(MediaFormat format) {
+        // Nothing to describe until finish
+    }
+
+    @Override
+    public void writeSample(ByteBuffer data, MediaCodec.BufferInfo info) {
+        // Already folded into the peaks
+    }
+
+    // No audio is kept, so the size cap never stops the analysis; the duration cap still does
+    @Override
+    public long bytesWritten() {
+        return 0L;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(peaks.toBytes());
+        }
+    }
+
+    @Override
+    public void abort() {
+        // Nothing open
+    }
+}
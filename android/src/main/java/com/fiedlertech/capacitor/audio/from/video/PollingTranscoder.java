@@ -0,0 +1,179 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.media.MediaCodec;
+
+import java.nio.ByteBuffer;
+
+// Original single-thread engine: polls both codecs with short dequeue timeouts.
+// Kept as the fallback for devices/APIs where the callback engine is unavailable.
+class PollingTranscoder implements TranscodeEngine {
+
+    private static final long TIMEOUT_US = 10_000;
+
+    @Override
+    public void attach(MediaCodec codec, boolean isEncoder) {
+        // Synchronous mode needs no setup
+    }
+
+    @Override
+    public void run(TranscodeSession session) throws Exception {
+        if (!session.hasEncoder()) {
+            runDecodeOnly(session);
+            return;
+        }
+        MediaCodec decoder = session.decoder;
+        MediaCodec encoder = session.encoder;
+
+        boolean extractorEOS = false;
+        boolean decoderEOS = false;
+        boolean encoderEOS = false;
+        boolean encoderEosQueued = false;
+
+        MediaCodec.BufferInfo decInfo = new MediaCodec.BufferInfo();
+        MediaCodec.BufferInfo encInfo = new MediaCodec.BufferInfo();
+
+        // Decoder output that did not fully fit into an encoder input buffer yet
+        int pendingOutIndex = -1;
+        ByteBuffer pendingOut = null;
+        boolean pendingOutIsEos = false;
+        long pendingPtsUs = 0L;
+        // Encoder input buffer that got nothing to carry (silence trimming dropped the whole slice,
+        // or only a partial frame was left); filled on a later pass rather than queued empty
+        int heldInIndex = -1;
+
+        while (!encoderEOS) {
+            session.throwIfCancelled();
+            // Once the output is full nothing more is read or decoded; only the encoder is flushed
+            boolean capped = session.sizeCapReached();
+
+            // Feed decoder
+            if (!extractorEOS && !capped) {
+                int inIndex = decoder.dequeueInputBuffer(TIMEOUT_US);
+                if (inIndex >= 0) {
+                    ByteBuffer inBuf = decoder.getInputBuffer(inIndex);
+                    if (inBuf != null) {
+                        extractorEOS = session.queueNextSample(inIndex, inBuf);
+                    }
+                }
+            }
+
+            // Drain decoder, unless the previous output is still waiting for the encoder
+            if (pendingOutIndex < 0 && !decoderEOS && !capped) {
+                int outIndex = decoder.dequeueOutputBuffer(decInfo, TIMEOUT_US);
+                if (outIndex >= 0) {
+                    ByteBuffer decOut = decoder.getOutputBuffer(outIndex);
+                    pendingOutIsEos = (decInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                    if (decOut != null && decInfo.size > 0) {
+                        decOut.limit(decInfo.offset + decInfo.size);
+                        decOut.position(decInfo.offset);
+                        pendingOut = decOut;
+                        pendingPtsUs = session.trimLeading(decOut, decInfo.presentationTimeUs);
+                        pendingOutIndex = outIndex;
+                    } else {
+                        decoder.releaseOutputBuffer(outIndex, false);
+                        decoderEOS = pendingOutIsEos;
+                    }
+                } else if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    session.onDecoderFormatChanged(decoder.getOutputFormat());
+                }
+            }
+
+            // Feed encoder from the pending decoder output; only release it once fully copied
+            if (pendingOutIndex >= 0 && pendingOut.hasRemaining() && !session.sizeCapReached()) {
+                int encInIndex = heldInIndex >= 0 ? heldInIndex : encoder.dequeueInputBuffer(TIMEOUT_US);
+                heldInIndex = -1;
+                if (encInIndex >= 0) {
+                    ByteBuffer encIn = encoder.getInputBuffer(encInIndex);
+                    if (encIn != null) {
+                        encIn.clear();
+                        long ptsUs = session.outputPtsUs(pendingPtsUs);
+                        int bytesQueued = session.copyPcm(pendingOut, encIn);
+                        if (bytesQueued > 0) {
+                            encoder.queueInputBuffer(encInIndex, 0, bytesQueued, ptsUs, 0);
+                            session.reportProgress(pendingPtsUs);
+                            pendingPtsUs += session.bytesToUs(bytesQueued);
+                        } else {
+                            heldInIndex = encInIndex;
+                        }
+                    }
+                }
+            }
+            if (pendingOutIndex >= 0 && (!pendingOut.hasRemaining() || session.sizeCapReached())) {
+                decoder.releaseOutputBuffer(pendingOutIndex, false);
+                pendingOutIndex = -1;
+                pendingOut = null;
+                decoderEOS = pendingOutIsEos;
+            }
+
+            // Decoder finished (or size cap hit): hand EOS to the encoder once
+            if ((decoderEOS || capped) && !encoderEosQueued) {
+                int encInIndex = heldInIndex >= 0 ? heldInIndex : encoder.dequeueInputBuffer(TIMEOUT_US);
+                heldInIndex = -1;
+                if (encInIndex >= 0) {
+                    encoder.queueInputBuffer(encInIndex, 0, 0, session.endPtsUs(),
+                            MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                    encoderEosQueued = true;
+                    session.onEncoderEosQueued();
+                }
+            }
+
+            // Drain encoder -> write
+            while (true) {
+                int encOutIndex = encoder.dequeueOutputBuffer(encInfo, TIMEOUT_US);
+                if (encOutIndex == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                    break;
+                } else if (encOutIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    session.onEncoderFormatChanged(encoder.getOutputFormat());
+                } else if (encOutIndex >= 0) {
+                    session.writeEncoded(encoder.getOutputBuffer(encOutIndex), encInfo);
+                    if ((encInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        encoderEOS = true;
+                    }
+                    encoder.releaseOutputBuffer(encOutIndex, false);
+                    if (encoderEOS) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    // WAV/PCM output: each decoder buffer is written out right away, until EOS or the size cap
+    private void runDecodeOnly(TranscodeSession session) throws Exception {
+        MediaCodec decoder = session.decoder;
+        MediaCodec.BufferInfo decInfo = new MediaCodec.BufferInfo();
+        boolean extractorEOS = false;
+        while (true) {
+            session.throwIfCancelled();
+            if (!extractorEOS) {
+                int inIndex = decoder.dequeueInputBuffer(TIMEOUT_US);
+                if (inIndex >= 0) {
+                    ByteBuffer inBuf = decoder.getInputBuffer(inIndex);
+                    if (inBuf != null) {
+                        extractorEOS = session.queueNextSample(inIndex, inBuf);
+                    }
+                }
+            }
+            int outIndex = decoder.dequeueOutputBuffer(decInfo, TIMEOUT_US);
+            if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                session.onDecoderFormatChanged(decoder.getOutputFormat());
+            } else if (outIndex >= 0) {
+                ByteBuffer decOut = decoder.getOutputBuffer(outIndex);
+                if (decOut != null && decInfo.size > 0) {
+                    decOut.limit(decInfo.offset + decInfo.size);
+                    decOut.position(decInfo.offset);
+                    session.writePcm(decOut, session.trimLeading(decOut, decInfo.presentationTimeUs));
+                }
+                decoder.releaseOutputBuffer(outIndex, false);
+                if ((decInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0 || session.sizeCapReached()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void release() {
+        // Nothing owned beyond the codecs
+    }
+}
@@ -0,0 +1,181 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import java.util.Arrays;
+
+// Streaming rational resampler (L/M polyphase, Kaiser-windowed sinc) for interleaved 16-bit PCM.
+// Input can arrive in blocks of any size; history between blocks is kept internally and the
+// filter delay is pre-compensated so output frame 0 lines up with input frame 0.
+// Not thread-safe.
+public final class PolyphaseResampler {
+
+    public static final int DEFAULT_TAPS = 32;
+    private static final double KAISER_BETA = 7.0;
+
+    private final int channels;
+    private final int up;   // L
+    private final int down; // M
+    private final int taps;
+    private final float[] coeffs; // [phase][tap]
+
+    private float[] buf;    // interleaved history + pending input
+    private int bufFrames;
+    private int pos = 0;    // first input frame used by the next output
+    private int phase = 0;  // next output's sub-sample offset, in 1/L steps
+
+    public PolyphaseResampler(int inputRate, int outputRate, int channels) {
+        this(inputRate, outputRate, channels, DEFAULT_TAPS);
+    }
+
+    public PolyphaseResampler(int inputRate, int outputRate, int channels, int taps) {
+        if (inputRate <= 0 || outputRate <= 0 || channels <= 0) {
+            throw new IllegalArgumentException("Invalid resampler config " + inputRate + " -> " + outputRate);
+        }
+        int g = gcd(inputRate, outputRate);
+        this.up = outputRate / g;
+        this.down = inputRate / g;
+        this.channels = channels;
+        this.taps = Math.max(4, taps + (taps & 1));
+        this.coeffs = designFilter(up, down, this.taps);
+        // Half the filter of silence in front, so the filter is centred on input frame 0
+        int lead = this.taps / 2 - 1;
+        this.buf = new float[(lead + 4096) * channels];
+        this.bufFrames = lead;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private static float[] designFilter(int up, int down, int taps) {
+        // Cutoff at the lower of the two Nyquist frequencies, in input-rate units
+        double cutoff = Math.min(1.0, (double) up / down) * 0.97;
+        float[] h = new float[up * taps];
+        int center = taps / 2 - 1;
+        double i0Beta = besselI0(KAISER_BETA);
+        for (int p = 0; p < up; p++) {
+            double sum = 0.0;
+            for (int k = 0; k < taps; k++) {
+                double x = (k - center) - (double) p / up;
+                double sinc = x == 0.0 ? 1.0 : Math.sin(Math.PI * cutoff * x) / (Math.PI * cutoff * x);
+                double r = x / (taps / 2.0);
+                double w = Math.abs(r) >= 1.0 ? 0.0 : besselI0(KAISER_BETA * Math.sqrt(1.0 - r * r)) / i0Beta;
+                double v = sinc * w;
+                h[p * taps + k] = (float) v;
+                sum += v;
+            }
+            // Unity DC gain per phase
+            for (int k = 0; k < taps; k++) {
+                h[p * taps + k] = (float) (h[p * taps + k] / sum);
+            }
+        }
+        return h;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1.0, term = 1.0, half = x / 2.0;
+        for (int k = 1; k < 50; k++) {
+            term *= (half / k) * (half / k);
+            sum += term;
+            if (term < 1e-12 * sum) break;
+        }
+        return sum;
+    }
+
+    public int channels() {
+        return channels;
+    }
+
+    public boolean isPassThrough() {
+        return up == down;
+    }
+
+    // Largest input block that cannot produce more than maxOutputFrames outputs (with what is buffered)
+    public int maxInputFor(int maxOutputFrames) {
+        if (maxOutputFrames <= 0) {
+            return 0;
+        }
+        long ready = bufFrames - pos - (taps - 1);
+        long limit = ((long) maxOutputFrames * down) / up - 1 - Math.max(0, ready);
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, limit));
+    }
+
+    // Upper bound of output frames for a block of inputFrames
+    public int maxOutputFor(int inputFrames) {
+        long available = (long) bufFrames - pos + inputFrames;
+        return (int) (available * up / down) + 2;
+    }
+
+    // Consumes frames of interleaved input and writes resampled frames to out; returns frames written
+    public int process(short[] in, int inOff, int frames, short[] out, int outOff) {
+        append(in, inOff, frames);
+        final int ch = channels;
+        final int t = taps;
+        final float[] h = coeffs;
+        final float[] x = buf;
+        int produced = 0;
+        int o = outOff;
+        while (pos + t <= bufFrames) {
+            int hBase = phase * t;
+            int xBase = pos * ch;
+            for (int c = 0; c < ch; c++) {
+                float acc = 0f;
+                for (int k = 0, xi = xBase + c; k < t; k++, xi += ch) {
+                    acc += x[xi] * h[hBase + k];
+                }
+                int v = Math.round(acc);
+                out[o++] = (short) (v > Short.MAX_VALUE ? Short.MAX_VALUE : (v < Short.MIN_VALUE ? Short.MIN_VALUE : v));
+            }
+            produced++;
+            phase += down;
+            pos += phase / up;
+            phase %= up;
+        }
+        compact();
+        return produced;
+    }
+
+    public void reset() {
+        int lead = taps / 2 - 1;
+        Arrays.fill(buf, 0, lead * channels, 0f);
+        bufFrames = lead;
+        pos = 0;
+        phase = 0;
+    }
+
+    private void append(short[] in, int inOff, int frames) {
+        int need = (bufFrames + frames) * channels;
+        if (need > buf.length) {
+            float[] grown = new float[Math.max(need, buf.length * 2)];
+            System.arraycopy(buf, 0, grown, 0, bufFrames * channels);
+            buf = grown;
+        }
+        int dst = bufFrames * channels;
+        int n = frames * channels;
+        for (int i = 0; i < n; i++) {
+            buf[dst + i] = in[inOff + i];
+        }
+        bufFrames += frames;
+    }
+
+    // Drops input frames no future output needs
+    private void compact() {
+        if (pos == 0) {
+            return;
+        }
+        if (pos >= bufFrames) {
+            // Large decimation can step past everything buffered; skip those frames of the next block
+            pos -= bufFrames;
+            bufFrames = 0;
+            return;
+        }
+        int keep = bufFrames - pos;
+        System.arraycopy(buf, pos * channels, buf, 0, keep * channels);
+        bufFrames = keep;
+        pos = 0;
+    }
+}
@@ -0,0 +1,49 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+
+// An opened extractor with its first audio track selected. Batches build the next item's
+// PreparedInput on the ingest thread while the current item is still transcoding.
+final class PreparedInput {
+
+    final MediaExtractor extractor;
+    final int trackIndex;
+    final MediaFormat format;
+    final long openNs; // time spent opening and probing, including any temp copy
+
+    private PreparedInput(MediaExtractor extractor, int trackIndex, MediaFormat format, long openNs) {
+        this.extractor = extractor;
+        this.trackIndex = trackIndex;
+        this.format = format;
+        this.openNs = openNs;
+    }
+
+    // Returns null if the source has no audio track
+    static PreparedInput open(MediaSource source) throws IOException {
+        long startNs = System.nanoTime();
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            source.applyTo(extractor);
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat fmt = extractor.getTrackFormat(i);
+                String mime = fmt.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    return new PreparedInput(extractor, i, fmt, System.nanoTime() - startNs);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            extractor.release();
+            throw e;
+        }
+        extractor.release();
+        return null;
+    }
+
+    void release() {
+        try { extractor.release(); } catch (Exception ignored) {}
+    }
+}
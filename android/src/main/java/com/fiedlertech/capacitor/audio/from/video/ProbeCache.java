@@ -0,0 +1,36 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Small in-memory LRU of probe results keyed by MediaSource.identity(), so probing the same source
+// again doesn't reopen it. The identity covers size and mtime (plus sampled content for content
+// URIs), so a changed file misses rather than answering stale.
+final class ProbeCache {
+
+    static final int DEFAULT_MAX_ENTRIES = 64;
+
+    private final int maxEntries;
+    private final LinkedHashMap<String, MediaProbe> entries;
+
+    ProbeCache(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.entries = new LinkedHashMap<String, MediaProbe>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MediaProbe> eldest) {
+                return size() > ProbeCache.this.maxEntries;
+            }
+        };
+    }
+
+    // Null identity (no stable key for the source) never hits
+    synchronized MediaProbe get(String identity) {
+        return identity != null ? entries.get(identity) : null;
+    }
+
+    synchronized void put(String identity, MediaProbe probe) {
+        if (identity != null) {
+            entries.put(identity, probe);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.os.SystemClock;
+
+// Coalesces per-buffer progress updates into at most one callback per interval and step,
+// so the hot loops only pay for a couple of comparisons. Stage changes and completion
+// are always delivered. Updates may come from the worker or the codec thread, never both at once.
+class ProgressReporter {
+
+    private final String jobId;
+    private final AudioFromVideoRetriever.ExtractionCallback callback;
+    private final long minIntervalMs;
+    private final double minStep;
+    private final long startMs;
+
+    private ExtractionProgress.Stage stage;
+    private long stageStartMs;
+    private long workStartMs = -1; // first remux/decode stage; ETA ignores ingest time
+    private long durationUs;
+    private double lastProgress = -1.0;
+    private long lastEmitMs = 0L;
+
+    ProgressReporter(String jobId, AudioFromVideoRetriever.ExtractionCallback callback,
+                     long minIntervalMs, double minStep) {
+        this.jobId = jobId;
+        this.callback = callback;
+        this.minIntervalMs = Math.max(0L, minIntervalMs);
+        this.minStep = Math.max(0.0, minStep);
+        this.startMs = SystemClock.elapsedRealtime();
+    }
+
+    void setDurationUs(long durationUs) {
+        this.durationUs = durationUs;
+    }
+
+    void stage(ExtractionProgress.Stage next, long bytesWritten) {
+        if (next == stage) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        stage = next;
+        stageStartMs = now;
+        if (workStartMs < 0 && next != ExtractionProgress.Stage.INGEST) {
+            workStartMs = now;
+        }
+        emit(now, Math.max(0.0, lastProgress), bytesWritten);
+    }
+
+    void update(long ptsUs, long bytesWritten) {
+        if (durationUs <= 0) {
+            return;
+        }
+        double p = Math.min(1.0, (double) ptsUs / (double) durationUs);
+        if (p - lastProgress < minStep) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastEmitMs < minIntervalMs) {
+            return;
+        }
+        emit(now, p, bytesWritten);
+    }
+
+    void complete(long bytesWritten) {
+        emit(SystemClock.elapsedRealtime(), 1.0, bytesWritten);
+    }
+
+    private void emit(long now, double p, long bytesWritten) {
+        lastProgress = p;
+        lastEmitMs = now;
+        long eta = -1L;
+        if (workStartMs >= 0 && p > 0.0) {
+            eta = p >= 1.0 ? 0L : (long) ((now - workStartMs) * (1.0 - p) / p);
+        }
+        ExtractionProgress event = new ExtractionProgress(jobId, stage, p, bytesWritten,
+                now - startMs, now - stageStartMs, eta);
+        try { callback.onExtractionProgress(event); } catch (Exception ignored) {}
+    }
+}
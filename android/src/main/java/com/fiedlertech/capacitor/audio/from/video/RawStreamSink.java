@@ -0,0 +1,112 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Writes samples back to back (MP3 frames, ADTS, PCM) through a direct write-behind buffer,
+// so each frame is one memcpy and the channel only sees large coalesced writes.
+class RawStreamSink implements OutputSink {
+
+    static final int DEFAULT_BUFFER_BYTES = 256 * 1024;
+
+    private final FileOutputStream stream;
+    private final FileChannel channel;
+    private final ByteBuffer pending;
+    private long bytesWritten = 0L;
+
+    RawStreamSink(File file) throws IOException {
+        this(file, DEFAULT_BUFFER_BYTES);
+    }
+
+    RawStreamSink(File file, int bufferBytes) throws IOException {
+        stream = new FileOutputStream(file);
+        channel = stream.getChannel();
+        pending = ByteBuffer.allocateDirect(bufferBytes);
+    }
+
+    @Override
+    public void onFormat(MediaFormat format) {
+        // Raw stream: no container to describe
+    }
+
+    @Override
+    public void writeSample(ByteBuffer data, MediaCodec.BufferInfo info) throws IOException {
+        if (data == null || info.size <= 0) {
+            return;
+        }
+        int oldPosition = data.position();
+        int oldLimit = data.limit();
+        data.limit(info.offset + info.size);
+        data.position(info.offset);
+        write(data);
+        data.limit(oldLimit);
+        data.position(oldPosition);
+        bytesWritten += info.size;
+    }
+
+    // Appends src from position to limit
+    void write(ByteBuffer src) throws IOException {
+        if (src.remaining() > pending.remaining()) {
+            flush();
+            if (src.remaining() >= pending.capacity()) {
+                // Too large to coalesce, hand it to the channel directly
+                while (src.hasRemaining()) {
+                    channel.write(src);
+                }
+                return;
+            }
+        }
+        pending.put(src);
+    }
+
+    void flush() throws IOException {
+        pending.flip();
+        while (pending.hasRemaining()) {
+            channel.write(pending);
+        }
+        pending.clear();
+    }
+
+    // Appends count bytes of src starting at position without copying through the heap
+    void append(FileChannel src, long position, long count) throws IOException {
+        flush();
+        long done = 0L;
+        while (done < count) {
+            long n = src.transferTo(position + done, count - done, channel);
+            if (n <= 0) {
+                throw new IOException("Short transfer: " + done + " of " + count + " bytes");
+            }
+            done += n;
+        }
+        bytesWritten += count;
+    }
+
+    FileChannel channel() {
+        return channel;
+    }
+
+    @Override
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        try {
+            flush();
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Override
+    public void abort() {
+        try { stream.close(); } catch (Exception ignored) {}
+    }
+}
@@ -0,0 +1,271 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+// Content-addressed store for extraction results. Entries are named <key>.<ext> inside one
+// directory, where the key hashes the source identity and every option that changes the output,
+// so a repeated extraction is answered with a file lookup. Recency is kept in file mtimes so the
+// LRU order survives restarts; the total size is held under a byte budget.
+public class ResultCache {
+
+    private static final String TAG = "VideoToAudio";
+    private static final String PART_SUFFIX = ".part";
+
+    public static final long DEFAULT_MAX_BYTES = 100L * 1024L * 1024L;
+
+    public static final class Entry {
+        public final File file;
+        public final String mimeType;
+
+        Entry(File file, String mimeType) {
+            this.file = file;
+            this.mimeType = mimeType;
+        }
+    }
+
+    // Size is remembered so the total stays right even if a file vanishes behind our back
+    private static final class Item {
+        final File file;
+        final long size;
+
+        Item(File file) {
+            this.file = file;
+            this.size = file.length();
+        }
+    }
+
+    private final File dir;
+    private final LinkedHashMap<String, Item> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long totalBytes = 0L;
+
+    public ResultCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        load();
+    }
+
+    private synchronized void load() {
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "Could not create result cache at " + dir);
+        }
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        // Left over from extractions that never finished, with any in-place output they marked
+        Set<String> unfinished = new HashSet<>();
+        for (File f : files) {
+            String name = f.getName();
+            if (name.endsWith(PART_SUFFIX)) {
+                unfinished.add(name.substring(0, name.length() - PART_SUFFIX.length()));
+                f.delete();
+            }
+        }
+        for (File f : files) {
+            String name = f.getName();
+            int dot = name.lastIndexOf('.');
+            if (dot <= 0 || MimeTypes.outputMime(name.substring(dot)) == null) {
+                continue;
+            }
+            if (unfinished.contains(name.substring(0, dot))) {
+                f.delete();
+                continue;
+            }
+            Item item = new Item(f);
+            entries.put(name.substring(0, dot), item);
+            totalBytes += item.size;
+        }
+        evict(null);
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict(null);
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    // Whether file lies directly in the cache directory once links and .. are resolved
+    public boolean holds(File file) {
+        try {
+            File parent = file.getCanonicalFile().getParentFile();
+            return parent != null && parent.equals(dir.getCanonicalFile());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Hash of the source identity and the output-affecting options; null if the source has none
+    public static String keyFor(String sourceIdentity, ExtractionOptions options) {
+        if (sourceIdentity == null) {
+            return null;
+        }
+        String material = sourceIdentity
+                + "|range=" + options.startMs + "-" + options.endMs
+                + "|rate=" + options.outputSampleRate
+                + "|ch=" + options.outputChannels
+                + "|br=" + options.outputBitrate
+                + "|fmt=" + options.outputFormat
+                + "|frag=" + (options.isFragmented() ? options.fragmentDurationMs : 0L);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(material.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public synchronized Entry get(String key) {
+        if (key == null) {
+            return null;
+        }
+        Item item = entries.get(key);
+        if (item == null) {
+            return null;
+        }
+        File f = item.file;
+        if (!f.exists()) {
+            entries.remove(key);
+            totalBytes -= item.size;
+            return null;
+        }
+        f.setLastModified(System.currentTimeMillis());
+        return new Entry(f, MimeTypes.outputMime(f.getName().substring(f.getName().lastIndexOf('.'))));
+    }
+
+    // Where an extraction writes before commit; unfinished part files are removed on next load
+    public File newPartFile() {
+        return new File(dir, UUID.randomUUID().toString() + PART_SUFFIX);
+    }
+
+    // Where an extraction writes whose output is read by path while it runs (fragmented MP4): the
+    // file is created under its final name, which commit keeps, and a .part marker next to it
+    // stands for it being unfinished until then
+    public File newInPlaceFile(String mimeType) throws IOException {
+        String name = anonymousKey();
+        File marker = new File(dir, name + PART_SUFFIX);
+        if (!marker.createNewFile()) {
+            throw new IOException("Could not create " + marker);
+        }
+        return new File(dir, name + MimeTypes.outputExt(mimeType));
+    }
+
+    private static String anonymousKey() {
+        return "u" + UUID.randomUUID().toString().replace("-", "");
+    }
+
+    // The .part marker of an in-place file, or null for a part file
+    private static File markerFor(File part) {
+        String name = part.getName();
+        int dot = name.lastIndexOf('.');
+        if (name.endsWith(PART_SUFFIX) || dot <= 0) {
+            return null;
+        }
+        return new File(part.getParentFile(), name.substring(0, dot) + PART_SUFFIX);
+    }
+
+    // Deletes an unfinished part or in-place file
+    public void discard(File part) {
+        File marker = markerFor(part);
+        part.delete();
+        if (marker != null) {
+            marker.delete();
+        }
+    }
+
+    // Moves a finished part file into the cache; a null key stores it as an anonymous entry
+    // that only ever leaves through eviction. An in-place file stays where it is: it is only
+    // found under key until the next load, which lists it under its own name.
+    public synchronized Entry commit(String key, File part, String mimeType) {
+        if (key == null) {
+            key = anonymousKey();
+        }
+        File marker = markerFor(part);
+        File target = marker != null ? part : new File(dir, key + MimeTypes.outputExt(mimeType));
+        Item previous = entries.remove(key);
+        if (previous != null) {
+            totalBytes -= previous.size;
+            if (!previous.file.equals(target)) {
+                previous.file.delete();
+            }
+        }
+        if (marker != null) {
+            marker.delete();
+        } else if (!part.renameTo(target)) {
+            Log.w(TAG, "Could not move result into the cache: " + part);
+            return new Entry(part, mimeType);
+        }
+        Item item = new Item(target);
+        entries.put(key, item);
+        totalBytes += item.size;
+        evict(key);
+        return new Entry(target, mimeType);
+    }
+
+    public synchronized void clear() {
+        for (Item item : entries.values()) {
+            item.file.delete();
+        }
+        entries.clear();
+        totalBytes = 0L;
+    }
+
+    // Drops least recently used entries until at most bytes are left; used by the storage
+    // governor when the plugin's quota or the volume needs room
+    public synchronized void trimTo(long bytes) {
+        evict(bytes, null);
+    }
+
+    private void evict(String keep) {
+        evict(maxBytes, keep);
+    }
+
+    // Drops least recently used entries until budget holds; never keep, the entry just committed
+    private void evict(long budget, String keep) {
+        if (totalBytes <= budget) {
+            return;
+        }
+        List<String> victims = new ArrayList<>();
+        long bytes = totalBytes;
+        Iterator<Map.Entry<String, Item>> it = entries.entrySet().iterator();
+        while (bytes > budget && it.hasNext()) {
+            Map.Entry<String, Item> e = it.next();
+            if (e.getKey().equals(keep)) {
+                continue;
+            }
+            bytes -= e.getValue().size;
+            victims.add(e.getKey());
+        }
+        for (String key : victims) {
+            Item item = entries.remove(key);
+            totalBytes -= item.size;
+            item.file.delete();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import java.util.Arrays;
+
+// Distribution of the most recent values of one metric. Recording is a ring-buffer store;
+// percentiles are computed from a sorted copy only when a summary is asked for, so the
+// window reflects current behaviour rather than everything since the app started.
+final class RollingHistogram {
+
+    static final int DEFAULT_WINDOW = 512;
+
+    static final class Summary {
+        final long count;   // values recorded since the last reset
+        final int window;   // values the percentiles are computed over
+        final double min;
+        final double max;
+        final double mean;
+        final double p50;
+        final double p90;
+        final double p99;
+
+        Summary(long count, int window, double min, double max, double mean, double p50, double p90, double p99) {
+            this.count = count;
+            this.window = window;
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+        }
+    }
+
+    private final double[] values;
+    private int next = 0;
+    private int size = 0;
+    private long count = 0L;
+
+    RollingHistogram(int window) {
+        values = new double[Math.max(1, window)];
+    }
+
+    synchronized void record(double value) {
+        values[next] = value;
+        next = (next + 1) % values.length;
+        size = Math.min(size + 1, values.length);
+        count++;
+    }
+
+    synchronized void reset() {
+        next = 0;
+        size = 0;
+        count = 0L;
+    }
+
+    synchronized Summary summary() {
+        if (size == 0) {
+            return new Summary(count, 0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0);
+        }
+        double[] sorted = Arrays.copyOf(values, size);
+        Arrays.sort(sorted);
+        double sum = 0.0;
+        for (double v : sorted) {
+            sum += v;
+        }
+        return new Summary(count, size, sorted[0], sorted[size - 1], sum / size,
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99));
+    }
+
+    // Nearest-rank percentile of a sorted, non-empty array
+    private static double percentile(double[] sorted, double q) {
+        int rank = (int) Math.ceil(q * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+}
@@ -0,0 +1,107 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Encoded output of one parallel segment. Only the frames whose timestamp falls inside the
+// segment's window are kept (the overlap around it just warms up the codecs); their bytes go to
+// a temp file and their sizes/timestamps to an index, so the pieces can be stitched in order.
+class SegmentSink implements OutputSink {
+
+    private final File file;
+    private final RawStreamSink raw;
+    private final long offsetUs;   // added to encoder timestamps to get range timestamps
+    private final long windowStartUs;
+    private final long windowEndUs;
+
+    private MediaFormat format;
+    private int count = 0;
+    private int[] sizes = new int[256];
+    private long[] ptsUs = new long[256];
+    private int[] flags = new int[256];
+
+    SegmentSink(File file, long offsetUs, long windowStartUs, long windowEndUs) throws IOException {
+        this.file = file;
+        this.raw = new RawStreamSink(file);
+        this.offsetUs = offsetUs;
+        this.windowStartUs = windowStartUs;
+        this.windowEndUs = windowEndUs;
+    }
+
+    @Override
+    public void onFormat(MediaFormat format) {
+        this.format = format;
+    }
+
+    @Override
+    public void writeSample(ByteBuffer data, MediaCodec.BufferInfo info) throws IOException {
+        if (data == null || info.size <= 0 || (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+            return;
+        }
+        long pts = info.presentationTimeUs + offsetUs;
+        if (pts < windowStartUs || pts >= windowEndUs) {
+            return;
+        }
+        if (count == sizes.length) {
+            sizes = Arrays.copyOf(sizes, count * 2);
+            ptsUs = Arrays.copyOf(ptsUs, count * 2);
+            flags = Arrays.copyOf(flags, count * 2);
+        }
+        sizes[count] = info.size;
+        ptsUs[count] = pts;
+        flags[count] = info.flags & ~MediaCodec.BUFFER_FLAG_END_OF_STREAM;
+        count++;
+        raw.writeSample(data, info);
+    }
+
+    @Override
+    public long bytesWritten() {
+        return raw.bytesWritten();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        raw.finish();
+    }
+
+    @Override
+    public void abort() {
+        raw.abort();
+    }
+
+    MediaFormat format() {
+        return format;
+    }
+
+    File file() {
+        return file;
+    }
+
+    int sampleCount() {
+        return count;
+    }
+
+    int sampleSize(int i) {
+        return sizes[i];
+    }
+
+    long samplePtsUs(int i) {
+        return ptsUs[i];
+    }
+
+    int sampleFlags(int i) {
+        return flags[i];
+    }
+
+    void delete() {
+        raw.abort();
+        if (file.exists()) {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Transcodes one range as N segments at the same time, each with its own extractor, decoder
+// and encoder, then stitches the encoded pieces in order.
+//
+// Gapless boundaries: segment boundaries sit on the encoder's frame grid, and every segment
+// decodes and encodes OVERLAP_FRAMES extra frames before and after its window. The codecs are
+// therefore warmed up on the same audio a serial pass would have seen, the frame grids of
+// neighbouring segments coincide, and each SegmentSink keeps only the frames inside its window.
+class SegmentedTranscoder {
+
+    private static final String TAG = "VideoToAudio";
+
+    // Shorter segments spend more time in codec setup and overlap than they save
+    static final long MIN_SEGMENT_US = 15_000_000L;
+    private static final int OVERLAP_FRAMES = 8;
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            30L, TimeUnit.SECONDS, new SynchronousQueue<>(), new SegmentThreadFactory());
+
+    private final ExtractionScheduler.Job job;
+    private final MediaSource source;
+    private final int trackIndex;
+    private final MediaFormat inputFormat;
+    private final MediaFormat outputFormat;
+    private final ExtractionOptions options;
+    private final CodecPool codecPool;
+    private final ProgressReporter progress;
+    private final ExtractionMetrics metrics;
+    private final File tempDir;
+
+    private final long rangeStartUs;
+    private final long rangeCutoffUs;
+    private final long maxSizeBytes;
+    private final int inputSampleRate;
+    private final int inputChannels;
+    private final int sampleRate;
+    private final int outputChannels;
+
+    SegmentedTranscoder(ExtractionScheduler.Job job, MediaSource source, int trackIndex,
+                        MediaFormat inputFormat, MediaFormat outputFormat, ExtractionOptions options,
+                        CodecPool codecPool, ProgressReporter progress, ExtractionMetrics metrics, File tempDir,
+                        long rangeStartUs, long rangeCutoffUs, long maxSizeBytes,
+                        int inputSampleRate, int inputChannels, int sampleRate, int outputChannels) {
+        this.job = job;
+        this.source = source;
+        this.trackIndex = trackIndex;
+        this.inputFormat = inputFormat;
+        this.outputFormat = outputFormat;
+        this.options = options;
+        this.codecPool = codecPool;
+        this.progress = progress;
+        this.metrics = metrics;
+        this.tempDir = tempDir;
+        this.rangeStartUs = rangeStartUs;
+        this.rangeCutoffUs = rangeCutoffUs;
+        this.maxSizeBytes = maxSizeBytes;
+        this.inputSampleRate = inputSampleRate;
+        this.inputChannels = inputChannels;
+        this.sampleRate = sampleRate;
+        this.outputChannels = outputChannels;
+    }
+
+    // Number of segments actually used: capped by the CPU count and a minimum segment length
+    static int segmentCount(int requested, long rangeUs) {
+        if (requested <= 1 || rangeUs <= 0) {
+            return 1;
+        }
+        int cpus = Runtime.getRuntime().availableProcessors();
+        long bySize = rangeUs / MIN_SEGMENT_US;
+        return (int) Math.max(1, Math.min(Math.min(requested, cpus), bySize));
+    }
+
+    // Samples per encoded frame; every segment boundary is a multiple of this
+    static int frameSamples(String mime, int sampleRate) {
+        if ("audio/mpeg".equals(mime)) {
+            return sampleRate >= 32_000 ? 1152 : 576; // MPEG-1 vs MPEG-2/2.5 layer III
+        }
+        return 1024;
+    }
+
+    // Boundaries in samples on the range timeline: 0, b1, ..., totalSamples
+    static long[] planBoundaries(long totalSamples, int segments, int frameSamples) {
+        long frames = totalSamples / frameSamples;
+        long[] b = new long[segments + 1];
+        for (int k = 1; k < segments; k++) {
+            b[k] = frames * k / segments * frameSamples;
+        }
+        b[segments] = totalSamples;
+        return b;
+    }
+
+    private long samplesToUs(long samples) {
+        return samples * 1_000_000L / sampleRate;
+    }
+
+    private final class Segment {
+        final int index;
+        final long prerollUs;      // decoded/encoded before the window
+        final long sessionStartUs; // absolute source time the session trims to
+        final long cutoffUs;       // absolute source time feeding stops at
+        final long windowUs;
+        final SegmentSink sink;
+        final ExtractionMetrics metrics = new ExtractionMetrics();
+        volatile TranscodeSession session;
+        // Set when a sibling failed or the job was cancelled, also before this segment has a session
+        volatile boolean aborted;
+
+        Segment(int index, long startUs, long endUs, boolean last, long overlapUs) throws IOException {
+            this.index = index;
+            this.prerollUs = index == 0 ? 0L : Math.min(overlapUs, startUs);
+            this.sessionStartUs = rangeStartUs + startUs - prerollUs;
+            this.cutoffUs = last ? rangeCutoffUs : Math.min(rangeCutoffUs, rangeStartUs + endUs + overlapUs);
+            this.windowUs = endUs - startUs;
+            // Half a frame of slack so timestamp rounding cannot move a frame across the boundary
+            long slackUs = overlapUs / OVERLAP_FRAMES / 2;
+            // Named by createTempFile rather than the job id, which comes from the caller
+            this.sink = new SegmentSink(File.createTempFile("afv_seg_" + index + "_", ".part", tempDir),
+                    startUs - prerollUs,
+                    index == 0 ? Long.MIN_VALUE : startUs - slackUs,
+                    last ? Long.MAX_VALUE : endUs - slackUs);
+        }
+
+        long coveredUs() {
+            TranscodeSession s = session;
+            if (s == null) {
+                return 0L;
+            }
+            return Math.max(0L, Math.min(windowUs, s.lastPtsUs - prerollUs));
+        }
+
+        // Flag first, session second: runSegment publishes the session before it checks the flag,
+        // so one of the two sides always sees the other
+        void abort() {
+            aborted = true;
+            TranscodeSession s = session;
+            if (s != null) {
+                s.abort();
+            }
+        }
+
+        void throwIfAborted() {
+            if (aborted) {
+                throw new CancellationException("Transcode aborted");
+            }
+        }
+    }
+
+    // Runs all segments; segment 0 uses the caller's already configured extractor and codecs,
+    // which the caller still owns. Writes the stitched result to out and returns the length of
+    // audio the segments produced.
+    long run(int segmentCount, MediaExtractor extractor0, MediaCodec decoder0, MediaCodec encoder0,
+             TranscodeEngine engine0, OutputSink out) throws Exception {
+        String outMime = outputFormat.getString(MediaFormat.KEY_MIME);
+        int frame = frameSamples(outMime, sampleRate);
+        long totalSamples = (rangeCutoffUs - rangeStartUs) * sampleRate / 1_000_000L;
+        long[] bounds = planBoundaries(totalSamples, segmentCount, frame);
+        long overlapUs = samplesToUs((long) OVERLAP_FRAMES * frame);
+
+        List<Segment> segments = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int k = 0; k < segmentCount; k++) {
+                segments.add(new Segment(k, samplesToUs(bounds[k]), samplesToUs(bounds[k + 1]),
+                        k == segmentCount - 1, overlapUs));
+            }
+            for (Segment segment : segments) {
+                futures.add(EXECUTOR.submit(() -> {
+                    if (segment.index == 0) {
+                        runSegment(segment, extractor0, decoder0, encoder0, engine0);
+                    } else {
+                        runOwnedSegment(segment);
+                    }
+                    return null;
+                }));
+            }
+            awaitAll(segments, futures);
+            long producedUs = 0L;
+            for (Segment segment : segments) {
+                metrics.mergeSegment(segment.metrics);
+                producedUs += segment.coveredUs();
+            }
+            metrics.setPath(ExtractionMetrics.Path.SEGMENTED);
+            metrics.setSegments(segmentCount);
+            long stitchStartNs = System.nanoTime();
+            stitch(segments, out);
+            metrics.addMuxNs(System.nanoTime() - stitchStartNs);
+            return producedUs;
+        } finally {
+            for (Segment segment : segments) {
+                segment.sink.delete();
+            }
+        }
+    }
+
+    private void runSegment(Segment segment, MediaExtractor extractor, MediaCodec decoder, MediaCodec encoder,
+                            TranscodeEngine engine) throws Exception {
+        segment.throwIfAborted();
+        TranscodeSession session = new TranscodeSession(job, extractor, decoder, encoder, null,
+                segment.metrics, segment.sink, segment.sessionStartUs, segment.cutoffUs, maxSizeBytes,
+                inputSampleRate, inputChannels, sampleRate, outputChannels);
+        segment.session = session;
+        segment.throwIfAborted();
+        engine.run(session);
+        segment.sink.finish();
+    }
+
+    private void runOwnedSegment(Segment segment) throws Exception {
+        segment.throwIfAborted();
+        MediaSource own = source.duplicate();
+        MediaExtractor extractor = null;
+        MediaCodec decoder = null;
+        MediaCodec encoder = null;
+        TranscodeEngine engine = null;
+        boolean clean = false;
+        try {
+            extractor = new MediaExtractor();
+            own.applyTo(extractor);
+            extractor.selectTrack(trackIndex);
+            extractor.seekTo(segment.sessionStartUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            segment.throwIfAborted();
+
+            engine = AudioFromVideoRetriever.createEngine(options.engine);
+            decoder = codecPool.acquireDecoder(inputFormat.getString(MediaFormat.KEY_MIME));
+            engine.attach(decoder, false);
+            decoder.configure(inputFormat, null, null, 0);
+            decoder.start();
+            segment.throwIfAborted();
+            encoder = codecPool.acquireEncoder(outputFormat.getString(MediaFormat.KEY_MIME));
+            engine.attach(encoder, true);
+            encoder.configure(outputFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            encoder.start();
+
+            runSegment(segment, extractor, decoder, encoder, engine);
+            clean = true;
+        } finally {
+            try { if (engine != null) engine.release(); } catch (Exception ignored) {}
+            try { if (extractor != null) extractor.release(); } catch (Exception ignored) {}
+            if (clean) {
+                codecPool.recycle(decoder);
+                codecPool.recycle(encoder);
+            } else {
+                codecPool.discard(decoder);
+                codecPool.discard(encoder);
+            }
+            own.close();
+        }
+    }
+
+    // Waits for every segment while reporting combined progress; the first failure (or a
+    // cancelled job) aborts the others, and is rethrown once all of them have stopped
+    private void awaitAll(List<Segment> segments, List<Future<?>> futures) throws Exception {
+        Exception failure = null;
+        int pending = futures.size();
+        boolean[] done = new boolean[pending];
+        while (pending > 0) {
+            if (failure == null && job.isCancelled()) {
+                failure = new CancellationException(AudioFromVideoRetriever.CANCELLED_MESSAGE);
+                abortAll(segments);
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                if (done[i]) {
+                    continue;
+                }
+                try {
+                    futures.get(i).get(pending == 1 ? 50 : 10, TimeUnit.MILLISECONDS);
+                    done[i] = true;
+                    pending--;
+                } catch (TimeoutException ignored) {
+                    // still running
+                } catch (ExecutionException e) {
+                    done[i] = true;
+                    pending--;
+                    if (failure == null) {
+                        Throwable cause = e.getCause();
+                        failure = cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+                        Log.w(TAG, "Segment " + i + " failed, aborting the others", cause);
+                        abortAll(segments);
+                    }
+                }
+            }
+            if (progress != null && failure == null) {
+                long covered = 0L;
+                long bytes = 0L;
+                for (Segment segment : segments) {
+                    covered += segment.coveredUs();
+                    bytes += segment.sink.bytesWritten();
+                }
+                progress.update(covered, bytes);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void abortAll(List<Segment> segments) {
+        for (Segment segment : segments) {
+            segment.abort();
+        }
+    }
+
+    private void stitch(List<Segment> segments, OutputSink out) throws IOException {
+        MediaFormat format = null;
+        int maxSample = 0;
+        for (Segment segment : segments) {
+            if (format == null) {
+                format = segment.sink.format();
+            }
+            for (int i = 0; i < segment.sink.sampleCount(); i++) {
+                maxSample = Math.max(maxSample, segment.sink.sampleSize(i));
+            }
+        }
+        if (format == null) {
+            throw new IOException("Encoder produced no output format");
+        }
+        out.onFormat(format);
+
+        ByteBuffer buffer = out instanceof RawStreamSink ? null : ByteBuffer.allocateDirect(Math.max(1, maxSample));
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        boolean full = false;
+        for (Segment segment : segments) {
+            SegmentSink piece = segment.sink;
+            try (FileInputStream in = new FileInputStream(piece.file())) {
+                FileChannel channel = in.getChannel();
+                if (buffer == null) {
+                    // Raw MP3 frames: concatenate the whole frames that fit the size cap, file to file
+                    long count = 0L;
+                    int i = 0;
+                    for (; i < piece.sampleCount() && out.bytesWritten() + count + piece.sampleSize(i) <= maxSizeBytes; i++) {
+                        count += piece.sampleSize(i);
+                    }
+                    ((RawStreamSink) out).append(channel, 0L, count);
+                    full = i < piece.sampleCount();
+                    continue;
+                }
+                long position = 0L;
+                for (int i = 0; i < piece.sampleCount(); i++) {
+                    int size = piece.sampleSize(i);
+                    if (out.bytesWritten() + size > maxSizeBytes) {
+                        full = true;
+                        break;
+                    }
+                    buffer.clear();
+                    buffer.limit(size);
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, position + buffer.position()) < 0) {
+                            throw new IOException("Segment file truncated");
+                        }
+                    }
+                    position += size;
+                    info.set(0, size, piece.samplePtsUs(i), piece.sampleFlags(i));
+                    out.writeSample(buffer, info);
+                }
+            }
+            if (full) {
+                metrics.markTruncated();
+                break;
+            }
+        }
+    }
+
+    private static final class SegmentThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "afv-segment-" + count.incrementAndGet());
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        }
+    }
+}
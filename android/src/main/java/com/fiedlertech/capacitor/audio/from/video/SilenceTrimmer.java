@@ -0,0 +1,169 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+// Energy-based silence removal on the 16-bit output PCM, between conversion and the encoder.
+// Audio is judged in 10 ms windows (all channels together); once a silent stretch has lasted
+// maxSilenceMs, the rest of it is dropped until sound returns, so every pause is shortened to at
+// most maxSilenceMs. That needs no lookahead: kept frames are compacted in place and nothing is
+// delayed or buffered. The kept segments and where they came from in the source are recorded
+// so transcripts of the output can be mapped back. Output timestamps come from keptUs, so the
+// encoder sees the shortened timeline without gaps.
+public final class SilenceTrimmer {
+
+    static final double DEFAULT_THRESHOLD_DB = -50.0;
+
+    private final int sampleRate;
+    private final int channels;
+    private final int windowFrames;
+    private final long maxSilenceFrames;
+    private final double thresholdSquare; // mean square below which a window is silent
+    private final long baseUs;            // source time of the first frame
+
+    private long inFrames = 0L;
+    private long keptFrames = 0L;
+    private long silentFrames = 0L;       // length of the current silent stretch
+    private boolean dropping = false;
+    private long segmentSource = 0L;      // frames; start of the open kept segment
+    private long segmentOutput = 0L;
+    private boolean finished = false;
+
+    private long[] segments = new long[3 * 16]; // source start, output start, length (frames)
+    private int segmentCount = 0;
+
+    private short[] scratch = new short[0];
+
+    SilenceTrimmer(int sampleRate, int channels, long maxSilenceMs, double thresholdDb, long baseUs) {
+        this.sampleRate = Math.max(1, sampleRate);
+        this.channels = Math.max(1, channels);
+        this.windowFrames = Math.max(1, this.sampleRate / 100);
+        this.maxSilenceFrames = Math.max(0L, maxSilenceMs) * this.sampleRate / 1000L;
+        double threshold = 32768.0 * Math.pow(10.0, thresholdDb / 20.0);
+        this.thresholdSquare = threshold * threshold;
+        this.baseUs = baseUs;
+    }
+
+    // Output time so far, i.e. the timestamp of the next kept frame
+    long keptUs() {
+        return keptFrames * 1_000_000L / sampleRate;
+    }
+
+    // Input time consumed so far, from the first frame
+    long consumedUs() {
+        return inFrames * 1_000_000L / sampleRate;
+    }
+
+    public long removedUs() {
+        return (inFrames - keptFrames) * 1_000_000L / sampleRate;
+    }
+
+    // Kept segments as (source start, output start, duration) in microseconds; the source start is on the
+    // source's own timeline. Closes the last segment first.
+    public long[] segmentsUs() {
+        finish();
+        long[] out = new long[segmentCount * 3];
+        for (int i = 0; i < segmentCount; i++) {
+            out[i * 3] = baseUs + segments[i * 3] * 1_000_000L / sampleRate;
+            out[i * 3 + 1] = segments[i * 3 + 1] * 1_000_000L / sampleRate;
+            out[i * 3 + 2] = segments[i * 3 + 2] * 1_000_000L / sampleRate;
+        }
+        return out;
+    }
+
+    public int segmentCount() {
+        finish();
+        return segmentCount;
+    }
+
+    // Little-endian s16, whole frames, at pcm[offset, offset + length). Kept frames are moved to
+    // the front of that range; returns their byte count.
+    int process(ByteBuffer pcm, int offset, int length) {
+        ByteBuffer view = pcm.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        ShortBuffer region = view.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        int samples = region.remaining();
+        if (scratch.length < samples) {
+            scratch = new short[samples];
+        }
+        region.get(scratch, 0, samples);
+        int kept = process(scratch, samples);
+        if (kept != samples) {
+            region.clear();
+            region.put(scratch, 0, kept);
+        }
+        return kept * 2;
+    }
+
+    // The kernel: interleaved samples [0, length), a whole number of frames. Compacts the kept
+    // frames to the front and returns how many samples that is.
+    int process(short[] pcm, int length) {
+        int read = 0;
+        int write = 0;
+        while (read + channels <= length) {
+            int frames = (int) Math.min((length - read) / channels, windowFrames - inFrames % windowFrames);
+            int end = read + frames * channels;
+            long squares = 0L;
+            for (int s = read; s < end; s++) {
+                int v = pcm[s];
+                squares += v * v;
+            }
+            int keep = frames;
+            if ((double) squares / (end - read) < thresholdSquare) {
+                silentFrames += frames;
+                long over = silentFrames - maxSilenceFrames;
+                if (over > 0) {
+                    keep = frames - (int) Math.min(frames, over);
+                }
+            } else {
+                silentFrames = 0L;
+            }
+            if (keep > 0) {
+                if (dropping) {
+                    // Sound is back: a new kept segment starts here
+                    dropping = false;
+                    segmentSource = inFrames;
+                    segmentOutput = keptFrames;
+                }
+                if (write != read) {
+                    System.arraycopy(pcm, read, pcm, write, keep * channels);
+                }
+                write += keep * channels;
+                keptFrames += keep;
+            }
+            if (keep < frames && !dropping) {
+                dropping = true;
+                addSegment();
+            }
+            read = end;
+            inFrames += frames;
+        }
+        return write;
+    }
+
+    private void finish() {
+        if (!finished) {
+            finished = true;
+            if (!dropping) {
+                addSegment();
+            }
+        }
+    }
+
+    private void addSegment() {
+        long length = keptFrames - segmentOutput;
+        if (length <= 0) {
+            return;
+        }
+        if (segmentCount * 3 + 3 > segments.length) {
+            segments = Arrays.copyOf(segments, segments.length * 2);
+        }
+        segments[segmentCount * 3] = segmentSource;
+        segments[segmentCount * 3 + 1] = segmentOutput;
+        segments[segmentCount * 3 + 2] = length;
+        segmentCount++;
+    }
+}
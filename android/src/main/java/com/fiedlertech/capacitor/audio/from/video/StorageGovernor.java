@@ -0,0 +1,193 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+// Keeps the plugin's own disk use in check. Ingest copies (content:// sources a provider only hands
+// out as pipes) live in one directory, are tracked while in use and deleted as soon as their job
+// closes the source; whatever a previous process left there is removed on start. Those copies and
+// the result cache together stay under one quota: making room evicts the least recently used cache
+// entries first. Jobs and copies check free space up front, so they fail before writing anything
+// rather than halfway through.
+public class StorageGovernor {
+
+    private static final String TAG = "VideoToAudio";
+    private static final String INGEST_PREFIX = "afv_src_";
+    // Earlier versions copied sources into the temp dir under this name and never removed them
+    private static final String LEGACY_INGEST_PREFIX = "voicesai_afv_src_";
+    // and wrote outputs without an outputPath into the cache dir under this name
+    private static final String LEGACY_OUTPUT_PREFIX = "afv_tmp_";
+    private static final String LEGACY_OUTPUT_SUFFIX = ".tmp";
+
+    public static final long DEFAULT_QUOTA_BYTES = 512L * 1024L * 1024L;
+    // Left free for everything else on the volume
+    static final long MIN_FREE_BYTES = 32L * 1024L * 1024L;
+    // An unknown-size copy is checked against the quota and free space after every step
+    static final long COPY_CHECK_STEP_BYTES = 8L * 1024L * 1024L;
+
+    private final File dir;
+    private final Map<File, Long> ingest = new HashMap<>(); // live copies and their size so far
+    private long ingestBytes = 0L;
+    private long jobBytes = 0L; // a full-size output for every job between checkJob and endJob
+    private long quotaBytes;
+    private volatile ResultCache cache;
+
+    public StorageGovernor(File dir, long quotaBytes) {
+        this.dir = dir;
+        this.quotaBytes = quotaBytes;
+        sweep();
+    }
+
+    private void sweep() {
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "Could not create ingest directory at " + dir);
+        }
+        deleteAll(dir, INGEST_PREFIX, "");
+        deleteAll(new File(System.getProperty("java.io.tmpdir", dir.getParent())), LEGACY_INGEST_PREFIX, "");
+        // The ingest directory sits in the cache dir those outputs were written to
+        File cacheDir = dir.getParentFile();
+        if (cacheDir != null) {
+            deleteAll(cacheDir, LEGACY_OUTPUT_PREFIX, LEGACY_OUTPUT_SUFFIX);
+        }
+    }
+
+    private static void deleteAll(File parent, String prefix, String suffix) {
+        File[] files = parent.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            String name = f.getName();
+            if (f.isFile() && name.startsWith(prefix) && name.endsWith(suffix) && !f.delete()) {
+                Log.w(TAG, "Could not delete stale copy " + f);
+            }
+        }
+    }
+
+    // The result cache shares the quota and is what gets evicted to make room
+    public void setResultCache(ResultCache cache) {
+        this.cache = cache;
+    }
+
+    public synchronized void setQuotaBytes(long quotaBytes) {
+        this.quotaBytes = quotaBytes;
+    }
+
+    public synchronized long getQuotaBytes() {
+        return quotaBytes;
+    }
+
+    // Bytes held by live ingest copies and the result cache
+    public synchronized long getUsedBytes() {
+        ResultCache c = cache;
+        return ingestBytes + (c != null ? c.getTotalBytes() : 0L);
+    }
+
+    public long getFreeBytes() {
+        return usableSpace(dir);
+    }
+
+    // Before a job opens its source: room for the largest output it may write next to outputDir,
+    // both under the quota (the output may land in the result cache) and on the volume. The room
+    // is reserved, so concurrent jobs don't all count the same free bytes, until endJob.
+    synchronized void checkJob(File outputDir) throws IOException {
+        if (!makeRoom(OutputBudget.MAX_SIZE_BYTES)) {
+            throw new IOException("Output of up to " + (OutputBudget.MAX_SIZE_BYTES >> 20)
+                    + " MB exceeds the storage quota of " + (quotaBytes >> 20) + " MB");
+        }
+        ensureFree(outputDir != null ? outputDir : dir, OutputBudget.MAX_SIZE_BYTES + jobBytes);
+        jobBytes += OutputBudget.MAX_SIZE_BYTES;
+    }
+
+    // Once a job that passed checkJob is over: drops its reservation and evicts the cache back
+    // under the quota, since the result it committed only counted against the cache budget
+    synchronized void endJob() {
+        jobBytes = Math.max(0L, jobBytes - OutputBudget.MAX_SIZE_BYTES);
+        makeRoom(0L);
+    }
+
+    // A new, tracked ingest file. expectedBytes is the source size when the provider reports one
+    // (otherwise -1); the copy is refused right away if it can't fit the quota or the volume.
+    synchronized File newIngestFile(String ext, long expectedBytes) throws IOException {
+        long bytes = Math.max(0L, expectedBytes);
+        if (!makeRoom(bytes)) {
+            throw new IOException("Source copy of " + (bytes >> 20) + " MB exceeds the storage quota of "
+                    + (quotaBytes >> 20) + " MB");
+        }
+        ensureFree(dir, bytes);
+        File file = File.createTempFile(INGEST_PREFIX, ext, dir);
+        ingest.put(file, 0L);
+        return file;
+    }
+
+    // Called while copying with the bytes written so far; throws once the copy outgrows the quota
+    // or the free space, after which the caller deletes it with release
+    synchronized void onIngestProgress(File file, long bytes) throws IOException {
+        Long previous = ingest.get(file);
+        if (previous == null) {
+            return;
+        }
+        ingest.put(file, bytes);
+        ingestBytes += bytes - previous;
+        if (!makeRoom(0L)) {
+            throw new IOException("Source copy exceeds the storage quota of " + (quotaBytes >> 20) + " MB");
+        }
+        if (usableSpace(dir) < MIN_FREE_BYTES) {
+            throw new IOException("Not enough free storage to copy the source");
+        }
+    }
+
+    // Deletes an ingest copy once its job is done with it (or the copy failed)
+    synchronized void release(File file) {
+        Long size = ingest.remove(file);
+        if (size != null) {
+            ingestBytes -= size;
+        }
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete ingest copy " + file);
+        }
+    }
+
+    // Evicts cache entries (oldest first) until bytes more fit under the quota next to live ingest
+    // copies and running jobs' reservations; false if even an empty cache leaves too little
+    private boolean makeRoom(long bytes) {
+        ResultCache c = cache;
+        long room = quotaBytes - ingestBytes - jobBytes - bytes;
+        if (c != null && c.getTotalBytes() > room) {
+            c.trimTo(Math.max(0L, room));
+        }
+        return ingestBytes + jobBytes + bytes <= quotaBytes;
+    }
+
+    // Fails unless bytes fit on the volume of target with MIN_FREE_BYTES to spare, evicting the
+    // result cache first when that would make the difference
+    private void ensureFree(File target, long bytes) throws IOException {
+        long needed = bytes + MIN_FREE_BYTES;
+        long free = usableSpace(target);
+        if (free >= needed) {
+            return;
+        }
+        ResultCache c = cache;
+        if (c != null) {
+            c.trimTo(Math.max(0L, c.getTotalBytes() - (needed - free)));
+            free = usableSpace(target);
+        }
+        if (free < needed) {
+            throw new IOException("Not enough free storage: " + (needed >> 20) + " MB needed, "
+                    + (free >> 20) + " MB available");
+        }
+    }
+
+    // Of the nearest existing directory, since an output's parent may not exist yet
+    private static long usableSpace(File target) {
+        File f = target;
+        while (f != null && !f.exists()) {
+            f = f.getParentFile();
+        }
+        return f != null ? f.getUsableSpace() : 0L;
+    }
+}
@@ -0,0 +1,16 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.media.MediaCodec;
+
+// Drives the decoder -> encoder pass of an extraction
+interface TranscodeEngine {
+
+    // Called on a freshly created codec, before configure()
+    void attach(MediaCodec codec, boolean isEncoder);
+
+    // Blocks until the encoder reached EOS, the job was cancelled or a codec failed
+    void run(TranscodeSession session) throws Exception;
+
+    // Stops delivering codec events; must be called before the codecs are released
+    void release();
+}
@@ -0,0 +1,311 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CancellationException;
+
+// Shared state for one decode -> encode pass. The engines only differ in how they
+// drive the codecs; sample feeding, PCM copy and output writing live here.
+// Without an encoder (WAV/PCM output) decoded PCM is written to the sink directly.
+// Silence trimming, when asked for, removes frames in copyPcm, so output timestamps come from
+// the trimmer's kept-frame count; waveform peaks are taken from what is left.
+class TranscodeSession {
+
+    final ExtractionScheduler.Job job;
+    final MediaExtractor extractor;
+    final MediaCodec decoder;
+    final MediaCodec encoder; // null for decode-only output
+    final ProgressReporter progress;
+    final ExtractionMetrics metrics;
+
+    final OutputSink sink;
+
+    final long startUs;  // decoded audio before this is trimmed; output timestamps start here
+    final long cutoffUs; // absolute source time at which feeding stops
+    final long maxSizeBytes;
+    final int sampleRate; // encoder input rate
+    final int outputChannels;
+
+    // Decoder output layout; may be corrected by the decoder's output format (e.g. HE-AAC SBR/PS)
+    int inputSampleRate;
+    int inputChannels;
+    boolean floatPcm = false;
+    private ChannelMixer mixer;
+    private PolyphaseResampler resampler; // null when rates match
+    private short[] mixScratch = new short[0];
+    private short[] resampleScratch = new short[0];
+    private ByteBuffer pcmOut; // decode-only: converted PCM on its way to the sink
+    private WaveformPeaks peaks;
+    private SilenceTrimmer silence;
+    private final MediaCodec.BufferInfo pcmInfo = new MediaCodec.BufferInfo();
+
+    volatile long lastPtsUs = 0L; // read by the segment monitor thread
+    private boolean capped = false;
+    private volatile boolean aborted = false;
+
+    TranscodeSession(ExtractionScheduler.Job job, MediaExtractor extractor, MediaCodec decoder, MediaCodec encoder,
+                     ProgressReporter progress, ExtractionMetrics metrics, OutputSink sink,
+                     long startUs, long cutoffUs, long maxSizeBytes,
+                     int inputSampleRate, int inputChannels, int sampleRate, int outputChannels) {
+        this.job = job;
+        this.extractor = extractor;
+        this.decoder = decoder;
+        this.encoder = encoder;
+        this.progress = progress;
+        this.metrics = metrics;
+        this.sink = sink;
+        this.startUs = startUs;
+        this.cutoffUs = cutoffUs;
+        this.maxSizeBytes = maxSizeBytes;
+        this.sampleRate = sampleRate;
+        this.inputSampleRate = inputSampleRate;
+        this.inputChannels = inputChannels;
+        this.outputChannels = outputChannels;
+        this.mixer = ChannelMixer.standard(inputChannels, outputChannels);
+        this.resampler = createResampler();
+    }
+
+    private PolyphaseResampler createResampler() {
+        return inputSampleRate != sampleRate && inputSampleRate > 0
+                ? new PolyphaseResampler(inputSampleRate, sampleRate, outputChannels) : null;
+    }
+
+    void onDecoderFormatChanged(MediaFormat format) {
+        if (format == null) {
+            return;
+        }
+        int channels = format.containsKey(MediaFormat.KEY_CHANNEL_COUNT)
+                ? format.getInteger(MediaFormat.KEY_CHANNEL_COUNT) : inputChannels;
+        boolean isFloat = format.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                && format.getInteger(MediaFormat.KEY_PCM_ENCODING) == AudioFormat.ENCODING_PCM_FLOAT;
+        int rate = format.containsKey(MediaFormat.KEY_SAMPLE_RATE)
+                ? format.getInteger(MediaFormat.KEY_SAMPLE_RATE) : inputSampleRate;
+        if (channels != inputChannels && channels > 0) {
+            inputChannels = channels;
+            mixer = ChannelMixer.standard(inputChannels, outputChannels);
+        }
+        if (rate != inputSampleRate && rate > 0) {
+            inputSampleRate = rate;
+            resampler = createResampler();
+        }
+        floatPcm = isFloat;
+    }
+
+    // Accumulates peaks of all PCM this session hands on from now on
+    void collectPeaks(WaveformPeaks peaks) {
+        this.peaks = peaks;
+    }
+
+    // Shortens long silences in all PCM this session hands on from now on
+    void trimSilence(SilenceTrimmer silence) {
+        this.silence = silence;
+    }
+
+    // Output timestamp of PCM about to be copied that would sit at ptsUs without trimming
+    long outputPtsUs(long ptsUs) {
+        return silence != null ? silence.keptUs() : ptsUs;
+    }
+
+    // Timestamp for the encoder's EOS buffer: the end of what was handed on
+    long endPtsUs() {
+        return silence != null ? silence.keptUs() : lastPtsUs;
+    }
+
+    int outputBytesPerFrame() {
+        return 2 * outputChannels;
+    }
+
+    // Reads the next sample into a decoder input buffer; returns true once EOS was queued.
+    // Callers stop asking once the size cap is reached, so nothing past it is read or decoded.
+    boolean queueNextSample(int inIndex, ByteBuffer inBuf) {
+        inBuf.clear();
+        int sampleSize = extractor.readSampleData(inBuf, 0);
+        long sampleTimeUs = extractor.getSampleTime();
+        if (sampleSize < 0 || (sampleTimeUs >= cutoffUs && cutoffUs > 0)) {
+            decoder.queueInputBuffer(inIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            return true;
+        }
+        decoder.queueInputBuffer(inIndex, 0, sampleSize, sampleTimeUs, extractor.getSampleFlags());
+        metrics.onSampleRead(sampleSize);
+        extractor.advance();
+        return false;
+    }
+
+    // Skips the decoded frames before startUs (seeking lands on the previous sync sample) and
+    // returns the buffer's timestamp on the output timeline, which starts at 0
+    long trimLeading(ByteBuffer decOut, long ptsUs) {
+        metrics.onDecoderOutput();
+        if (ptsUs >= startUs) {
+            return ptsUs - startUs;
+        }
+        int inFrameBytes = inputChannels * (floatPcm ? 4 : 2);
+        long skipFrames = ((startUs - ptsUs) * inputSampleRate + 999_999L) / 1_000_000L;
+        long available = decOut.remaining() / inFrameBytes;
+        if (skipFrames >= available) {
+            decOut.position(decOut.limit());
+        } else {
+            decOut.position(decOut.position() + (int) skipFrames * inFrameBytes);
+        }
+        return 0L;
+    }
+
+    // Copies decoded PCM into dst (channel-mapped and resampled if needed) and advances decOut past
+    // what was consumed. Returns bytes written to dst; only whole frames are moved. With silence
+    // trimming that can be 0 even though decOut advanced.
+    int copyPcm(ByteBuffer decOut, ByteBuffer dst) {
+        int start = dst.position();
+        int written = convertPcm(decOut, dst);
+        if (silence != null && written > 0) {
+            written = silence.process(dst, start, written);
+            dst.position(start + written);
+        }
+        if (peaks != null && written > 0) {
+            peaks.accept(dst, start, written);
+        }
+        return written;
+    }
+
+    private int convertPcm(ByteBuffer decOut, ByteBuffer dst) {
+        int inFrameBytes = inputChannels * (floatPcm ? 4 : 2);
+        if (decOut.remaining() < inFrameBytes) {
+            // Trailing partial frame: nothing usable left in this buffer
+            decOut.position(decOut.limit());
+            return 0;
+        }
+        if (resampler != null) {
+            return resampleInto(decOut, inFrameBytes, dst);
+        }
+        if (!floatPcm && mixer.isIdentity()) {
+            int frameBytes = outputBytesPerFrame();
+            int copySize = Math.min(decOut.remaining(), dst.remaining());
+            copySize -= copySize % frameBytes;
+            int oldLimit = decOut.limit();
+            decOut.limit(decOut.position() + copySize);
+            dst.put(decOut);
+            decOut.limit(oldLimit);
+            return copySize;
+        }
+        return mixer.process(decOut, floatPcm, dst);
+    }
+
+    // Mix to the output layout first so the resampler filters as few channels as possible.
+    // The few frames still inside the filter at EOS (half the filter length) are dropped.
+    private int resampleInto(ByteBuffer decOut, int inFrameBytes, ByteBuffer dst) {
+        int maxOut = dst.remaining() / outputBytesPerFrame();
+        int frames = Math.min(decOut.remaining() / inFrameBytes, resampler.maxInputFor(maxOut));
+        if (frames <= 0) {
+            return 0;
+        }
+        if (mixScratch.length < frames * outputChannels) {
+            mixScratch = new short[frames * outputChannels];
+        }
+        frames = mixer.mix(decOut, floatPcm, mixScratch, frames);
+        int outCapacity = resampler.maxOutputFor(frames) * outputChannels;
+        if (resampleScratch.length < outCapacity) {
+            resampleScratch = new short[outCapacity];
+        }
+        int outFrames = resampler.process(mixScratch, 0, frames, resampleScratch, 0);
+        int outSamples = outFrames * outputChannels;
+        dst.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(resampleScratch, 0, outSamples);
+        dst.position(dst.position() + outSamples * 2);
+        return outSamples * 2;
+    }
+
+    long bytesToUs(long pcmBytes) {
+        return (pcmBytes / outputBytesPerFrame()) * 1_000_000L / Math.max(1, sampleRate);
+    }
+
+    void onEncoderFormatChanged(MediaFormat newFormat) throws IOException {
+        sink.onFormat(newFormat);
+    }
+
+    void writeEncoded(ByteBuffer encOut, MediaCodec.BufferInfo encInfo) throws IOException {
+        long t0 = System.nanoTime();
+        sink.writeSample(encOut, encInfo);
+        long t1 = System.nanoTime();
+        metrics.addMuxNs(t1 - t0);
+        metrics.onEncoderOutput();
+    }
+
+    // Sticky once reached: from then on the engines stop feeding and only flush the encoder.
+    // Less than one PCM frame of room counts as full, which is what stops decode-only output.
+    boolean sizeCapReached() {
+        if (!capped && maxSizeBytes - sink.bytesWritten() < outputBytesPerFrame()) {
+            capped = true;
+            metrics.markTruncated();
+        }
+        return capped;
+    }
+
+    // Called after each PCM buffer is queued to the encoder
+    void reportProgress(long ptsUs) {
+        metrics.onEncoderInput();
+        updateProgress(ptsUs);
+    }
+
+    // Progress follows the source: with trimming, that is the input consumed, not the output length
+    private void updateProgress(long ptsUs) {
+        long sourceUs = silence != null ? silence.consumedUs() : ptsUs;
+        lastPtsUs = sourceUs;
+        if (progress != null) {
+            progress.update(sourceUs, sink.bytesWritten());
+        }
+    }
+
+    boolean hasEncoder() {
+        return encoder != null;
+    }
+
+    // Decode-only output: converts a decoder buffer (already trimmed) to the output layout and
+    // writes it to the sink, filling the size cap exactly rather than overshooting it
+    void writePcm(ByteBuffer decOut, long ptsUs) throws IOException {
+        if (pcmOut == null) {
+            pcmOut = ByteBuffer.allocateDirect(64 * 1024);
+        }
+        while (decOut.hasRemaining() && !sizeCapReached()) {
+            int before = decOut.position();
+            pcmOut.clear();
+            long room = maxSizeBytes - sink.bytesWritten();
+            if (room < pcmOut.capacity()) {
+                pcmOut.limit((int) (room - room % outputBytesPerFrame()));
+            }
+            long outPtsUs = outputPtsUs(ptsUs);
+            int written = copyPcm(decOut, pcmOut);
+            if (written > 0) {
+                pcmInfo.set(0, written, outPtsUs, 0);
+                long t0 = System.nanoTime();
+                sink.writeSample(pcmOut, pcmInfo);
+                metrics.addMuxNs(System.nanoTime() - t0);
+                ptsUs += bytesToUs(written);
+            } else if (decOut.position() == before) {
+                break;
+            }
+        }
+        updateProgress(ptsUs);
+    }
+
+    // Decoder is done; what is left is the encoder flushing its last frames
+    void onEncoderEosQueued() {
+        if (progress != null) {
+            progress.stage(ExtractionProgress.Stage.ENCODE, sink.bytesWritten());
+        }
+    }
+
+    // Stops the engine at its next check, e.g. when a sibling segment failed
+    void abort() {
+        aborted = true;
+    }
+
+    void throwIfCancelled() {
+        job.throwIfCancelled();
+        if (aborted) {
+            throw new CancellationException("Transcode aborted");
+        }
+    }
+}
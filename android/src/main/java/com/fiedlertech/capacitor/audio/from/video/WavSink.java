@@ -0,0 +1,59 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// 16-bit little-endian PCM behind a canonical 44-byte RIFF/WAVE header. The header goes out with
+// zero sizes first and is patched in place on finish, so the data is written in a single pass.
+class WavSink extends RawStreamSink {
+
+    static final int HEADER_BYTES = 44;
+
+    private final int sampleRate;
+    private final int channels;
+
+    WavSink(File file, int sampleRate, int channels) throws IOException {
+        super(file);
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        write(header(0L));
+    }
+
+    private ByteBuffer header(long dataBytes) {
+        int blockAlign = channels * 2;
+        ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        h.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+        h.putInt((int) Math.min(0xFFFFFFFFL, 36L + dataBytes));
+        h.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+        h.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+        h.putInt(16);                         // fmt chunk size
+        h.putShort((short) 1);                // PCM
+        h.putShort((short) channels);
+        h.putInt(sampleRate);
+        h.putInt(sampleRate * blockAlign);    // byte rate
+        h.putShort((short) blockAlign);
+        h.putShort((short) 16);               // bits per sample
+        h.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+        h.putInt((int) Math.min(0xFFFFFFFFL, dataBytes));
+        h.flip();
+        return h;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        try {
+            flush();
+            ByteBuffer h = header(bytesWritten());
+            long position = 0L;
+            while (h.hasRemaining()) {
+                position += channel().write(h, position);
+            }
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+        super.finish();
+    }
+}
@@ -0,0 +1,133 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+// Min, max and RMS per time bucket of the 16-bit output PCM, collected while it flows to the
+// encoder or sink, so drawing a waveform needs no second decode. All channels of a frame go into
+// the same bucket. Bucket edges sit at exact multiples of sampleRate / perSecond frames, so long
+// ranges don't drift. Finished buckets are kept as interleaved min, max, rms shorts, the layout
+// toArray and toBytes return.
+public final class WaveformPeaks {
+
+    static final int DEFAULT_PER_SECOND = 100;
+    static final int MAX_PER_SECOND = 1000;
+
+    private static final int SCRATCH_SAMPLES = 4096;
+
+    public final int perSecond;
+    private final int sampleRate;
+    private final int channels;
+
+    private short[] data = new short[3 * 512]; // min, max, rms per finished bucket
+    private int count = 0;
+
+    private long frame = 0L;     // frames accepted so far
+    private long bucketEnd;      // frame at which the current bucket closes
+    private int min = Short.MAX_VALUE;
+    private int max = Short.MIN_VALUE;
+    private long sumSquares = 0L;
+    private int samples = 0;     // in the current bucket
+
+    private short[] scratch = new short[0];
+
+    WaveformPeaks(int sampleRate, int channels, int perSecond) {
+        this.sampleRate = Math.max(1, sampleRate);
+        this.channels = Math.max(1, channels);
+        // At least one frame per bucket
+        this.perSecond = Math.max(1, Math.min(Math.min(perSecond, MAX_PER_SECOND), this.sampleRate));
+        this.bucketEnd = edge(1);
+    }
+
+    // Buckets finished so far (all of them after toArray)
+    public int count() {
+        return count;
+    }
+
+    // Interleaved min, max, rms per bucket; closes a partly filled last bucket first
+    public short[] toArray() {
+        if (samples > 0) {
+            closeBucket();
+        }
+        return Arrays.copyOf(data, count * 3);
+    }
+
+    // toArray as 16-bit little-endian, the layout of the peaks output file and of Int16Array in JS
+    public byte[] toBytes() {
+        short[] values = toArray();
+        ByteBuffer out = ByteBuffer.allocate(values.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        out.asShortBuffer().put(values);
+        return out.array();
+    }
+
+    // Output PCM as the encoder and sinks get it: little-endian s16, whole frames, at
+    // pcm[offset, offset + length)
+    void accept(ByteBuffer pcm, int offset, int length) {
+        ByteBuffer view = pcm.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        ShortBuffer src = view.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        if (scratch.length < SCRATCH_SAMPLES) {
+            scratch = new short[SCRATCH_SAMPLES];
+        }
+        while (src.hasRemaining()) {
+            int n = Math.min(src.remaining(), SCRATCH_SAMPLES);
+            src.get(scratch, 0, n);
+            accept(scratch, 0, n);
+        }
+    }
+
+    // The kernel: interleaved samples [off, off + length), a whole number of frames
+    void accept(short[] pcm, int off, int length) {
+        int i = off;
+        int end = off + length;
+        while (i < end) {
+            int stop = (int) Math.min(end, i + (bucketEnd - frame) * channels);
+            int lo = min;
+            int hi = max;
+            long squares = sumSquares;
+            for (int s = i; s < stop; s++) {
+                int v = pcm[s];
+                if (v < lo) {
+                    lo = v;
+                }
+                if (v > hi) {
+                    hi = v;
+                }
+                squares += v * v;
+            }
+            min = lo;
+            max = hi;
+            sumSquares = squares;
+            samples += stop - i;
+            frame += (stop - i) / channels;
+            i = stop;
+            if (frame >= bucketEnd) {
+                closeBucket();
+            }
+        }
+    }
+
+    private void closeBucket() {
+        if (count * 3 + 3 > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        int at = count * 3;
+        data[at] = (short) min;
+        data[at + 1] = (short) max;
+        data[at + 2] = (short) Math.min(Short.MAX_VALUE, Math.round(Math.sqrt((double) sumSquares / samples)));
+        count++;
+        min = Short.MAX_VALUE;
+        max = Short.MIN_VALUE;
+        sumSquares = 0L;
+        samples = 0;
+        bucketEnd = edge(count + 1);
+    }
+
+    // First frame after bucket n - 1
+    private long edge(long n) {
+        return n * sampleRate / perSecond;
+    }
+}
@@ -0,0 +1,70 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import org.junit.Test;
+
+public class Base64EncoderTest {
+
+    private static String encode(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+        return Base64Encoder.encodeToString(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void rfc4648Vectors() {
+        assertEquals("", encode(""));
+        assertEquals("Zg==", encode("f"));
+        assertEquals("Zm8=", encode("fo"));
+        assertEquals("Zm9v", encode("foo"));
+        assertEquals("Zm9vYg==", encode("foob"));
+        assertEquals("Zm9vYmE=", encode("fooba"));
+        assertEquals("Zm9vYmFy", encode("foobar"));
+    }
+
+    @Test
+    public void matchesTheJdkEncoderForEveryTailLengthAndOffset() {
+        Random random = new Random(3);
+        byte[] data = new byte[200];
+        random.nextBytes(data);
+        for (int off = 0; off < 3; off++) {
+            for (int len = 0; len < 100; len++) {
+                byte[] slice = new byte[len];
+                System.arraycopy(data, off, slice, 0, len);
+                assertEquals("off " + off + " len " + len, Base64.getEncoder().encodeToString(slice),
+                        Base64Encoder.encodeToString(data, off, len));
+            }
+        }
+    }
+
+    @Test
+    public void encodesIntoTheMiddleOfABuffer() {
+        byte[] dst = new byte[12];
+        Arrays.fill(dst, (byte) '#');
+        int written = Base64Encoder.encode(new byte[] {(byte) 0xff, (byte) 0xfe, (byte) 0xfd, 0x00}, 0, 4, dst, 2);
+        assertEquals(8, written);
+        assertEquals("##//79AA==##", new String(dst, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void encodedLengthRoundsUpToWholeQuads() {
+        assertEquals(0, Base64Encoder.encodedLength(0));
+        assertEquals(4, Base64Encoder.encodedLength(1));
+        assertEquals(4, Base64Encoder.encodedLength(3));
+        assertEquals(8, Base64Encoder.encodedLength(4));
+        assertEquals(1_398_104, Base64Encoder.encodedLength(1_048_576));
+    }
+
+    @Test
+    public void dataUrlHasNoLineBreaks() {
+        byte[] data = new byte[1000];
+        new Random(5).nextBytes(data);
+        String url = Base64Encoder.dataUrl("audio/mpeg", data, 999);
+        byte[] used = Arrays.copyOf(data, 999);
+        assertEquals("data:audio/mpeg;base64," + Base64.getEncoder().encodeToString(used), url);
+    }
+}
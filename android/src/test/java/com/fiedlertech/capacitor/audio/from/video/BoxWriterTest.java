@@ -0,0 +1,94 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class BoxWriterTest {
+
+    @Test
+    public void nestedBoxSizesArePatchedOnClose() {
+        BoxWriter b = new BoxWriter(4); // grows as it goes
+        b.open("moov");
+        b.openFull("mvhd", 1, 0x000003).putInt(42);
+        b.close();
+        b.open("trak");
+        b.close();
+        b.close();
+        ByteBuffer out = ByteBuffer.wrap(b.toByteArray());
+        assertEquals(32, b.size());
+        assertEquals(32, out.getInt(0));
+        assertEquals(Mp4Demuxer.fourcc("moov"), out.getInt(4));
+        assertEquals(16, out.getInt(8));
+        assertEquals(Mp4Demuxer.fourcc("mvhd"), out.getInt(12));
+        assertEquals(0x01000003, out.getInt(16)); // version 1, flags 3
+        assertEquals(42, out.getInt(20));
+        assertEquals(8, out.getInt(24)); // empty trak
+        assertEquals(Mp4Demuxer.fourcc("trak"), out.getInt(28));
+    }
+
+    @Test
+    public void reservedIntIsPatchedInPlace() {
+        BoxWriter b = new BoxWriter(16);
+        int at = b.reserveInt();
+        b.putShort(0xabcd).putByte(7);
+        b.patchInt(at, 0x11223344);
+        assertArrayEquals(new byte[]{0x11, 0x22, 0x33, 0x44, (byte) 0xab, (byte) 0xcd, 7}, b.toByteArray());
+    }
+
+    @Test
+    public void ftypListsMajorMinorAndCompatibleBrands() {
+        BoxWriter b = new BoxWriter(8);
+        b.ftyp("M4A ", "M4A ", "mp42");
+        ByteBuffer out = ByteBuffer.wrap(b.toByteArray());
+        assertEquals(24, out.getInt(0));
+        assertEquals(Mp4Demuxer.fourcc("ftyp"), out.getInt(4));
+        assertEquals(Mp4Demuxer.fourcc("M4A "), out.getInt(8));
+        assertEquals(0, out.getInt(12));
+        assertEquals(Mp4Demuxer.fourcc("M4A "), out.getInt(16));
+        assertEquals(Mp4Demuxer.fourcc("mp42"), out.getInt(20));
+    }
+
+    @Test
+    public void headersSwitchToVersion1OnlyForLongDurations() {
+        BoxWriter small = new BoxWriter(128);
+        small.mvhd(44_100, 0xffffffffL);
+        assertEquals(108, small.size());
+        assertEquals(0, small.toByteArray()[8]);
+
+        BoxWriter wide = new BoxWriter(128);
+        wide.mvhd(44_100, 0x100000000L);
+        ByteBuffer out = ByteBuffer.wrap(wide.toByteArray());
+        assertEquals(120, wide.size());
+        assertEquals(1, out.get(8));
+        assertEquals(44_100, out.getInt(28));
+        assertEquals(0x100000000L, out.getLong(32));
+
+        BoxWriter mdhd = new BoxWriter(64);
+        mdhd.mdhd(48_000, 1234L, 0x55c4);
+        out = ByteBuffer.wrap(mdhd.toByteArray());
+        assertEquals(32, mdhd.size());
+        assertEquals(48_000, out.getInt(20));
+        assertEquals(1234, out.getInt(24));
+        assertEquals(0x55c4, out.getShort(28) & 0xffff);
+
+        BoxWriter tkhd = new BoxWriter(128);
+        tkhd.tkhd(0x100000000L);
+        assertEquals(104, tkhd.size());
+        assertEquals(1, tkhd.toByteArray()[8]);
+    }
+
+    @Test
+    public void soundHandlerNameIsNullTerminated() {
+        BoxWriter b = new BoxWriter(64);
+        b.soundHandler();
+        byte[] out = b.toByteArray();
+        assertEquals(out.length, ByteBuffer.wrap(out).getInt(0));
+        assertEquals(Mp4Demuxer.fourcc("soun"), ByteBuffer.wrap(out).getInt(16));
+        assertEquals("SoundHandler", new String(out, 32, 12, StandardCharsets.US_ASCII));
+        assertEquals(0, out[out.length - 1]);
+    }
+}
@@ -0,0 +1,133 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+
+public class ChannelMixerTest {
+
+    // ITU-R BS.775 5.1 -> stereo rows {FL, FR, FC, LFE, BL, BR} = {1, 0, -3 dB, 0, -3 dB, 0} (mirrored
+    // for the right), normalized by their sum 1 + 2 * 0.7071 so full scale can't clip
+    private static final double ROW_SUM = 1.0 + 2.0 * 0.70710677;
+    private static final double FRONT = 1.0 / ROW_SUM;
+    private static final double SIDE = 0.70710677 / ROW_SUM;
+
+    @Test
+    public void fiveOneToStereoUsesNormalizedBs775Gains() {
+        ChannelMixer mixer = ChannelMixer.standard(6, 2);
+        double[][] expected = {
+            {FRONT, 0}, // FL
+            {0, FRONT}, // FR
+            {SIDE, SIDE}, // FC
+            {0, 0}, // LFE
+            {SIDE, 0}, // BL
+            {0, SIDE}, // BR
+        };
+        for (int c = 0; c < 6; c++) {
+            short[] frame = new short[6];
+            frame[c] = 10000;
+            short[] out = new short[2];
+            mixer.mix(frame, 0, out, 0, 1);
+            assertEquals("left from channel " + c, Math.round(10000 * expected[c][0]), out[0]);
+            assertEquals("right from channel " + c, Math.round(10000 * expected[c][1]), out[1]);
+        }
+    }
+
+    @Test
+    public void fiveOneToMonoAveragesTheStereoGains() {
+        ChannelMixer mixer = ChannelMixer.standard(6, 1);
+        // {FL, FR, FC, LFE, BL, BR} = {0.5, 0.5, 0.7071, 0, 0.3536, 0.3536}, normalized by their sum
+        double sum = 0.5 + 0.5 + 0.70710677 + 0.35355339 + 0.35355339;
+        double[] expected = {0.5 / sum, 0.5 / sum, 0.70710677 / sum, 0, 0.35355339 / sum, 0.35355339 / sum};
+        for (int c = 0; c < 6; c++) {
+            short[] frame = new short[6];
+            frame[c] = 20000;
+            short[] out = new short[1];
+            mixer.mix(frame, 0, out, 0, 1);
+            assertEquals("channel " + c, Math.round(20000 * expected[c]), out[0]);
+        }
+    }
+
+    @Test
+    public void standardDownmixOfFullScaleInputDoesNotClipOrWrap() {
+        ChannelMixer mixer = ChannelMixer.standard(6, 2);
+        short[] loud = {32767, 32767, 32767, 32767, 32767, 32767, -32768, -32768, -32768, -32768, -32768, -32768};
+        short[] out = new short[4];
+        mixer.mix(loud, 0, out, 0, 2);
+        assertArrayEquals(new short[] {32767, 32767, -32768, -32768}, out);
+    }
+
+    @Test
+    public void customMatrixSaturatesInsteadOfWrapping() {
+        ChannelMixer sum = ChannelMixer.custom(new float[][] {{1f, 1f}});
+        short[] out = new short[3];
+        sum.mix(new short[] {30000, 30000, -30000, -30000, 1000, -250}, 0, out, 0, 3);
+        assertArrayEquals(new short[] {32767, -32768, 750}, out);
+    }
+
+    @Test
+    public void stereoToMonoAndMonoToStereo() {
+        short[] out = new short[2];
+        ChannelMixer.standard(2, 1).mix(new short[] {1000, 3000, -1000, 1000}, 0, out, 0, 2);
+        assertArrayEquals(new short[] {2000, 0}, out);
+
+        ChannelMixer up = ChannelMixer.standard(1, 2);
+        up.mix(new short[] {1234}, 0, out, 0, 1);
+        assertArrayEquals(new short[] {1234, 1234}, out);
+    }
+
+    @Test
+    public void sameChannelCountIsIdentity() {
+        assertTrue(ChannelMixer.standard(2, 2).isIdentity());
+        assertTrue(ChannelMixer.standard(1, 1).isIdentity());
+        assertFalse(ChannelMixer.standard(6, 2).isIdentity());
+        assertFalse(ChannelMixer.custom(new float[][] {{0f, 1f}, {1f, 0f}}).isIdentity());
+    }
+
+    @Test
+    public void floatInputIsScaledAndClipped() {
+        ChannelMixer mixer = ChannelMixer.standard(2, 2);
+        short[] out = new short[4];
+        mixer.mix(new float[] {0.5f, -0.25f, 1.5f, -2f}, 0, out, 0, 2);
+        assertArrayEquals(new short[] {16384, -8192, 32767, -32768}, out);
+    }
+
+    @Test
+    public void processConsumesWholeFramesAndWritesLittleEndian() {
+        ChannelMixer mixer = ChannelMixer.standard(2, 1);
+        ByteBuffer src = ByteBuffer.allocate(5 * 4).order(ByteOrder.nativeOrder());
+        src.asFloatBuffer().put(new float[] {0.5f, 0.5f, -0.5f, -0.5f, 0.25f});
+        ByteBuffer dst = ByteBuffer.allocate(16);
+        int written = mixer.process(src, true, dst);
+        assertEquals(4, written);
+        assertEquals(16, src.position()); // the half frame stays for the next buffer
+        assertEquals(4, dst.position());
+        dst.order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(16384, dst.getShort(0)); // 0.5 * 32767 rounds half up
+        assertEquals(-16383, dst.getShort(2));
+    }
+
+    @Test
+    public void processStopsWhenTheOutputIsFull() {
+        ChannelMixer mixer = ChannelMixer.standard(6, 2);
+        ByteBuffer src = ByteBuffer.allocate(10 * 6 * 2).order(ByteOrder.nativeOrder());
+        ByteBuffer dst = ByteBuffer.allocate(3 * 2 * 2 + 1);
+        assertEquals(12, mixer.process(src, false, dst));
+        assertEquals(3 * 6 * 2, src.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMoreThanTwoOutputChannels() {
+        ChannelMixer.standard(6, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRaggedCustomMatrix() {
+        ChannelMixer.custom(new float[][] {{1f, 0f}, {1f}});
+    }
+}
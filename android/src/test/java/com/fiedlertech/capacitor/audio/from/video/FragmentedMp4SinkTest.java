@@ -0,0 +1,195 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FragmentedMp4SinkTest {
+
+    private static final int RATE = 44_100;
+    private static final byte[] CONFIG = {0x12, 0x10}; // AAC-LC, 44.1 kHz, stereo
+    private static final int CODEC_CONFIG = 2; // MediaCodec.BUFFER_FLAG_CODEC_CONFIG
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final List<long[]> pieces = new ArrayList<>(); // sequence, offset, length, startUs, durationUs
+
+    private static long ptsUs(int frame) {
+        return frame * 1024L * 1_000_000L / RATE;
+    }
+
+    private static byte[] sample(int i) {
+        byte[] b = new byte[200 + 13 * i];
+        Arrays.fill(b, (byte) i);
+        return b;
+    }
+
+    // Writes count AAC frames, 100 ms per fragment, starting at pts firstUs
+    private byte[] write(int count, long firstUs) throws IOException {
+        File file = temp.newFile();
+        FragmentedMp4Sink sink = new FragmentedMp4Sink(file, 100_000L,
+                (sequence, offset, length, startUs, durationUs) ->
+                        pieces.add(new long[]{sequence, offset, length, startUs, durationUs}));
+        sink.onFormat(RATE, 2, 128_000, CONFIG);
+        sink.writeSample(ByteBuffer.wrap(CONFIG), 0, CONFIG.length, 0L, CODEC_CONFIG); // ignored
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] s = sample(i);
+            // Sample bytes inside a larger buffer, as codec output buffers are
+            ByteBuffer buffer = ByteBuffer.allocate(s.length + 16);
+            buffer.position(7);
+            buffer.put(s);
+            sink.writeSample(buffer, 7, s.length, firstUs + ptsUs(i), 0);
+            total += s.length;
+        }
+        sink.finish();
+        assertEquals(total, sink.bytesWritten());
+        return Files.readAllBytes(file.toPath());
+    }
+
+    // Offsets of the top-level boxes of the given type
+    private static List<Integer> find(byte[] file, String type) {
+        List<Integer> at = new ArrayList<>();
+        ByteBuffer b = ByteBuffer.wrap(file);
+        int pos = 0;
+        while (pos + 8 <= file.length) {
+            if (b.getInt(pos + 4) == Mp4Demuxer.fourcc(type)) {
+                at.add(pos);
+            }
+            pos += b.getInt(pos);
+        }
+        return at;
+    }
+
+    // Offset of the first box of the given type inside [from, to), searched depth-first
+    private static int child(ByteBuffer b, int from, int to, String type) {
+        int pos = from;
+        while (pos + 8 <= to) {
+            int size = b.getInt(pos);
+            if (b.getInt(pos + 4) == Mp4Demuxer.fourcc(type)) {
+                return pos;
+            }
+            pos += size;
+        }
+        return -1;
+    }
+
+    @Test
+    public void piecesAreInitThenMoofMdatPairsCoveringTheFile() throws IOException {
+        byte[] file = write(10, 0L);
+        // 100 ms fragments of 23.2 ms frames: samples 0-4, then 5-9 at the end of the stream
+        assertEquals(3, pieces.size());
+        long expectedOffset = 0;
+        for (int i = 0; i < pieces.size(); i++) {
+            assertEquals(i, pieces.get(i)[0]);
+            assertEquals(expectedOffset, pieces.get(i)[1]);
+            expectedOffset += pieces.get(i)[2];
+        }
+        assertEquals(file.length, expectedOffset);
+
+        List<Integer> moofs = find(file, "moof");
+        List<Integer> mdats = find(file, "mdat");
+        assertEquals(Arrays.asList(0), find(file, "ftyp"));
+        assertEquals(2, moofs.size());
+        assertEquals(pieces.get(1)[1], (long) moofs.get(0));
+        assertEquals(pieces.get(2)[1], (long) moofs.get(1));
+        // Each fragment piece is its moof and the mdat right after it
+        ByteBuffer b = ByteBuffer.wrap(file);
+        assertEquals(2, mdats.size());
+        for (int f = 0; f < 2; f++) {
+            assertEquals(moofs.get(f) + b.getInt(moofs.get(f)), (int) mdats.get(f));
+            assertEquals(pieces.get(f + 1)[1] + pieces.get(f + 1)[2], mdats.get(f) + b.getInt(mdats.get(f)));
+        }
+
+        assertEquals(0L, pieces.get(1)[3]);
+        assertEquals(ptsUs(5), pieces.get(1)[4], 1);
+        assertEquals(ptsUs(5), pieces.get(2)[3], 1);
+        assertEquals(ptsUs(5), pieces.get(2)[4], 1); // the last frame takes the previous one's duration
+    }
+
+    @Test
+    public void initSegmentDescribesTheTrackAndIsFragmentable() throws IOException {
+        byte[] file = write(3, 0L);
+        ByteBuffer b = ByteBuffer.wrap(file);
+        int moov = find(file, "moov").get(0);
+        int moovEnd = moov + b.getInt(moov);
+        assertEquals(pieces.get(0)[2], moovEnd);
+        assertTrue(child(b, moov + 8, moovEnd, "mvex") > 0);
+        String text = new String(file, 0, moovEnd, "ISO-8859-1");
+        assertTrue(text.contains("mp4a"));
+        // esds ends with DecoderSpecificInfo (tag 5) holding the config, then the SL descriptor
+        int esds = text.indexOf("esds");
+        int info = text.indexOf(new String(new byte[]{0x05, 0x02, 0x12, 0x10}, "ISO-8859-1"), esds);
+        assertTrue(info > esds);
+        int trex = text.indexOf("trex");
+        assertEquals(1, b.getInt(trex + 8)); // track ID
+    }
+
+    @Test
+    public void trunDescribesTheMdatPayload() throws IOException {
+        byte[] file = write(10, 0L);
+        ByteBuffer b = ByteBuffer.wrap(file);
+        List<Integer> moofs = find(file, "moof");
+        int sample = 0;
+        for (int f = 0; f < moofs.size(); f++) {
+            int moof = moofs.get(f);
+            int moofEnd = moof + b.getInt(moof);
+            int mfhd = child(b, moof + 8, moofEnd, "mfhd");
+            assertEquals(f + 1, b.getInt(mfhd + 12));
+            int traf = child(b, moof + 8, moofEnd, "traf");
+            int trafEnd = traf + b.getInt(traf);
+            int tfdt = child(b, traf + 8, trafEnd, "tfdt");
+            assertEquals(1, b.get(tfdt + 8)); // version 1, 64-bit decode time
+            assertEquals(sample * 1024L, b.getLong(tfdt + 12));
+            int trun = child(b, traf + 8, trafEnd, "trun");
+            int count = b.getInt(trun + 12);
+            int dataOffset = b.getInt(trun + 16);
+            int mdat = moofEnd;
+            assertEquals(Mp4Demuxer.fourcc("mdat"), b.getInt(mdat + 4));
+            assertEquals(mdat + 8, moof + dataOffset); // default-base-is-moof
+            int at = mdat + 8;
+            for (int i = 0; i < count; i++, sample++) {
+                assertEquals(1024, b.getInt(trun + 20 + 8 * i));
+                int size = b.getInt(trun + 24 + 8 * i);
+                byte[] expected = sample(sample);
+                assertEquals(expected.length, size);
+                assertArrayEquals(expected, Arrays.copyOfRange(file, at, at + size));
+                at += size;
+            }
+            assertEquals(mdat + b.getInt(mdat), at);
+        }
+        assertEquals(10, sample);
+    }
+
+    @Test
+    public void decodeTimesCountFromTheFirstSample() throws IOException {
+        byte[] file = write(6, 5_000_000L);
+        ByteBuffer b = ByteBuffer.wrap(file);
+        int moof = find(file, "moof").get(0);
+        int tfdt = new String(file, "ISO-8859-1").indexOf("tfdt", moof) - 4;
+        assertEquals(0L, b.getLong(tfdt + 12));
+        assertEquals(0L, pieces.get(1)[3]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void samplesNeedTheFormatFirst() throws IOException {
+        FragmentedMp4Sink sink = new FragmentedMp4Sink(temp.newFile(), 100_000L, null);
+        try {
+            sink.writeSample(ByteBuffer.allocate(10), 0, 10, 0L, 0);
+        } finally {
+            sink.abort();
+        }
+    }
+}
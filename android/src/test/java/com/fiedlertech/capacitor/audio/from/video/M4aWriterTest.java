@@ -0,0 +1,170 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// Round trips: fixture -> Mp4Demuxer -> M4aWriter -> Mp4Demuxer again, comparing sample tables
+// and the sample bytes at the offsets the second pass reports
+public class M4aWriterTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final List<int[]> runs = new ArrayList<>();
+    private final List<Long> copied = new ArrayList<>();
+
+    private static Mp4Demuxer.AudioTrack demux(File f) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r"); FileChannel channel = raf.getChannel()) {
+            return Mp4Demuxer.readAudioTrack(channel, 0L, channel.size());
+        }
+    }
+
+    private File write(Mp4Fixture fixture, int first, int end) throws IOException {
+        File src = temp.newFile();
+        Files.write(src.toPath(), fixture.build());
+        Mp4Demuxer.AudioTrack track = demux(src);
+        assertNotNull(track);
+        File out = temp.newFile();
+        long written;
+        try (RandomAccessFile in = new RandomAccessFile(src, "r");
+             FileOutputStream os = new FileOutputStream(out)) {
+            written = M4aWriter.write(track, first, end == -1 ? track.sampleCount() : end, in.getChannel(), 0L,
+                    os.getChannel(), (runEnd, bytes) -> {
+                        runs.add(new int[]{runEnd});
+                        copied.add(bytes);
+                    });
+        }
+        assertEquals(out.length(), written);
+        return out;
+    }
+
+    // Checks out holds samples [first, end) of fixture: sizes, durations and bytes
+    private static Mp4Demuxer.AudioTrack assertRoundTrip(Mp4Fixture fixture, File out, int first, int end)
+            throws IOException {
+        Mp4Demuxer.AudioTrack track = demux(out);
+        assertNotNull(track);
+        assertEquals(Mp4Fixture.TIMESCALE, track.timescale);
+        assertArrayEquals(Arrays.copyOfRange(fixture.sizes, first, end), track.sizes);
+        for (int i = 0; i <= end - first; i++) {
+            assertEquals("time of " + i, fixture.times[first + i] - fixture.times[first], track.times[i]);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(out, "r")) {
+            for (int i = 0; i < track.sampleCount(); i++) {
+                byte[] bytes = new byte[track.sizes[i]];
+                raf.seek(track.offsets[i]);
+                raf.readFully(bytes);
+                assertArrayEquals("sample " + (first + i), Mp4Fixture.payload(first + i, fixture.sizes[first + i]), bytes);
+            }
+        }
+        return track;
+    }
+
+    // Top-level box types in file order
+    private static List<String> topLevel(File f) throws IOException {
+        List<String> types = new ArrayList<>();
+        ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(f.toPath()));
+        while (b.remaining() >= 8) {
+            int start = b.position();
+            long size = b.getInt() & 0xffffffffL;
+            byte[] type = new byte[4];
+            b.get(type);
+            types.add(new String(type, "ISO-8859-1"));
+            b.position((int) (start + size));
+        }
+        return types;
+    }
+
+    private static boolean contains(File f, String type) throws IOException {
+        return new String(Files.readAllBytes(f.toPath()), "ISO-8859-1").contains(type);
+    }
+
+    @Test
+    public void wholeTrackRoundTripsAsFaststart() throws IOException {
+        Mp4Fixture fixture = new Mp4Fixture(60);
+        File out = write(fixture, 0, -1);
+        assertRoundTrip(fixture, out, 0, 60);
+        assertEquals(Arrays.asList("ftyp", "moov", "mdat"), topLevel(out));
+        assertFalse(contains(out, "edts"));
+    }
+
+    @Test
+    public void eachContiguousSourceRunIsOneCopy() throws IOException {
+        Mp4Fixture fixture = new Mp4Fixture(20); // chunks of 3, 3, 3, 2, 2, 5, 2
+        write(fixture, 0, -1);
+        int[] ends = new int[runs.size()];
+        for (int i = 0; i < ends.length; i++) {
+            ends[i] = runs.get(i)[0];
+        }
+        assertArrayEquals(new int[]{3, 6, 9, 11, 13, 18, 20}, ends);
+        long payload = 0;
+        for (int size : fixture.sizes) {
+            payload += size;
+        }
+        assertEquals(payload, (long) copied.get(copied.size() - 1));
+    }
+
+    @Test
+    public void co64SourceRoundTrips() throws IOException {
+        Mp4Fixture fixture = new Mp4Fixture(45);
+        fixture.wideOffsets = true;
+        assertRoundTrip(fixture, write(fixture, 0, -1), 0, 45);
+    }
+
+    @Test
+    public void stz2SourceRoundTrips() throws IOException {
+        Mp4Fixture fixture = new Mp4Fixture(45);
+        fixture.compactSizeBits = 16;
+        fixture.moovFirst = true;
+        assertRoundTrip(fixture, write(fixture, 0, -1), 0, 45);
+    }
+
+    @Test
+    public void rangeStartsAndEndsInsideChunks() throws IOException {
+        Mp4Fixture fixture = new Mp4Fixture(60);
+        fixture.lastDuration = 512;
+        assertRoundTrip(fixture, write(fixture, 4, 31), 4, 31);
+        assertRoundTrip(fixture, write(fixture, 55, 60), 55, 60);
+    }
+
+    @Test
+    public void primingEditIsCarriedOver() throws IOException {
+        Mp4Fixture fixture = new Mp4Fixture(80);
+        long presented = fixture.mediaDuration() - 2112 - 700;
+        fixture.edits = new long[][]{{presented * Mp4Fixture.MOVIE_TIMESCALE / Mp4Fixture.TIMESCALE, 2112}};
+        File src = temp.newFile();
+        Files.write(src.toPath(), fixture.build());
+        Mp4Demuxer.AudioTrack source = demux(src);
+
+        Mp4Demuxer.AudioTrack whole = assertRoundTrip(fixture, write(fixture, 0, -1), 0, 80);
+        assertEquals(source.editStart, whole.editStart);
+        assertEquals(source.editEnd, whole.editEnd);
+
+        // From sample 10 on only the trailing padding is cut
+        Mp4Demuxer.AudioTrack tail = assertRoundTrip(fixture, write(fixture, 10, -1), 10, 80);
+        assertEquals(0L, tail.editStart);
+        assertEquals(source.editEnd - fixture.times[10], tail.editEnd);
+
+        // Inside the edit no edit list is needed
+        File middle = write(fixture, 10, 40);
+        Mp4Demuxer.AudioTrack mid = assertRoundTrip(fixture, middle, 10, 40);
+        assertEquals(0L, mid.editStart);
+        assertEquals(mid.times[mid.sampleCount()], mid.editEnd);
+        assertFalse(contains(middle, "edts"));
+    }
+}
@@ -0,0 +1,35 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class MimeTypesTest {
+
+    @Test
+    public void outputExtensionsRoundTrip() {
+        for (String mime : new String[] {MimeTypes.MP3, MimeTypes.M4A, MimeTypes.WAV, MimeTypes.PCM, MimeTypes.PEAKS}) {
+            assertEquals(mime, MimeTypes.outputMime(MimeTypes.outputExt(mime)));
+        }
+        assertNull(MimeTypes.outputMime(".ogg"));
+    }
+
+    @Test
+    public void withOutputExtReplacesOnlyTheFileExtension() {
+        assertEquals("/a/b/out.mp3", MimeTypes.withOutputExt("/a/b/out.mp3", MimeTypes.MP3));
+        assertEquals("/a/b/out.m4a", MimeTypes.withOutputExt("/a/b/out.mp3", MimeTypes.M4A));
+        assertEquals("/a/b/out.m4a", MimeTypes.withOutputExt("/a/b/out", MimeTypes.M4A));
+        assertEquals("/a.dir/out.wav", MimeTypes.withOutputExt("/a.dir/out", MimeTypes.WAV));
+        assertEquals("/a/.hidden.pcm", MimeTypes.withOutputExt("/a/.hidden", MimeTypes.PCM));
+    }
+
+    @Test
+    public void sourceExtensionsLetTheExtractorSniffTheContainer() {
+        assertEquals(".mp3", MimeTypes.sourceExt(MimeTypes.MP3));
+        assertEquals(".m4a", MimeTypes.sourceExt("audio/aac"));
+        assertEquals(".mp4", MimeTypes.sourceExt("video/quicktime"));
+        assertEquals(".webm", MimeTypes.sourceExt("video/webm"));
+        assertEquals(".tmp", MimeTypes.sourceExt(null));
+    }
+}
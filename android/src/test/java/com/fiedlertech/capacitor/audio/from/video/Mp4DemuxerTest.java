@@ -0,0 +1,154 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class Mp4DemuxerTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private Mp4Demuxer.AudioTrack demux(byte[] file) throws IOException {
+        return demux(file, 0);
+    }
+
+    // The file placed prefixBytes into a larger one, as with an asset or a range of a descriptor
+    private Mp4Demuxer.AudioTrack demux(byte[] file, int prefixBytes) throws IOException {
+        File f = temp.newFile();
+        byte[] data = new byte[prefixBytes + file.length + 17];
+        System.arraycopy(file, 0, data, prefixBytes, file.length);
+        Files.write(f.toPath(), data);
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r"); FileChannel channel = raf.getChannel()) {
+            return Mp4Demuxer.readAudioTrack(channel, prefixBytes, file.length);
+        }
+    }
+
+    private static void assertSampleTable(Mp4Fixture fixture, Mp4Demuxer.AudioTrack track) {
+        assertNotNull(track);
+        assertEquals(Mp4Fixture.TIMESCALE, track.timescale);
+        assertEquals(0x55c4, track.language);
+        assertArrayEquals(fixture.sizes, track.sizes);
+        assertArrayEquals(fixture.offsets, track.offsets);
+        assertArrayEquals(fixture.times, track.times);
+    }
+
+    @Test
+    public void readsStszAndStcoWithTheMoovAtTheEnd() throws IOException {
+        Mp4Fixture fixture = new Mp4Fixture(50);
+        Mp4Demuxer.AudioTrack track = demux(fixture.build());
+        assertSampleTable(fixture, track);
+        assertEquals(0L, track.editStart);
+        assertEquals(fixture.mediaDuration(), track.editEnd);
+    }
+
+    @Test
+    public void readsTheMoovInFront() throws IOException {
+        Mp4Fixture fixture = new Mp4Fixture(20);
+        fixture.moovFirst = true;
+        assertSampleTable(fixture, demux(fixture.build()));
+    }
+
+    @Test
+    public void readsCo64ChunkOffsets() throws IOException {
+        Mp4Fixture fixture = new Mp4Fixture(40);
+        fixture.wideOffsets = true;
+        assertSampleTable(fixture, demux(fixture.build()));
+    }
+
+    @Test
+    public void readsStz2SampleSizesOfEveryFieldWidth() throws IOException {
+        Mp4Fixture sixteen = new Mp4Fixture(30);
+        sixteen.compactSizeBits = 16;
+        assertSampleTable(sixteen, demux(sixteen.build()));
+
+        Mp4Fixture eight = new Mp4Fixture(30);
+        eight.compactSizeBits = 8;
+        for (int i = 0; i < eight.sizes.length; i++) {
+            eight.sizes[i] = 1 + (i * 53) % 255;
+        }
+        assertSampleTable(eight, demux(eight.build()));
+
+        // Odd count, so the last byte holds one 4-bit size and padding
+        Mp4Fixture four = new Mp4Fixture(13);
+        four.compactSizeBits = 4;
+        for (int i = 0; i < four.sizes.length; i++) {
+            four.sizes[i] = 1 + (i * 5) % 15;
+        }
+        assertSampleTable(four, demux(four.build()));
+    }
+
+    @Test
+    public void offsetsAreRelativeToTheDataStart() throws IOException {
+        Mp4Fixture fixture = new Mp4Fixture(10);
+        assertSampleTable(fixture, demux(fixture.build(), 4096));
+    }
+
+    @Test
+    public void shortLastFrameEndsTheTrack() throws IOException {
+        Mp4Fixture fixture = new Mp4Fixture(10);
+        fixture.lastDuration = 300;
+        Mp4Demuxer.AudioTrack track = demux(fixture.build());
+        assertSampleTable(fixture, track);
+        assertEquals(9 * 1024 + 300, track.times[10]);
+    }
+
+    @Test
+    public void editListKeepsPrimingSamplesButPresentsFromMediaTime() throws IOException {
+        Mp4Fixture fixture = new Mp4Fixture(100);
+        long presented = fixture.mediaDuration() - 2112 - 500;
+        long segmentDuration = presented * Mp4Fixture.MOVIE_TIMESCALE / Mp4Fixture.TIMESCALE;
+        fixture.edits = new long[][]{{segmentDuration, 2112}};
+        Mp4Demuxer.AudioTrack track = demux(fixture.build());
+        assertSampleTable(fixture, track);
+        assertEquals(2112L, track.editStart);
+        // The segment duration is in the movie timescale
+        assertEquals(2112L + segmentDuration * Mp4Fixture.TIMESCALE / Mp4Fixture.MOVIE_TIMESCALE, track.editEnd);
+
+        // Samples 0-2 start before the edit: presented at 0, and still where a range from 0 begins
+        assertEquals(0L, track.timeUs(0));
+        assertEquals(0L, track.timeUs(2));
+        assertEquals((3 * 1024 - 2112) * 1_000_000L / Mp4Fixture.TIMESCALE, track.timeUs(3));
+        assertEquals(0, track.sampleAtOrAfter(0L));
+        assertEquals(3, track.sampleAtOrAfter(1L));
+        assertEquals(track.sampleCount(), track.sampleAtOrAfter(10_000_000L));
+    }
+
+    @Test
+    public void leadingEmptyEditIsDropped() throws IOException {
+        Mp4Fixture fixture = new Mp4Fixture(20);
+        fixture.edits = new long[][]{{500, -1}, {0, 1024}};
+        Mp4Demuxer.AudioTrack track = demux(fixture.build());
+        assertEquals(1024L, track.editStart);
+        assertEquals(fixture.mediaDuration(), track.editEnd); // a zero duration runs to the end
+    }
+
+    @Test
+    public void multipleEditsAreLeftToMediaExtractor() throws IOException {
+        Mp4Fixture fixture = new Mp4Fixture(20);
+        fixture.edits = new long[][]{{100, 0}, {100, 8192}};
+        assertNull(demux(fixture.build()));
+    }
+
+    @Test
+    public void rejectsWhatItCannotRemux() throws IOException {
+        assertNull(demux(new byte[64]));
+        assertNull(demux("ID3\u0004\u0000\u0000\u0000\u0000\u0000\u0000".getBytes("ISO-8859-1")));
+
+        // Truncated: the moov at the end is cut off
+        byte[] file = new Mp4Fixture(10).build();
+        byte[] cut = new byte[file.length - 100];
+        System.arraycopy(file, 0, cut, 0, cut.length);
+        assertNull(demux(cut));
+    }
+}
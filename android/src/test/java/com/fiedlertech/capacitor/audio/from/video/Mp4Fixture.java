@@ -0,0 +1,217 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import java.io.ByteArrayOutputStream;
+
+// Generates non-fragmented MP4 files with one AAC sound track and a made-up video stream
+// interleaved in the mdat, so sample offsets are neither zero-based nor contiguous. Sample i
+// holds payload(i), which lets tests check bytes after a remux.
+final class Mp4Fixture {
+
+    static final int TIMESCALE = 44_100;
+    static final int MOVIE_TIMESCALE = 1000;
+    static final int FRAME = 1024;
+
+    int[] sizes;
+    int[] chunkSamples = {3, 3, 3, 2, 2, 5}; // repeated until every sample has a chunk
+    int lastDuration = FRAME;                // duration of the last sample (a short final frame)
+    boolean wideOffsets = false;             // co64 instead of stco
+    int compactSizeBits = 0;                 // stz2 with 4, 8 or 16 bit fields instead of stsz
+    boolean moovFirst = false;
+    long[][] edits;                          // elst entries {segment_duration, media_time}, or null
+    int interleaveBytes = 333;               // "video" bytes written before every audio chunk
+
+    // Filled in by build(): absolute offset and decode time of every sample
+    long[] offsets;
+    long[] times;
+
+    Mp4Fixture(int samples) {
+        sizes = new int[samples];
+        for (int i = 0; i < samples; i++) {
+            sizes[i] = 100 + (i * 37) % 200;
+        }
+    }
+
+    static byte[] payload(int sample, int size) {
+        byte[] b = new byte[size];
+        for (int j = 0; j < size; j++) {
+            b[j] = (byte) (sample * 31 + j);
+        }
+        return b;
+    }
+
+    long mediaDuration() {
+        return (long) (sizes.length - 1) * FRAME + lastDuration;
+    }
+
+    byte[] build() {
+        BoxWriter ftyp = new BoxWriter(32);
+        ftyp.ftyp("isom", "isom", "mp42");
+        byte[] head = ftyp.toByteArray();
+
+        // The moov's size does not depend on the offsets it holds, so lay out with a dry run
+        int[] chunks = chunkLayout();
+        byte[] moov = moov(chunks, new long[chunks.length]);
+        ByteArrayOutputStream mdat = new ByteArrayOutputStream();
+        long mdatStart = moovFirst ? head.length + moov.length : head.length;
+        long dataStart = mdatStart + 8;
+        long[] chunkOffsets = new long[chunks.length];
+        offsets = new long[sizes.length];
+        int sample = 0;
+        for (int c = 0; c < chunks.length; c++) {
+            byte[] video = new byte[interleaveBytes];
+            mdat.write(video, 0, video.length);
+            chunkOffsets[c] = dataStart + mdat.size();
+            for (int i = 0; i < chunks[c]; i++, sample++) {
+                offsets[sample] = dataStart + mdat.size();
+                byte[] p = payload(sample, sizes[sample]);
+                mdat.write(p, 0, p.length);
+            }
+        }
+        times = new long[sizes.length + 1];
+        for (int i = 1; i <= sizes.length; i++) {
+            times[i] = times[i - 1] + (i == sizes.length ? lastDuration : FRAME);
+        }
+        moov = moov(chunks, chunkOffsets);
+
+        BoxWriter mdatHeader = new BoxWriter(8);
+        mdatHeader.putInt(8 + mdat.size()).fourcc("mdat");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(head, 0, head.length);
+        if (moovFirst) {
+            out.write(moov, 0, moov.length);
+        }
+        out.write(mdatHeader.toByteArray(), 0, 8);
+        byte[] data = mdat.toByteArray();
+        out.write(data, 0, data.length);
+        if (!moovFirst) {
+            out.write(moov, 0, moov.length);
+        }
+        return out.toByteArray();
+    }
+
+    private int[] chunkLayout() {
+        int count = 0;
+        for (int sample = 0; sample < sizes.length; count++) {
+            sample += chunkSamples[count % chunkSamples.length];
+        }
+        int[] chunks = new int[count];
+        int left = sizes.length;
+        for (int c = 0; c < count; c++) {
+            chunks[c] = Math.min(left, chunkSamples[c % chunkSamples.length]);
+            left -= chunks[c];
+        }
+        return chunks;
+    }
+
+    private byte[] moov(int[] chunks, long[] chunkOffsets) {
+        BoxWriter b = new BoxWriter(4096);
+        b.open("moov");
+        b.mvhd(MOVIE_TIMESCALE, mediaDuration() * MOVIE_TIMESCALE / TIMESCALE);
+        videoTrack(b);
+        b.open("trak");
+        b.tkhd(0L);
+        if (edits != null) {
+            b.open("edts");
+            b.openFull("elst", 0, 0).putInt(edits.length);
+            for (long[] edit : edits) {
+                b.putInt((int) edit[0]).putInt((int) edit[1]).putInt(0x00010000);
+            }
+            b.close();
+            b.close();
+        }
+        b.open("mdia");
+        b.mdhd(TIMESCALE, mediaDuration(), 0x55c4);
+        b.soundHandler();
+        b.open("minf");
+        b.soundMediaHeaders();
+        b.open("stbl");
+        sampleDescription(b);
+        b.openFull("stts", 0, 0);
+        if (lastDuration == FRAME) {
+            b.putInt(1).putInt(sizes.length).putInt(FRAME);
+        } else {
+            b.putInt(2).putInt(sizes.length - 1).putInt(FRAME).putInt(1).putInt(lastDuration);
+        }
+        b.close();
+        b.openFull("stsc", 0, 0);
+        int entriesAt = b.reserveInt();
+        int entries = 0;
+        for (int c = 0; c < chunks.length; c++) {
+            if (c == 0 || chunks[c] != chunks[c - 1]) {
+                b.putInt(c + 1).putInt(chunks[c]).putInt(1);
+                entries++;
+            }
+        }
+        b.patchInt(entriesAt, entries);
+        b.close();
+        sampleSizes(b);
+        b.openFull(wideOffsets ? "co64" : "stco", 0, 0).putInt(chunkOffsets.length);
+        for (long offset : chunkOffsets) {
+            if (wideOffsets) {
+                b.putLong(offset);
+            } else {
+                b.putInt((int) offset);
+            }
+        }
+        b.close();
+        b.close(); // stbl
+        b.close(); // minf
+        b.close(); // mdia
+        b.close(); // trak
+        b.close(); // moov
+        return b.toByteArray();
+    }
+
+    // A track the demuxer has to skip: its handler is not 'soun'
+    private static void videoTrack(BoxWriter b) {
+        b.open("trak");
+        b.tkhd(0L);
+        b.open("mdia");
+        b.mdhd(90_000, 0L, 0x55c4);
+        b.openFull("hdlr", 0, 0).putInt(0).fourcc("vide").putInt(0).putInt(0).putInt(0);
+        b.putAscii("VideoHandler");
+        b.close();
+        b.close();
+        b.close();
+    }
+
+    private void sampleSizes(BoxWriter b) {
+        if (compactSizeBits == 0) {
+            b.openFull("stsz", 0, 0).putInt(0).putInt(sizes.length);
+            for (int size : sizes) {
+                b.putInt(size);
+            }
+            b.close();
+            return;
+        }
+        b.openFull("stz2", 0, 0).putInt(compactSizeBits).putInt(sizes.length);
+        for (int i = 0; i < sizes.length; i++) {
+            if (compactSizeBits == 16) {
+                b.putShort(sizes[i]);
+            } else if (compactSizeBits == 8) {
+                b.putByte(sizes[i]);
+            } else if ((i & 1) == 0) {
+                int low = i + 1 < sizes.length ? sizes[i + 1] : 0;
+                b.putByte(sizes[i] << 4 | low);
+            }
+        }
+        b.close();
+    }
+
+    private static void sampleDescription(BoxWriter b) {
+        b.openFull("stsd", 0, 0).putInt(1);
+        b.open("mp4a");
+        b.putInt(0).putShort(0).putShort(1);
+        b.putInt(0).putInt(0);
+        b.putShort(2).putShort(16).putShort(0).putShort(0);
+        b.putInt(TIMESCALE << 16);
+        b.openFull("esds", 0, 0);
+        b.putByte(0x03).putByte(25).putShort(1).putByte(0);
+        b.putByte(0x04).putByte(17).putByte(0x40).putByte(0x15).putByte(0).putShort(0).putInt(128_000).putInt(128_000);
+        b.putByte(0x05).putByte(2).putByte(0x12).putByte(0x10);
+        b.putByte(0x06).putByte(1).putByte(0x02);
+        b.close();
+        b.close();
+        b.close();
+    }
+}
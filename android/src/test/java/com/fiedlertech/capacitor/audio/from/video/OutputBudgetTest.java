@@ -0,0 +1,60 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class OutputBudgetTest {
+
+    private static final long MINUTE_US = 60_000_000L;
+
+    @Test
+    public void cutoffCapsTheRangeAtFiveMinutesFromItsStart() {
+        assertEquals(5 * MINUTE_US, OutputBudget.cutoffUs(0L, 0L));
+        assertEquals(MINUTE_US + 5 * MINUTE_US, OutputBudget.cutoffUs(MINUTE_US, 0L));
+        assertEquals(2 * MINUTE_US, OutputBudget.cutoffUs(MINUTE_US, 2 * MINUTE_US));
+        assertEquals(MINUTE_US + 5 * MINUTE_US, OutputBudget.cutoffUs(MINUTE_US, 20 * MINUTE_US));
+    }
+
+    @Test
+    public void fullFiveMinutesUseTheHighestRateThatFits() {
+        // 10 MiB * 8 * 0.95 over 300 s is 265,639 bps
+        assertEquals(265_639, OutputBudget.budgetBitrate(0L));
+        assertEquals(256_000, OutputBudget.targetBitrate(MimeTypes.MP3, 2, 0, 0L));
+        assertEquals(256_000, OutputBudget.targetBitrate(MimeTypes.AAC, 2, 0, 0L));
+    }
+
+    @Test
+    public void shortRangesGetTheCodecCeiling() {
+        assertEquals(320_000, OutputBudget.targetBitrate(MimeTypes.MP3, 2, 0, MINUTE_US));
+        assertEquals(160_000, OutputBudget.targetBitrate(MimeTypes.MP3, 1, 0, MINUTE_US));
+        assertEquals(128_000, OutputBudget.targetBitrate(MimeTypes.AAC, 1, 0, MINUTE_US));
+        // More than two channels are encoded as stereo
+        assertEquals(256_000, OutputBudget.targetBitrate(MimeTypes.AAC, 6, 0, MINUTE_US));
+    }
+
+    @Test
+    public void requestedRateIsKeptWhenItFitsAndRoundedDownForMp3() {
+        assertEquals(96_000, OutputBudget.targetBitrate(MimeTypes.AAC, 2, 96_000, 0L));
+        assertEquals(96_000, OutputBudget.targetBitrate(MimeTypes.MP3, 2, 100_000, 0L));
+        assertEquals(OutputBudget.MIN_BITRATE, OutputBudget.targetBitrate(MimeTypes.AAC, 2, 8_000, 0L));
+    }
+
+    @Test
+    public void everyRangeFitsTheSizeCapAboveTheMinimumRate() {
+        for (long rangeUs = 1_000_000L; rangeUs <= OutputBudget.MAX_DURATION_US; rangeUs += 7_000_000L) {
+            for (String mime : new String[] {MimeTypes.MP3, MimeTypes.AAC}) {
+                int bitrate = OutputBudget.targetBitrate(mime, 2, 0, rangeUs);
+                long bytes = bitrate * rangeUs / 8_000_000L;
+                assertTrue(mime + " at " + rangeUs + " us: " + bytes + " bytes", bytes <= OutputBudget.MAX_SIZE_BYTES);
+            }
+        }
+    }
+
+    @Test
+    public void longRangesBottomOutAtTheMinimumRate() {
+        assertEquals(OutputBudget.MIN_BITRATE, OutputBudget.targetBitrate(MimeTypes.AAC, 2, 0, 60 * MINUTE_US));
+        assertEquals(OutputBudget.MIN_BITRATE, OutputBudget.targetBitrate(MimeTypes.MP3, 2, 0, 60 * MINUTE_US));
+    }
+}
@@ -0,0 +1,147 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class PolyphaseResamplerTest {
+
+    private static short[] tone(int frames, int channels, int rate, double hz, double amplitude) {
+        short[] pcm = new short[frames * channels];
+        for (int f = 0; f < frames; f++) {
+            short v = (short) Math.round(amplitude * Math.sin(2 * Math.PI * hz * f / rate));
+            for (int c = 0; c < channels; c++) {
+                pcm[f * channels + c] = v;
+            }
+        }
+        return pcm;
+    }
+
+    // Whole input in one block
+    private static short[] resample(PolyphaseResampler r, short[] in, int frames) {
+        short[] out = new short[r.maxOutputFor(frames) * r.channels()];
+        int produced = r.process(in, 0, frames, out, 0);
+        return Arrays.copyOf(out, produced * r.channels());
+    }
+
+    private static double rms(short[] pcm, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += (double) pcm[i] * pcm[i];
+        }
+        return Math.sqrt(sum / (to - from));
+    }
+
+    @Test
+    public void outputLengthFollowsTheRateRatio() {
+        PolyphaseResampler down = new PolyphaseResampler(48_000, 16_000, 1);
+        int produced = resample(down, new short[48_000], 48_000).length;
+        // The last half filter of input waits for more, so a few frames short of the exact ratio
+        assertTrue("produced " + produced, produced <= 16_000 && produced >= 16_000 - PolyphaseResampler.DEFAULT_TAPS);
+
+        PolyphaseResampler up = new PolyphaseResampler(22_050, 44_100, 2);
+        int upFrames = resample(up, new short[22_050 * 2], 22_050).length / 2;
+        assertTrue("produced " + upFrames, upFrames <= 44_100 && upFrames >= 44_100 - 2 * PolyphaseResampler.DEFAULT_TAPS);
+    }
+
+    @Test
+    public void blockSizeDoesNotChangeTheOutput() {
+        short[] in = tone(10_000, 2, 44_100, 440, 12_000);
+        short[] whole = resample(new PolyphaseResampler(44_100, 16_000, 2), in, 10_000);
+
+        PolyphaseResampler r = new PolyphaseResampler(44_100, 16_000, 2);
+        Random random = new Random(7);
+        short[] pieces = new short[whole.length + 64];
+        int written = 0;
+        for (int f = 0; f < 10_000; ) {
+            int n = Math.min(10_000 - f, 1 + random.nextInt(700));
+            short[] out = new short[r.maxOutputFor(n) * 2];
+            int produced = r.process(in, f * 2, n, out, 0);
+            System.arraycopy(out, 0, pieces, written, produced * 2);
+            written += produced * 2;
+            f += n;
+        }
+        assertArrayEquals(whole, Arrays.copyOf(pieces, written));
+    }
+
+    @Test
+    public void passbandToneKeepsItsLevelAndTiming() {
+        short[] in = tone(48_000, 1, 48_000, 1000, 10_000);
+        short[] out = resample(new PolyphaseResampler(48_000, 16_000, 1), in, 48_000);
+        // Filter delay is compensated: output frame n is input time n / 16000 s
+        short[] ideal = tone(out.length, 1, 16_000, 1000, 10_000);
+        int settled = PolyphaseResampler.DEFAULT_TAPS;
+        double maxError = 0;
+        for (int i = settled; i < out.length; i++) {
+            maxError = Math.max(maxError, Math.abs(out[i] - ideal[i]));
+        }
+        assertTrue("max error " + maxError, maxError < 20); // 0.2% of the amplitude
+        double gainDb = 20 * Math.log10(rms(out, settled, out.length) / rms(ideal, settled, out.length));
+        assertEquals(0.0, gainDb, 0.1);
+    }
+
+    @Test
+    public void toneAboveTheOutputNyquistIsRejected() {
+        short[] in = tone(48_000, 1, 48_000, 12_000, 10_000);
+        short[] out = resample(new PolyphaseResampler(48_000, 16_000, 1), in, 48_000);
+        int settled = PolyphaseResampler.DEFAULT_TAPS;
+        double attenuationDb = 20 * Math.log10(rms(out, settled, out.length) / (10_000 / Math.sqrt(2)));
+        assertTrue("attenuation " + attenuationDb + " dB", attenuationDb < -60);
+    }
+
+    @Test
+    public void upsamplingKeepsDcAndChannelsApart() {
+        short[] in = new short[4_000 * 2];
+        for (int f = 0; f < 4_000; f++) {
+            in[2 * f] = 1000;
+            in[2 * f + 1] = -3000;
+        }
+        short[] out = resample(new PolyphaseResampler(16_000, 48_000, 2), in, 4_000);
+        for (int f = PolyphaseResampler.DEFAULT_TAPS * 3; f < out.length / 2; f++) {
+            assertEquals(1000, out[2 * f], 1);
+            assertEquals(-3000, out[2 * f + 1], 1);
+        }
+    }
+
+    @Test
+    public void blockLimitsBoundTheOutput() {
+        PolyphaseResampler r = new PolyphaseResampler(44_100, 48_000, 1);
+        short[] in = tone(20_000, 1, 44_100, 300, 8000);
+        short[] out = new short[1024];
+        for (int f = 0; f < 20_000; ) {
+            int n = Math.min(20_000 - f, r.maxInputFor(out.length));
+            assertTrue(n > 0);
+            int bound = r.maxOutputFor(n);
+            int produced = r.process(in, f, n, out, 0);
+            assertTrue(produced <= out.length);
+            assertTrue(produced <= bound);
+            f += n;
+        }
+    }
+
+    @Test
+    public void resetStartsOver() {
+        short[] in = tone(3_000, 1, 48_000, 700, 9000);
+        PolyphaseResampler r = new PolyphaseResampler(48_000, 16_000, 1);
+        short[] first = resample(r, in, 3_000);
+        resample(r, in, 1_234);
+        r.reset();
+        assertArrayEquals(first, resample(r, in, 3_000));
+    }
+
+    @Test
+    public void equalRatesArePassThrough() {
+        assertTrue(new PolyphaseResampler(44_100, 44_100, 2).isPassThrough());
+        assertFalse(new PolyphaseResampler(44_100, 48_000, 2).isPassThrough());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroRate() {
+        new PolyphaseResampler(0, 16_000, 1);
+    }
+}
@@ -0,0 +1,112 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResultCacheTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        dir = new File(temp.getRoot(), "afv_results");
+    }
+
+    private static void fill(File f, int bytes) throws IOException {
+        Files.write(f.toPath(), new byte[bytes]);
+    }
+
+    private int filesIn(File d) {
+        String[] names = d.list();
+        return names != null ? names.length : 0;
+    }
+
+    @Test
+    public void inPlaceFileKeepsTheAnnouncedPathThroughCommit() throws IOException {
+        ResultCache cache = new ResultCache(dir, 1 << 20);
+        File out = cache.newInPlaceFile(MimeTypes.M4A);
+        String announced = out.getAbsolutePath(); // what the fragment events carry
+        assertTrue(announced.endsWith(".m4a"));
+        fill(out, 1000);
+
+        ResultCache.Entry entry = cache.commit("key", out, MimeTypes.M4A);
+        assertEquals(announced, entry.file.getAbsolutePath());
+        assertTrue(new File(announced).exists());
+        assertEquals(1, filesIn(dir)); // the .part marker is gone
+        assertEquals(announced, cache.get("key").file.getAbsolutePath());
+        assertEquals(1000L, cache.getTotalBytes());
+    }
+
+    @Test
+    public void committedInPlaceFileSurvivesReload() throws IOException {
+        ResultCache cache = new ResultCache(dir, 1 << 20);
+        File out = cache.newInPlaceFile(MimeTypes.M4A);
+        fill(out, 500);
+        cache.commit("key", out, MimeTypes.M4A);
+
+        ResultCache reloaded = new ResultCache(dir, 1 << 20);
+        assertEquals(1, reloaded.getEntryCount());
+        assertTrue(out.exists());
+    }
+
+    @Test
+    public void unfinishedInPlaceFileIsDroppedOnReload() throws IOException {
+        ResultCache cache = new ResultCache(dir, 1 << 20);
+        File out = cache.newInPlaceFile(MimeTypes.M4A);
+        fill(out, 500); // a process that died mid-extraction leaves this and its marker
+
+        ResultCache reloaded = new ResultCache(dir, 1 << 20);
+        assertEquals(0, reloaded.getEntryCount());
+        assertFalse(out.exists());
+        assertEquals(0, filesIn(dir));
+    }
+
+    @Test
+    public void discardRemovesTheFileAndItsMarker() throws IOException {
+        ResultCache cache = new ResultCache(dir, 1 << 20);
+        File out = cache.newInPlaceFile(MimeTypes.M4A);
+        fill(out, 10);
+        cache.discard(out);
+        assertEquals(0, filesIn(dir));
+
+        File part = cache.newPartFile();
+        fill(part, 10);
+        cache.discard(part);
+        assertEquals(0, filesIn(dir));
+    }
+
+    @Test
+    public void partFileIsMovedUnderItsKey() throws IOException {
+        ResultCache cache = new ResultCache(dir, 1 << 20);
+        File part = cache.newPartFile();
+        fill(part, 100);
+        ResultCache.Entry entry = cache.commit("abc", part, MimeTypes.MP3);
+        assertEquals(new File(dir, "abc.mp3"), entry.file);
+        assertFalse(part.exists());
+        assertNotNull(cache.get("abc"));
+        assertNull(cache.get("other"));
+    }
+
+    @Test
+    public void holdsOnlyFilesDirectlyInTheCacheDirectory() throws IOException {
+        ResultCache cache = new ResultCache(dir, 1 << 20);
+        assertTrue(cache.holds(new File(dir, "abc.mp3")));
+        assertFalse(cache.holds(new File(dir, "../secret.db")));
+        assertFalse(cache.holds(new File(temp.getRoot(), "abc.mp3")));
+        assertFalse(cache.holds(new File(new File(dir, "sub"), "abc.mp3")));
+    }
+}
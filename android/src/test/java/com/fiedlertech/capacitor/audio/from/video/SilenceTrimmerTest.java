@@ -0,0 +1,188 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class SilenceTrimmerTest {
+
+    // At 1 kHz a frame is 1 ms and a window 10 frames, so frame counts read as milliseconds
+    private static final int RATE = 1000;
+
+    // Mono signal of alternating loud and silent stretches, starting loud; loud samples carry
+    // 1000 + their frame index so the kept ones can be traced back
+    private static short[] signal(int... stretches) {
+        int total = 0;
+        for (int n : stretches) {
+            total += n;
+        }
+        short[] pcm = new short[total];
+        int at = 0;
+        for (int i = 0; i < stretches.length; i++) {
+            for (int j = 0; j < stretches[i]; j++, at++) {
+                pcm[at] = (i % 2 == 0) ? (short) (1000 + at) : 0;
+            }
+        }
+        return pcm;
+    }
+
+    // Frames [from, to) of pcm
+    private static short[] range(short[] pcm, int from, int to) {
+        return Arrays.copyOfRange(pcm, from, to);
+    }
+
+    private static short[] concat(short[]... parts) {
+        int total = 0;
+        for (short[] p : parts) {
+            total += p.length;
+        }
+        short[] out = new short[total];
+        int at = 0;
+        for (short[] p : parts) {
+            System.arraycopy(p, 0, out, at, p.length);
+            at += p.length;
+        }
+        return out;
+    }
+
+    // Runs pcm through trimmer in blocks of blockSamples and returns what was kept
+    private static short[] trim(SilenceTrimmer trimmer, short[] pcm, int blockSamples) {
+        short[] out = new short[pcm.length];
+        int written = 0;
+        for (int off = 0; off < pcm.length; off += blockSamples) {
+            short[] block = Arrays.copyOfRange(pcm, off, Math.min(pcm.length, off + blockSamples));
+            int kept = trimmer.process(block, block.length);
+            System.arraycopy(block, 0, out, written, kept);
+            written += kept;
+        }
+        return Arrays.copyOf(out, written);
+    }
+
+    private static SilenceTrimmer trimmer(long maxSilenceMs) {
+        return new SilenceTrimmer(RATE, 1, maxSilenceMs, SilenceTrimmer.DEFAULT_THRESHOLD_DB, 0L);
+    }
+
+    @Test
+    public void soundOnlyIsKeptWhole() {
+        SilenceTrimmer trimmer = trimmer(50);
+        short[] pcm = signal(300);
+        assertArrayEquals(pcm, trim(trimmer, pcm, pcm.length));
+        assertEquals(0L, trimmer.removedUs());
+        assertArrayEquals(new long[] {0L, 0L, 300_000L}, trimmer.segmentsUs());
+    }
+
+    @Test
+    public void pauseIsShortenedToMaxSilence() {
+        SilenceTrimmer trimmer = trimmer(50);
+        short[] pcm = signal(100, 200, 100);
+        short[] out = trim(trimmer, pcm, pcm.length);
+        assertArrayEquals(concat(range(pcm, 0, 150), range(pcm, 300, 400)), out);
+        assertEquals(150_000L, trimmer.removedUs());
+        assertEquals(250_000L, trimmer.keptUs());
+        assertEquals(400_000L, trimmer.consumedUs());
+        assertArrayEquals(new long[] {0L, 0L, 150_000L, 300_000L, 150_000L, 100_000L}, trimmer.segmentsUs());
+    }
+
+    @Test
+    public void maxSilenceInsideAWindowCutsThatWindow() {
+        // 55 ms ends half way through the window at 150..160
+        SilenceTrimmer trimmer = trimmer(55);
+        short[] pcm = signal(100, 200, 100);
+        short[] out = trim(trimmer, pcm, pcm.length);
+        assertArrayEquals(concat(range(pcm, 0, 155), range(pcm, 300, 400)), out);
+        assertArrayEquals(new long[] {0L, 0L, 155_000L, 300_000L, 155_000L, 100_000L}, trimmer.segmentsUs());
+    }
+
+    @Test
+    public void blocksAcrossWindowBoundariesGiveTheSameSegmentMap() {
+        short[] pcm = signal(100, 200, 130, 70, 90, 400, 60);
+        SilenceTrimmer whole = trimmer(55);
+        short[] expected = trim(whole, pcm, pcm.length);
+        long[] expectedSegments = whole.segmentsUs();
+        for (int block : new int[] {1, 3, 7, 10, 13, 64, 155}) {
+            SilenceTrimmer trimmer = trimmer(55);
+            assertArrayEquals("block " + block, expected, trim(trimmer, pcm, block));
+            assertArrayEquals("block " + block, expectedSegments, trimmer.segmentsUs());
+        }
+    }
+
+    @Test
+    public void segmentsMapOutputTimeBackToTheSource() {
+        short[] pcm = signal(100, 200, 130, 70, 90, 400, 60);
+        SilenceTrimmer trimmer = trimmer(55);
+        short[] out = trim(trimmer, pcm, 13);
+        long[] segments = trimmer.segmentsUs();
+        assertEquals(4, trimmer.segmentCount());
+        long outputEnd = 0L;
+        for (int i = 0; i < segments.length; i += 3) {
+            int source = (int) (segments[i] / 1000L);
+            int output = (int) (segments[i + 1] / 1000L);
+            int length = (int) (segments[i + 2] / 1000L);
+            assertEquals(outputEnd, segments[i + 1]);
+            assertArrayEquals(range(pcm, source, source + length), range(out, output, output + length));
+            outputEnd = segments[i + 1] + segments[i + 2];
+        }
+        assertEquals(out.length * 1000L, outputEnd);
+    }
+
+    @Test
+    public void leadingAndTrailingSilenceAreShortenedToo() {
+        SilenceTrimmer trimmer = trimmer(50);
+        short[] pcm = concat(new short[200], signal(100), new short[200]);
+        short[] out = trim(trimmer, pcm, 32);
+        assertEquals(50 + 100 + 50, out.length);
+        assertArrayEquals(new long[] {0L, 0L, 50_000L, 200_000L, 50_000L, 150_000L}, trimmer.segmentsUs());
+    }
+
+    @Test
+    public void sourceStartsAreOnTheSourceTimeline() {
+        SilenceTrimmer trimmer = new SilenceTrimmer(RATE, 1, 50, SilenceTrimmer.DEFAULT_THRESHOLD_DB, 5_000_000L);
+        short[] pcm = signal(100, 200, 100);
+        trim(trimmer, pcm, pcm.length);
+        assertArrayEquals(new long[] {5_000_000L, 0L, 150_000L, 5_300_000L, 150_000L, 100_000L}, trimmer.segmentsUs());
+    }
+
+    @Test
+    public void quietSoundAboveTheThresholdIsKept() {
+        // -40 dBFS is above the default -50 dB threshold
+        short[] pcm = new short[400];
+        Arrays.fill(pcm, (short) 328);
+        SilenceTrimmer trimmer = trimmer(50);
+        assertEquals(400, trim(trimmer, pcm, pcm.length).length);
+        assertEquals(1, trimmer.segmentCount());
+    }
+
+    @Test
+    public void stereoFramesAreJudgedAndKeptTogether() {
+        // Left loud then silent, right silent throughout: a frame stays whole
+        short[] pcm = new short[2 * 300];
+        for (int i = 0; i < 100; i++) {
+            pcm[2 * i] = (short) (1000 + i);
+        }
+        short[] original = pcm.clone();
+        SilenceTrimmer trimmer = new SilenceTrimmer(RATE, 2, 50, SilenceTrimmer.DEFAULT_THRESHOLD_DB, 0L);
+        int kept = trimmer.process(pcm, pcm.length);
+        assertEquals(2 * 150, kept);
+        assertArrayEquals(Arrays.copyOf(original, kept), Arrays.copyOf(pcm, kept));
+        assertArrayEquals(new long[] {0L, 0L, 150_000L}, trimmer.segmentsUs());
+    }
+
+    @Test
+    public void byteBufferIsCompactedInPlace() {
+        short[] pcm = signal(100, 200, 100);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(8 + pcm.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.position(8);
+        bytes.asShortBuffer().put(pcm);
+        int kept = trimmer(50).process(bytes, 8, pcm.length * 2);
+        assertEquals(250 * 2, kept);
+        short[] out = new short[250];
+        ByteBuffer view = bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        view.position(8);
+        view.asShortBuffer().get(out);
+        assertArrayEquals(concat(range(pcm, 0, 150), range(pcm, 300, 400)), out);
+    }
+}
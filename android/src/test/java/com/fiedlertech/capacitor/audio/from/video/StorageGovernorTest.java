@@ -0,0 +1,136 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StorageGovernorTest {
+
+    private static final long MB = 1024L * 1024L;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File cacheDir;
+    private File ingestDir;
+
+    @Before
+    public void setUp() {
+        cacheDir = temp.getRoot();
+        ingestDir = new File(cacheDir, "afv_ingest");
+    }
+
+    private static File fill(File f, long bytes) throws IOException {
+        Files.write(f.toPath(), new byte[(int) bytes]);
+        return f;
+    }
+
+    private ResultCache cacheWith(long entryBytes, int entries) throws IOException {
+        ResultCache cache = new ResultCache(new File(cacheDir, "afv_results"), 1L << 40);
+        for (int i = 0; i < entries; i++) {
+            cache.commit("k" + i, fill(cache.newPartFile(), entryBytes), MimeTypes.MP3);
+        }
+        return cache;
+    }
+
+    @Test
+    public void checkJobFailsWhenTheQuotaCannotHoldAFullOutput() {
+        StorageGovernor governor = new StorageGovernor(ingestDir, OutputBudget.MAX_SIZE_BYTES - 1);
+        try {
+            governor.checkJob(cacheDir);
+            fail("expected a quota error");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("storage quota"));
+        }
+    }
+
+    @Test
+    public void checkJobEvictsTheCacheToMakeRoom() throws IOException {
+        StorageGovernor governor = new StorageGovernor(ingestDir, OutputBudget.MAX_SIZE_BYTES + 2 * MB);
+        ResultCache cache = cacheWith(MB, 4);
+        governor.setResultCache(cache);
+        governor.checkJob(cacheDir);
+        assertEquals(2 * MB, cache.getTotalBytes());
+    }
+
+    @Test
+    public void concurrentJobsEachReserveAFullOutput() throws IOException {
+        StorageGovernor governor = new StorageGovernor(ingestDir, 2 * OutputBudget.MAX_SIZE_BYTES + MB);
+        governor.checkJob(cacheDir);
+        governor.checkJob(cacheDir);
+        try {
+            governor.checkJob(cacheDir);
+            fail("expected a quota error");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("storage quota"));
+        }
+        governor.endJob();
+        governor.checkJob(cacheDir);
+    }
+
+    @Test
+    public void endJobEvictsCommittedResultsBackUnderTheQuota() throws IOException {
+        StorageGovernor governor = new StorageGovernor(ingestDir, 2 * OutputBudget.MAX_SIZE_BYTES + 2 * MB);
+        ResultCache cache = cacheWith(MB, 0);
+        governor.setResultCache(cache);
+        governor.checkJob(cacheDir);
+        governor.checkJob(cacheDir);
+        // The first job's result lands in the cache, which only checks its own budget
+        cache.commit("older", fill(cache.newPartFile(), 3 * MB), MimeTypes.MP3);
+        cache.commit("result", fill(cache.newPartFile(), OutputBudget.MAX_SIZE_BYTES), MimeTypes.MP3);
+        governor.endJob();
+        // The second job still holds its reservation, so only the result itself fits
+        assertNull(cache.get("older"));
+        assertNotNull(cache.get("result"));
+        assertTrue(governor.getUsedBytes() + OutputBudget.MAX_SIZE_BYTES <= governor.getQuotaBytes());
+    }
+
+    @Test
+    public void ingestCopyLargerThanTheQuotaIsRefused() {
+        StorageGovernor governor = new StorageGovernor(ingestDir, 4 * MB);
+        try {
+            governor.newIngestFile(".mp4", 5 * MB);
+            fail("expected a quota error");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("storage quota"));
+        }
+        String[] left = ingestDir.list();
+        assertEquals(0, left != null ? left.length : 0);
+    }
+
+    @Test
+    public void releasedCopiesStopCountingAgainstTheQuota() throws IOException {
+        StorageGovernor governor = new StorageGovernor(ingestDir, 64 * MB);
+        File copy = governor.newIngestFile(".mp4", -1L);
+        governor.onIngestProgress(copy, 3 * MB);
+        assertEquals(3 * MB, governor.getUsedBytes());
+        governor.release(copy);
+        assertEquals(0L, governor.getUsedBytes());
+        assertFalse(copy.exists());
+    }
+
+    @Test
+    public void startSweepsStaleCopiesAndLegacyOutputs() throws IOException {
+        assertTrue(ingestDir.mkdirs());
+        File staleCopy = fill(new File(ingestDir, "afv_src_123.mp4"), 10);
+        File legacyOutput = fill(new File(cacheDir, "afv_tmp_1700000000000.tmp"), 10);
+        File otherSuffix = fill(new File(cacheDir, "afv_tmp_notes.txt"), 10);
+        File unrelated = fill(new File(cacheDir, "app_data.tmp"), 10);
+        new StorageGovernor(ingestDir, 64 * MB);
+        assertFalse(staleCopy.exists());
+        assertFalse(legacyOutput.exists());
+        assertTrue(otherSuffix.exists());
+        assertTrue(unrelated.exists());
+    }
+}
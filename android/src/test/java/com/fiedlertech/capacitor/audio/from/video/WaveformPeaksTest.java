@@ -0,0 +1,138 @@
+package com.fiedlertech.capacitor.audio.from.video;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class WaveformPeaksTest {
+
+    // Mono ramp whose sample value is its frame index
+    private static short[] ramp(int frames) {
+        short[] pcm = new short[frames];
+        for (int i = 0; i < frames; i++) {
+            pcm[i] = (short) i;
+        }
+        return pcm;
+    }
+
+    private static short[] feedInBlocks(WaveformPeaks peaks, short[] pcm, int blockSamples) {
+        for (int off = 0; off < pcm.length; off += blockSamples) {
+            peaks.accept(pcm, off, Math.min(blockSamples, pcm.length - off));
+        }
+        return peaks.toArray();
+    }
+
+    @Test
+    public void bucketEdgesFallOnExactFractionsOfTheSampleRate() {
+        // 1000 / 3 frames per bucket: edges at frames 333, 666 and 1000
+        WaveformPeaks peaks = new WaveformPeaks(1000, 1, 3);
+        short[] out = feedInBlocks(peaks, ramp(1000), 1000);
+        assertEquals(3, peaks.count());
+        assertArrayEquals(new short[] {0, 332}, new short[] {out[0], out[1]});
+        assertArrayEquals(new short[] {333, 665}, new short[] {out[3], out[4]});
+        assertArrayEquals(new short[] {666, 999}, new short[] {out[6], out[7]});
+    }
+
+    @Test
+    public void blockSizeDoesNotMoveTheEdges() {
+        short[] pcm = ramp(1000);
+        short[] whole = feedInBlocks(new WaveformPeaks(1000, 1, 3), pcm, pcm.length);
+        for (int block : new int[] {1, 7, 332, 333, 334, 500}) {
+            assertArrayEquals("block " + block, whole, feedInBlocks(new WaveformPeaks(1000, 1, 3), pcm, block));
+        }
+    }
+
+    @Test
+    public void bucketClosesExactlyAtItsLastFrame() {
+        WaveformPeaks peaks = new WaveformPeaks(1000, 1, 10);
+        short[] pcm = ramp(100);
+        peaks.accept(pcm, 0, 99);
+        assertEquals(0, peaks.count());
+        peaks.accept(pcm, 99, 1);
+        assertEquals(1, peaks.count());
+    }
+
+    @Test
+    public void channelsOfOneFrameShareABucket() {
+        // Stereo, 2 frames per bucket: left carries the frame index, right its negation
+        WaveformPeaks peaks = new WaveformPeaks(4, 2, 2);
+        short[] pcm = {0, 0, 1, -1, 2, -2, 3, -3};
+        peaks.accept(pcm, 0, pcm.length);
+        short[] out = peaks.toArray();
+        assertEquals(2, peaks.count());
+        assertArrayEquals(new short[] {-1, 1, 1, -3, 3, 3}, out);
+    }
+
+    @Test
+    public void rmsOfASquareWaveIsItsAmplitude() {
+        WaveformPeaks peaks = new WaveformPeaks(100, 1, 1);
+        short[] pcm = new short[100];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (short) ((i & 1) == 0 ? 12000 : -12000);
+        }
+        peaks.accept(pcm, 0, pcm.length);
+        assertArrayEquals(new short[] {-12000, 12000, 12000}, peaks.toArray());
+    }
+
+    @Test
+    public void fullScaleRmsIsClampedToShortRange() {
+        WaveformPeaks peaks = new WaveformPeaks(10, 1, 1);
+        short[] pcm = new short[10];
+        Arrays.fill(pcm, Short.MIN_VALUE);
+        peaks.accept(pcm, 0, pcm.length);
+        assertEquals(Short.MAX_VALUE, peaks.toArray()[2]);
+    }
+
+    @Test
+    public void partlyFilledLastBucketIsClosedByToArray() {
+        WaveformPeaks peaks = new WaveformPeaks(1000, 1, 10);
+        peaks.accept(ramp(150), 0, 150);
+        assertEquals(1, peaks.count());
+        short[] out = peaks.toArray();
+        assertEquals(2, peaks.count());
+        assertArrayEquals(new short[] {100, 149}, new short[] {out[3], out[4]});
+    }
+
+    @Test
+    public void longRangesDoNotDrift() {
+        // 48000 / 7 is no whole number of frames; ten minutes must still end on bucket 4200
+        WaveformPeaks peaks = new WaveformPeaks(48000, 1, 7);
+        short[] block = new short[4800];
+        for (int i = 0; i < 48000 * 600 / block.length; i++) {
+            peaks.accept(block, 0, block.length);
+        }
+        assertEquals(4200, peaks.count());
+        assertEquals(4200 * 3, peaks.toArray().length);
+    }
+
+    @Test
+    public void perSecondIsClampedToTheSampleRateAndTheMaximum() {
+        assertEquals(8, new WaveformPeaks(8, 1, 100).perSecond);
+        assertEquals(WaveformPeaks.MAX_PER_SECOND, new WaveformPeaks(48000, 1, 5000).perSecond);
+        assertEquals(1, new WaveformPeaks(48000, 1, 0).perSecond);
+    }
+
+    @Test
+    public void byteBufferInputMatchesShortInput() {
+        short[] pcm = ramp(1000);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(16 + pcm.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.position(16);
+        bytes.asShortBuffer().put(pcm);
+        WaveformPeaks fromBytes = new WaveformPeaks(1000, 1, 3);
+        fromBytes.accept(bytes, 16, pcm.length * 2);
+        assertArrayEquals(feedInBlocks(new WaveformPeaks(1000, 1, 3), pcm, pcm.length), fromBytes.toArray());
+    }
+
+    @Test
+    public void toBytesIsLittleEndian() {
+        WaveformPeaks peaks = new WaveformPeaks(2, 1, 1);
+        peaks.accept(new short[] {0x0102, 0x0304}, 0, 2);
+        byte[] out = peaks.toBytes();
+        assertEquals(6, out.length);
+        assertArrayEquals(new byte[] {0x02, 0x01, 0x04, 0x03}, Arrays.copyOf(out, 4));
+    }
+}
@@ -1,3 +1,350 @@
+import type { PluginListenerHandle } from '@capacitor/core';
+
+export interface ExtractAudioOptions {
+  path: string;
+  outputPath?: string;
+  includeData?: boolean;
+  /** Deliver the output through 'audioData' events in base64 chunks instead of one dataUrl. */
+  streamData?: boolean;
+  /** Raw bytes per 'audioData' chunk (rounded down to a multiple of 3). Defaults to 196608. */
+  dataChunkSize?: number;
+  /** Id to use for cancelExtraction; generated when omitted. */
+  jobId?: string;
+  /** Higher values are scheduled first. Defaults to 0. */
+  priority?: number;
+  /** Android decode/encode engine. 'async' (default, API 23+) uses MediaCodec callbacks, 'polling' the dequeue loop. */
+  engine?: 'async' | 'polling';
+  /** Answer from and store into the result cache when no outputPath is given. Defaults to true. */
+  useCache?: boolean;
+  /** Transcode as up to this many concurrent segments (capped by CPU count, at least 15 s each). Defaults to 1. */
+  parallelSegments?: number;
+  /** Start of the extracted range in ms. The source is seeked, not decoded up to this point. */
+  startMs?: number;
+  /** End of the extracted range in ms. Defaults to the end of the source; at most 5 minutes after startMs. */
+  endMs?: number;
+  /** Output preset. 'speech' is 16 kHz mono at 32 kbps; the explicit fields below override it. */
+  profile?: 'source' | 'speech';
+  /** Output sample rate in Hz. Defaults to the source rate. */
+  outputSampleRate?: number;
+  /** Output channel count (1 or 2). Defaults to the source count, capped at 2. */
+  outputChannels?: number;
+  /**
+   * Encoder bitrate in bits per second. Defaults to the codec's quality ceiling (160 kbps per
+   * channel for MP3, 128 kbps for AAC); either way it is lowered so the whole range fits in 10 MB.
+   */
+  outputBitrate?: number;
+  /**
+   * 'wav' (audio/wav) and 'pcm_s16le' (audio/pcm, headerless 16-bit little-endian) skip the encoder and write
+   * decoded PCM at outputSampleRate/outputChannels. The 10 MB cap still applies; use profile 'speech' for long clips.
+   * 'peaks' only decodes: the output file (application/octet-stream, .peaks) holds the waveform peaks in the layout
+   * of WaveformPeaks.data, which the result also carries. Defaults to 'auto' (MP3, or AAC in M4A).
+   */
+  outputFormat?: 'auto' | 'wav' | 'pcm_s16le' | 'peaks';
+  /**
+   * Writes AAC as fragmented MP4, flushing a playable fragment every this many ms of audio and announcing each one
+   * with an 'extractionFragment' event. Implies AAC and a single pass (no parallelSegments). Ignored for wav/pcm_s16le.
+   * Defaults to 0 (a regular M4A or MP3).
+   */
+  fragmentDuration?: number;
+  /**
+   * Also compute waveform peaks with this many buckets per second of output (at most 1000), from the same decode
+   * pass. Peaks need decoded audio, so the copy fast paths are skipped, the job runs as a single pass and the
+   * result cache is not consulted. Defaults to 0 (none), or 100 with outputFormat 'peaks'.
+   */
+  peaksPerSecond?: number;
+  /**
+   * Shortens every silent stretch longer than this many ms to this length before encoding, so long pauses cost
+   * nothing to encode, store or upload. Output timestamps stay contiguous; the result's silence.keptSegments maps
+   * the output back to the source. Like peaks, this skips the copy fast paths and the result cache and runs as a
+   * single pass. Defaults to 0 (keep all audio).
+   */
+  trimSilence?: number;
+  /** Level in dBFS below which a 10 ms window counts as silent for trimSilence. Defaults to -50. */
+  silenceThreshold?: number;
+  /** Minimum time between 'extractionProgress' events in ms. Defaults to 100. */
+  progressInterval?: number;
+  /** Minimum progress change (0..1) between 'extractionProgress' events. Defaults to 0.01. */
+  progressStep?: number;
+}
+
+export interface ExtractAudioResult {
+  path: string;
+  /** URL the WebView serves the output file from (as Capacitor.convertFileSrc); supports Range requests. */
+  webUrl: string;
+  dataUrl?: string;
+  fileSize: number;
+  mimeType: string;
+  jobId?: string;
+  /** Number of 'audioData' events emitted when streamData was set. */
+  dataChunks?: number;
+  metrics?: ExtractionMetrics;
+  /** Set when peaksPerSecond or outputFormat 'peaks' asked for them. */
+  peaks?: WaveformPeaks;
+  /** Set when trimSilence was given. */
+  silence?: SilenceTrimResult;
+}
+
+export interface WaveformPeaks {
+  /** Buckets per second of output audio. */
+  perSecond: number;
+  count: number;
+  /**
+   * Base64 of little-endian int16 (min, max, rms) per bucket, over all output channels:
+   * `new Int16Array(bytes.buffer)` gives 3 * count values.
+   */
+  data: string;
+}
+
+export interface SilenceTrimResult {
+  /** Source audio left out of the output. */
+  removedMs: number;
+  /** The output as runs of source audio, in order. */
+  keptSegments: KeptSegment[];
+}
+
+export interface KeptSegment {
+  /** Start in the source, on the source's own timeline (startMs included). */
+  sourceMs: number;
+  /** Start in the output. */
+  outputMs: number;
+  durationMs: number;
+}
+
+export interface ExtractionMetrics {
+  /**
+   * How the output was produced. 'source-file': the source already was an audio-only MP3 or M4A within the
+   * limits, so the result is the source file itself (or a byte copy of it at outputPath).
+   */
+  path: 'cache' | 'source-file' | 'mp3-passthrough' | 'aac-remux' | 'transcode' | 'segmented' | 'decode-only';
+  /** Parallel segments used; 1 unless path is 'segmented'. */
+  segments: number;
+  /** Encoder bitrate in bits per second; 0 when nothing was encoded. */
+  bitrate: number;
+  /** The 10 MB size cap ended the output before the requested range did. */
+  truncated: boolean;
+  /** Opening the source, including a temp copy of a non-seekable content:// stream. */
+  ingestMs: number;
+  /** From the job starting to run until the first compressed sample was read; -1 if none was. */
+  firstSampleMs: number;
+  /** From the first sample fed to the decoder until its last output. Overlaps encodeMs. */
+  decodeMs: number;
+  /** From the first PCM fed to the encoder until its last output. */
+  encodeMs: number;
+  /** Time spent writing the output file (and stitching segments). */
+  muxMs: number;
+  totalMs: number;
+  /** Compressed bytes read from the source. */
+  bytesIn: number;
+  /** Size of the output file. */
+  bytesOut: number;
+  mediaDurationMs: number;
+  /** Seconds of audio produced per second of wall time; 0 when unknown. */
+  realtimeFactor: number;
+}
+
+export interface StatsHistogram {
+  /** Values recorded since the last reset. */
+  count: number;
+  /** Most recent values the other fields are computed over. */
+  window: number;
+  min: number;
+  max: number;
+  mean: number;
+  p50: number;
+  p90: number;
+  p99: number;
+}
+
+export interface ExtractionStatsResult {
+  completed: number;
+  failed: number;
+  cancelled: number;
+  bytesIn: number;
+  bytesOut: number;
+  /** Size of the rolling window behind each histogram. */
+  window: number;
+  /** Per metric of ExtractionMetrics; cache hits are left out. */
+  stages: {
+    totalMs: StatsHistogram;
+    ingestMs: StatsHistogram;
+    firstSampleMs: StatsHistogram;
+    decodeMs: StatsHistogram;
+    encodeMs: StatsHistogram;
+    muxMs: StatsHistogram;
+    realtimeFactor: StatsHistogram;
+  };
+  /** totalMs per path; count is how many jobs took that path. */
+  paths: Record<ExtractionMetrics['path'], StatsHistogram>;
+  /** Android: disk use of the result cache and live source copies against the storageQuotaMB quota. */
+  storage?: StorageUsage;
+}
+
+export interface StorageUsage {
+  usedBytes: number;
+  quotaBytes: number;
+  /** Usable space left on the volume of the app's cache directory. */
+  freeBytes: number;
+}
+
+export interface AudioDataChunk {
+  jobId: string;
+  /** 0-based, increasing by one per chunk. */
+  sequence: number;
+  /** Byte offset of this chunk in the output file. */
+  offset: number;
+  /** Base64 of this chunk alone; chunks can be decoded independently. */
+  data: string;
+  last: boolean;
+  mimeType: string;
+}
+
+export interface ExtractAudioBatchOptions {
+  /** Each item takes the same options as extractAudio, except includeData and streamData. */
+  items: ExtractAudioOptions[];
+  /** Id to use for cancelExtraction; generated when omitted. Item job ids default to "<batchId>:<index>". */
+  batchId?: string;
+  /** Higher values are scheduled first. Defaults to 0. */
+  priority?: number;
+}
+
+export interface BatchItemResult {
+  index: number;
+  /** Input path of the item. */
+  path: string;
+  jobId?: string;
+  outputPath?: string;
+  /** URL the WebView serves outputPath from; supports Range requests. */
+  webUrl?: string;
+  mimeType?: string;
+  fileSize?: number;
+  metrics?: ExtractionMetrics;
+  peaks?: WaveformPeaks;
+  silence?: SilenceTrimResult;
+  /** Set when this item failed; the other items are unaffected. */
+  error?: string;
+}
+
+export interface ExtractAudioBatchResult {
+  batchId: string;
+  completed: number;
+  failed: number;
+  /** In the order of the items. */
+  results: BatchItemResult[];
+}
+
+export interface BatchProgressEvent {
+  batchId: string;
+  /** Items that completed or failed so far. */
+  finished: number;
+  total: number;
+  /** 0..1 over the whole batch, including the running item. */
+  progress: number;
+}
+
+export interface ExtractionProgressEvent {
+  jobId: string;
+  /** 'ingest' opens the source, 'remux' copies frames, 'decode' transcodes, 'encode' flushes the encoder. */
+  stage: 'ingest' | 'remux' | 'decode' | 'encode';
+  /** 0..1 of the extracted range. */
+  progress: number;
+  bytesWritten: number;
+  /** Time since the job started running. */
+  elapsedMs: number;
+  /** Time since the current stage started. */
+  stageElapsedMs: number;
+  /** Estimated time remaining, or -1 when unknown. */
+  etaMs: number;
+}
+
+export interface ExtractionFragmentEvent {
+  jobId: string;
+  /** File being written. Fragmented output is written in place, so this is also the resolved result path and stays valid after the call resolves. */
+  path: string;
+  /** URL the WebView serves path from; fetch just this piece with a Range header. */
+  webUrl: string;
+  /** 0 for the init segment (ftyp + moov), then 1, 2, ... for each moof + mdat fragment. */
+  sequence: number;
+  init: boolean;
+  /** Byte range of this piece in the file; it no longer changes. */
+  offset: number;
+  length: number;
+  /** Media time of the fragment from the start of the extracted range. */
+  startMs: number;
+  durationMs: number;
+}
+
+export interface ProbeMediaResult {
+  hasAudio: boolean;
+  hasVideo: boolean;
+  trackCount: number;
+  /** Duration of the audio track; 0 when unknown or without one. */
+  durationMs: number;
+  /** Audio fields describe the track extractAudio would use; they are only set when hasAudio is. */
+  mimeType?: string;
+  sampleRate?: number;
+  channels?: number;
+  /** Bits per second; 0 when the container does not say. */
+  bitrate?: number;
+  /**
+   * The path extractAudio with the same options would take, before any fallback. The result cache is not consulted.
+   * Not set without an audio track or when the range is empty.
+   */
+  plannedPath?: 'source-file' | 'mp3-passthrough' | 'aac-remux' | 'transcode' | 'segmented' | 'decode-only';
+}
+
+export interface ReadRangeOptions {
+  /** Local file path or file:// URI, e.g. a result path or the path of an 'extractionFragment' event. */
+  path: string;
+  /** Defaults to 0. */
+  offset?: number;
+  /** Bytes to read; at most 8388608 (8 MB), which is also the default. */
+  length?: number;
+}
+
+export interface ReadRangeResult {
+  /** Base64 of the bytes read. */
+  data: string;
+  offset: number;
+  /** Bytes read; less than requested at the end of the file. */
+  length: number;
+  fileSize: number;
+  /** The range reached the end of the file. */
+  eof: boolean;
+}
+
 export interface AudioFromVideoRetrieverPlugin {
-  extractAudio(options: { path: string, outputPath?: string, includeData?: boolean }): Promise<{ path: string, dataUrl?: string, fileSize: number, mimeType: string }>;
+  extractAudio(options: ExtractAudioOptions): Promise<ExtractAudioResult>;
+  /**
+   * Extracts several items in one queue slot. The next item is opened and probed while the current one encodes,
+   * and codecs are reused between items. Resolves after every item finished; failed items carry an error.
+   */
+  extractAudioBatch(options: ExtractAudioBatchOptions): Promise<ExtractAudioBatchResult>;
+  /**
+   * Reads the track formats of a source without decoding; content:// URIs are read through their file descriptor and
+   * never copied. Takes the options of extractAudio, which only affect plannedPath. Results are kept in a small
+   * in-memory cache keyed by the source (path, size and mtime), so probing an unchanged source again does not reopen it.
+   */
+  probeMedia(options: ExtractAudioOptions): Promise<ProbeMediaResult>;
+  /**
+   * Reads one byte range of a local file with positional reads; only those bytes cross the bridge.
+   * Only files this plugin produced are readable: result and fragment paths it returned or announced, and the result cache.
+   * For whole files prefer fetch(webUrl), which does not go through the bridge at all.
+   */
+  readRange(options: ReadRangeOptions): Promise<ReadRangeResult>;
+  /** Cancels a queued or running extraction. The pending extractAudio call rejects with "Extraction cancelled". */
+  cancelExtraction(options: { jobId: string }): Promise<{ cancelled: boolean }>;
+  /** Counters and rolling latency histograms over the extractions since start (or the last reset). */
+  getStats(options?: { reset?: boolean }): Promise<ExtractionStatsResult>;
+  addListener(eventName: 'extractionQueued', listenerFunc: (event: { jobId: string, path: string }) => void): Promise<PluginListenerHandle> & PluginListenerHandle;
+  addListener(eventName: 'audioData', listenerFunc: (chunk: AudioDataChunk) => void): Promise<PluginListenerHandle> & PluginListenerHandle;
+  /** One event per finished batch item. */
+  addListener(eventName: 'batchItem', listenerFunc: (result: BatchItemResult) => void): Promise<PluginListenerHandle> & PluginListenerHandle;
+  addListener(eventName: 'batchProgress', listenerFunc: (event: BatchProgressEvent) => void): Promise<PluginListenerHandle> & PluginListenerHandle;
+  /** Coalesced progress; see progressInterval and progressStep. */
+  addListener(eventName: 'extractionProgress', listenerFunc: (event: ExtractionProgressEvent) => void): Promise<PluginListenerHandle> & PluginListenerHandle;
+  /**
+   * Fragmented output only (see fragmentDuration): one event per byte range that became final, in file order.
+   * Not emitted when the result comes from the cache.
+   */
+  addListener(eventName: 'extractionFragment', listenerFunc: (event: ExtractionFragmentEvent) => void): Promise<PluginListenerHandle> & PluginListenerHandle;
 }
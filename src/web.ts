@@ -1,11 +1,41 @@
 import { WebPlugin } from '@capacitor/core';
 
-import type { AudioFromVideoRetrieverPlugin } from './definitions';
+import type {
+  AudioFromVideoRetrieverPlugin,
+  ExtractAudioBatchOptions,
+  ExtractAudioBatchResult,
+  ExtractAudioOptions,
+  ExtractAudioResult,
+  ExtractionStatsResult,
+  ProbeMediaResult,
+  ReadRangeOptions,
+  ReadRangeResult,
+} from './definitions';
 
 export class AudioFromVideoRetrieverWeb
   extends WebPlugin
   implements AudioFromVideoRetrieverPlugin {
-  async extractAudio(options: { path: string, outputPath?: string, includeData?: boolean | undefined }): Promise<{ path: string, dataUrl?: string, fileSize: number, mimeType: string }> {
+  async extractAudio(options: ExtractAudioOptions): Promise<ExtractAudioResult> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async extractAudioBatch(options: ExtractAudioBatchOptions): Promise<ExtractAudioBatchResult> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async probeMedia(options: ExtractAudioOptions): Promise<ProbeMediaResult> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async readRange(options: ReadRangeOptions): Promise<ReadRangeResult> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async cancelExtraction(options: { jobId: string }): Promise<{ cancelled: boolean }> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async getStats(options?: { reset?: boolean }): Promise<ExtractionStatsResult> {
     throw this.unimplemented('Not implemented on web.');
   }
 }